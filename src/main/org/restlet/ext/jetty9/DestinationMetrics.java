@@ -0,0 +1,429 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9;
+
+/**
+ * Snapshot of the metrics of a Jetty HTTP client destination
+ * ("scheme://host:port").
+ * <p>
+ * Latencies and connection times are in microseconds, and are -1 if nothing
+ * was observed. Percentiles follow recent samples.
+ * 
+ * @author Tal Liron
+ * @see JettyHttpClientHelper#getMetrics()
+ */
+public class DestinationMetrics
+{
+	/**
+	 * Constructor.
+	 * 
+	 * @param destination
+	 *        The destination
+	 * @param requests
+	 *        The number of completed requests
+	 * @param latencyP50
+	 *        The median request latency
+	 * @param latencyP95
+	 *        The 95th percentile request latency
+	 * @param latencyP99
+	 *        The 99th percentile request latency
+	 * @param connects
+	 *        The number of connections opened
+	 * @param connectTimeP50
+	 *        The median connect time
+	 * @param connectTimeP99
+	 *        The 99th percentile connect time
+	 * @param tlsHandshakes
+	 *        The number of TLS handshakes
+	 * @param tlsHandshakeTimeP50
+	 *        The median TLS handshake time
+	 * @param tlsHandshakeTimeP99
+	 *        The 99th percentile TLS handshake time
+	 * @param activeConnections
+	 *        The number of active connections in the pool
+	 * @param idleConnections
+	 *        The number of idle connections in the pool
+	 * @param pendingConnections
+	 *        The number of connections being opened
+	 * @param maxConnections
+	 *        The max number of connections
+	 * @param queuedRequests
+	 *        The number of requests waiting for a connection
+	 * @param maxQueuedRequests
+	 *        The max number of queued requests
+	 * @param timeouts
+	 *        The number of requests that timed out
+	 * @param aborts
+	 *        The number of requests that were aborted
+	 * @param rejections
+	 *        The number of requests that were rejected
+	 * @param ioFailures
+	 *        The number of requests that failed with an I/O error
+	 * @param otherFailures
+	 *        The number of requests that failed otherwise
+	 * @param connectFailures
+	 *        The number of connections that failed to open
+	 * @param tlsFailures
+	 *        The number of failed TLS handshakes
+	 */
+	public DestinationMetrics( String destination, long requests, long latencyP50, long latencyP95, long latencyP99, long connects, long connectTimeP50, long connectTimeP99, long tlsHandshakes, long tlsHandshakeTimeP50, long tlsHandshakeTimeP99, int activeConnections, int idleConnections, int pendingConnections, int maxConnections, int queuedRequests, int maxQueuedRequests, long timeouts, long aborts, long rejections, long ioFailures, long otherFailures, long connectFailures, long tlsFailures )
+	{
+		this.destination = destination;
+		this.requests = requests;
+		this.latencyP50 = latencyP50;
+		this.latencyP95 = latencyP95;
+		this.latencyP99 = latencyP99;
+		this.connects = connects;
+		this.connectTimeP50 = connectTimeP50;
+		this.connectTimeP99 = connectTimeP99;
+		this.tlsHandshakes = tlsHandshakes;
+		this.tlsHandshakeTimeP50 = tlsHandshakeTimeP50;
+		this.tlsHandshakeTimeP99 = tlsHandshakeTimeP99;
+		this.activeConnections = activeConnections;
+		this.idleConnections = idleConnections;
+		this.pendingConnections = pendingConnections;
+		this.maxConnections = maxConnections;
+		this.queuedRequests = queuedRequests;
+		this.maxQueuedRequests = maxQueuedRequests;
+		this.timeouts = timeouts;
+		this.aborts = aborts;
+		this.rejections = rejections;
+		this.ioFailures = ioFailures;
+		this.otherFailures = otherFailures;
+		this.connectFailures = connectFailures;
+		this.tlsFailures = tlsFailures;
+	}
+
+	/**
+	 * The destination ("scheme://host:port").
+	 * 
+	 * @return The destination.
+	 */
+	public String getDestination()
+	{
+		return destination;
+	}
+
+	/**
+	 * The number of completed requests.
+	 * 
+	 * @return The number of requests.
+	 */
+	public long getRequests()
+	{
+		return requests;
+	}
+
+	/**
+	 * The median request latency in microseconds.
+	 * 
+	 * @return The latency or -1.
+	 */
+	public long getLatencyP50()
+	{
+		return latencyP50;
+	}
+
+	/**
+	 * The 95th percentile request latency in microseconds.
+	 * 
+	 * @return The latency or -1.
+	 */
+	public long getLatencyP95()
+	{
+		return latencyP95;
+	}
+
+	/**
+	 * The 99th percentile request latency in microseconds.
+	 * 
+	 * @return The latency or -1.
+	 */
+	public long getLatencyP99()
+	{
+		return latencyP99;
+	}
+
+	/**
+	 * The number of connections opened.
+	 * 
+	 * @return The number of connections.
+	 */
+	public long getConnects()
+	{
+		return connects;
+	}
+
+	/**
+	 * The median time in microseconds to open a connection, including address
+	 * resolution.
+	 * 
+	 * @return The connect time or -1.
+	 */
+	public long getConnectTimeP50()
+	{
+		return connectTimeP50;
+	}
+
+	/**
+	 * The 99th percentile time in microseconds to open a connection, including
+	 * address resolution.
+	 * 
+	 * @return The connect time or -1.
+	 */
+	public long getConnectTimeP99()
+	{
+		return connectTimeP99;
+	}
+
+	/**
+	 * The number of TLS handshakes.
+	 * 
+	 * @return The number of handshakes.
+	 */
+	public long getTlsHandshakes()
+	{
+		return tlsHandshakes;
+	}
+
+	/**
+	 * The median TLS handshake time in microseconds.
+	 * 
+	 * @return The handshake time or -1.
+	 */
+	public long getTlsHandshakeTimeP50()
+	{
+		return tlsHandshakeTimeP50;
+	}
+
+	/**
+	 * The 99th percentile TLS handshake time in microseconds.
+	 * 
+	 * @return The handshake time or -1.
+	 */
+	public long getTlsHandshakeTimeP99()
+	{
+		return tlsHandshakeTimeP99;
+	}
+
+	/**
+	 * The number of active connections in the pool.
+	 * 
+	 * @return The number of active connections.
+	 */
+	public int getActiveConnections()
+	{
+		return activeConnections;
+	}
+
+	/**
+	 * The number of idle connections in the pool.
+	 * 
+	 * @return The number of idle connections.
+	 */
+	public int getIdleConnections()
+	{
+		return idleConnections;
+	}
+
+	/**
+	 * The number of connections being opened.
+	 * 
+	 * @return The number of pending connections.
+	 */
+	public int getPendingConnections()
+	{
+		return pendingConnections;
+	}
+
+	/**
+	 * The max number of connections.
+	 * 
+	 * @return The max number of connections.
+	 */
+	public int getMaxConnections()
+	{
+		return maxConnections;
+	}
+
+	/**
+	 * The number of requests waiting for a connection.
+	 * 
+	 * @return The number of queued requests.
+	 */
+	public int getQueuedRequests()
+	{
+		return queuedRequests;
+	}
+
+	/**
+	 * The max number of queued requests, beyond which requests are rejected.
+	 * 
+	 * @return The max number of queued requests.
+	 */
+	public int getMaxQueuedRequests()
+	{
+		return maxQueuedRequests;
+	}
+
+	/**
+	 * The number of requests that timed out.
+	 * 
+	 * @return The number of timeouts.
+	 */
+	public long getTimeouts()
+	{
+		return timeouts;
+	}
+
+	/**
+	 * The number of requests that were aborted by the client (for example,
+	 * hedged requests that lost).
+	 * 
+	 * @return The number of aborts.
+	 */
+	public long getAborts()
+	{
+		return aborts;
+	}
+
+	/**
+	 * The number of requests that were rejected without being sent (because
+	 * the queue was full, the concurrency limit was reached or the circuit was
+	 * open).
+	 * 
+	 * @return The number of rejections.
+	 */
+	public long getRejections()
+	{
+		return rejections;
+	}
+
+	/**
+	 * The number of requests that failed with an I/O error.
+	 * 
+	 * @return The number of I/O failures.
+	 */
+	public long getIoFailures()
+	{
+		return ioFailures;
+	}
+
+	/**
+	 * The number of requests that failed otherwise.
+	 * 
+	 * @return The number of other failures.
+	 */
+	public long getOtherFailures()
+	{
+		return otherFailures;
+	}
+
+	/**
+	 * The number of connections that failed to open.
+	 * 
+	 * @return The number of connect failures.
+	 */
+	public long getConnectFailures()
+	{
+		return connectFailures;
+	}
+
+	/**
+	 * The number of failed TLS handshakes.
+	 * 
+	 * @return The number of TLS failures.
+	 */
+	public long getTlsFailures()
+	{
+		return tlsFailures;
+	}
+
+	@Override
+	public String toString()
+	{
+		return destination + ": requests=" + requests + ", latencyP50=" + latencyP50 + ", latencyP95=" + latencyP95 + ", latencyP99=" + latencyP99 + ", connects=" + connects + ", connectTimeP50=" + connectTimeP50 + ", connectTimeP99=" + connectTimeP99 + ", tlsHandshakes=" + tlsHandshakes + ", tlsHandshakeTimeP50=" + tlsHandshakeTimeP50 + ", tlsHandshakeTimeP99=" + tlsHandshakeTimeP99 + ", activeConnections=" + activeConnections + ", idleConnections=" + idleConnections + ", pendingConnections=" + pendingConnections + ", maxConnections=" + maxConnections + ", queuedRequests=" + queuedRequests + ", maxQueuedRequests=" + maxQueuedRequests + ", timeouts=" + timeouts + ", aborts=" + aborts + ", rejections=" + rejections + ", ioFailures=" + ioFailures + ", otherFailures=" + otherFailures + ", connectFailures=" + connectFailures + ", tlsFailures=" + tlsFailures;
+	}
+
+	/** The destination. */
+	private final String destination;
+
+	/** The number of completed requests. */
+	private final long requests;
+
+	/** The median request latency. */
+	private final long latencyP50;
+
+	/** The 95th percentile request latency. */
+	private final long latencyP95;
+
+	/** The 99th percentile request latency. */
+	private final long latencyP99;
+
+	/** The number of connections opened. */
+	private final long connects;
+
+	/** The median connect time. */
+	private final long connectTimeP50;
+
+	/** The 99th percentile connect time. */
+	private final long connectTimeP99;
+
+	/** The number of TLS handshakes. */
+	private final long tlsHandshakes;
+
+	/** The median TLS handshake time. */
+	private final long tlsHandshakeTimeP50;
+
+	/** The 99th percentile TLS handshake time. */
+	private final long tlsHandshakeTimeP99;
+
+	/** The number of active connections. */
+	private final int activeConnections;
+
+	/** The number of idle connections. */
+	private final int idleConnections;
+
+	/** The number of pending connections. */
+	private final int pendingConnections;
+
+	/** The max number of connections. */
+	private final int maxConnections;
+
+	/** The number of queued requests. */
+	private final int queuedRequests;
+
+	/** The max number of queued requests. */
+	private final int maxQueuedRequests;
+
+	/** The number of timeouts. */
+	private final long timeouts;
+
+	/** The number of aborts. */
+	private final long aborts;
+
+	/** The number of rejections. */
+	private final long rejections;
+
+	/** The number of I/O failures. */
+	private final long ioFailures;
+
+	/** The number of other failures. */
+	private final long otherFailures;
+
+	/** The number of connect failures. */
+	private final long connectFailures;
+
+	/** The number of TLS failures. */
+	private final long tlsFailures;
+}
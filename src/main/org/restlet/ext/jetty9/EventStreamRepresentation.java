@@ -0,0 +1,309 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.restlet.data.CharacterSet;
+import org.restlet.data.MediaType;
+import org.restlet.representation.OutputRepresentation;
+
+/**
+ * Server-Sent Events stream. Return it as the response entity, keep a
+ * reference to it, and send events to it from any thread for as long as the
+ * client stays connected.
+ * <p>
+ * The Jetty server connectors do not hold a thread for the stream: the
+ * handling thread is returned to the pool as soon as the response head is
+ * written, and queued events are written asynchronously, coalescing those that
+ * are queued together into a single write and flush. An idle stream costs
+ * only memory.
+ * <p>
+ * Each stream has a bounded queue: {@link #send(String)} returns false rather
+ * than queue more than {@link #getMaxQueuedBytes()} bytes for a slow client.
+ * It also returns false once the stream is closed, either by
+ * {@link #close()} or because the client disconnected.
+ * <p>
+ * Other connectors write the stream with a blocking thread.
+ * 
+ * @author Tal Liron
+ */
+public class EventStreamRepresentation extends OutputRepresentation
+{
+	/** The Server-Sent Events media type. */
+	public static final MediaType TEXT_EVENT_STREAM = MediaType.valueOf( "text/event-stream" );
+
+	/**
+	 * Constructor. The queue is limited to 64 KiB.
+	 */
+	public EventStreamRepresentation()
+	{
+		this( 64 * 1024 );
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxQueuedBytes
+	 *        The maximum number of bytes queued for the client
+	 */
+	public EventStreamRepresentation( int maxQueuedBytes )
+	{
+		super( TEXT_EVENT_STREAM );
+		setCharacterSet( CharacterSet.UTF_8 );
+		setTransient( true );
+		this.maxQueuedBytes = maxQueuedBytes;
+	}
+
+	/**
+	 * The maximum number of bytes queued for the client.
+	 * 
+	 * @return The maximum number of queued bytes.
+	 */
+	public int getMaxQueuedBytes()
+	{
+		return maxQueuedBytes;
+	}
+
+	/**
+	 * The number of bytes currently queued for the client.
+	 * 
+	 * @return The number of queued bytes.
+	 */
+	public int getQueuedBytes()
+	{
+		return queuedBytes.get();
+	}
+
+	/**
+	 * Whether the stream is closed, either by {@link #close()} or because the
+	 * client disconnected.
+	 * 
+	 * @return True if closed.
+	 */
+	public boolean isClosed()
+	{
+		return closed;
+	}
+
+	/**
+	 * Sends an unnamed event.
+	 * 
+	 * @param data
+	 *        The event data (may contain line breaks); null is sent as empty
+	 *        data
+	 * @return True if queued, false if the queue is full or the stream is
+	 *         closed
+	 */
+	public boolean send( String data )
+	{
+		return send( null, null, data );
+	}
+
+	/**
+	 * Sends an event.
+	 * 
+	 * @param event
+	 *        The event name or null
+	 * @param id
+	 *        The event ID or null
+	 * @param data
+	 *        The event data (may contain line breaks); null is sent as empty
+	 *        data
+	 * @return True if queued, false if the queue is full or the stream is
+	 *         closed
+	 */
+	public boolean send( String event, String id, String data )
+	{
+		final StringBuilder builder = new StringBuilder();
+		if( event != null )
+			builder.append( "event: " ).append( event ).append( '\n' );
+		if( id != null )
+			builder.append( "id: " ).append( id ).append( '\n' );
+		if( data == null )
+			data = "";
+		for( String line : data.split( "\r\n|\r|\n", -1 ) )
+			builder.append( "data: " ).append( line ).append( '\n' );
+		builder.append( '\n' );
+		return offer( builder.toString().getBytes( StandardCharsets.UTF_8 ) );
+	}
+
+	/**
+	 * Sends a comment, which clients ignore. Useful as a keep-alive for
+	 * intermediaries that close idle connections.
+	 * 
+	 * @param comment
+	 *        The comment
+	 * @return True if queued, false if the queue is full or the stream is
+	 *         closed
+	 */
+	public boolean sendComment( String comment )
+	{
+		return offer( ( ": " + comment + "\n\n" ).getBytes( StandardCharsets.UTF_8 ) );
+	}
+
+	/**
+	 * Closes the stream. Events that are already queued are still written.
+	 */
+	public void close()
+	{
+		closed = true;
+		notifyListener();
+	}
+
+	/**
+	 * Whether there are queued events.
+	 * <p>
+	 * Used by the connector.
+	 * 
+	 * @return True if there are queued events.
+	 */
+	public boolean hasQueued()
+	{
+		return !queue.isEmpty();
+	}
+
+	/**
+	 * Removes the next queued event.
+	 * <p>
+	 * Used by the connector.
+	 * 
+	 * @return The encoded event or null if none are queued.
+	 */
+	public byte[] poll()
+	{
+		final byte[] bytes = queue.poll();
+		if( bytes != null )
+			queuedBytes.addAndGet( -bytes.length );
+		return bytes;
+	}
+
+	/**
+	 * Sets the listener that is notified when events are queued or when the
+	 * stream is closed. The listener may be called from any thread.
+	 * <p>
+	 * Used by the connector.
+	 * 
+	 * @param listener
+	 *        The listener
+	 */
+	public void setListener( Runnable listener )
+	{
+		this.listener = listener;
+		notifyListener();
+	}
+
+	/**
+	 * Writes the stream with a blocking thread, until it is closed. Used by
+	 * connectors that do not support asynchronous event streams.
+	 */
+	@Override
+	public void write( OutputStream outputStream ) throws IOException
+	{
+		setListener( new Runnable()
+		{
+			public void run()
+			{
+				synchronized( EventStreamRepresentation.this )
+				{
+					EventStreamRepresentation.this.notifyAll();
+				}
+			}
+		} );
+
+		try
+		{
+			while( true )
+			{
+				byte[] bytes;
+				synchronized( this )
+				{
+					while( ( ( bytes = poll() ) == null ) && !closed )
+						wait();
+				}
+
+				if( bytes == null )
+					break;
+
+				outputStream.write( bytes );
+				if( !hasQueued() )
+					outputStream.flush();
+			}
+		}
+		catch( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch( IOException e )
+		{
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Queues an encoded event.
+	 * 
+	 * @param bytes
+	 *        The encoded event
+	 * @return True if queued, false if the queue is full or the stream is
+	 *         closed
+	 */
+	private boolean offer( byte[] bytes )
+	{
+		if( closed )
+			return false;
+
+		// A single event is always accepted into an empty queue
+		final int queued = queuedBytes.addAndGet( bytes.length );
+		if( ( queued > maxQueuedBytes ) && ( queued != bytes.length ) )
+		{
+			queuedBytes.addAndGet( -bytes.length );
+			return false;
+		}
+
+		queue.add( bytes );
+		notifyListener();
+		return true;
+	}
+
+	/**
+	 * Notifies the listener, if there is one.
+	 */
+	private void notifyListener()
+	{
+		final Runnable listener = this.listener;
+		if( listener != null )
+			listener.run();
+	}
+
+	/** The maximum number of queued bytes. */
+	private final int maxQueuedBytes;
+
+	/** The queued encoded events. */
+	private final Queue<byte[]> queue = new ConcurrentLinkedQueue<byte[]>();
+
+	/** The number of queued bytes. */
+	private final AtomicInteger queuedBytes = new AtomicInteger();
+
+	/** The listener. */
+	private volatile Runnable listener;
+
+	/** Whether the stream is closed. */
+	private volatile boolean closed;
+}
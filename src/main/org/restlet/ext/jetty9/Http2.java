@@ -17,10 +17,24 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 
+import org.restlet.Response;
 import org.restlet.data.Protocol;
+import org.restlet.engine.adapter.HttpResponse;
+import org.restlet.ext.jetty9.internal.JettyServerCall;
 
 /**
  * HTTP/2 utilities.
+ * <p>
+ * Server push lets a resource send linked resources (e.g. stylesheets and
+ * scripts) to the client along with its own response, saving the client a
+ * round trip. For example, from within a Restlet resource:
+ * 
+ * <pre>
+ * Http2.push( getResponse(), "/css/app.css", "/js/app.js" );
+ * </pre>
+ * 
+ * Alternatively, set the "http2.pushPreloadLinks" server parameter to push
+ * resources listed in "Link: rel=preload" response headers.
  * 
  * @author Tal Liron
  */
@@ -41,6 +55,64 @@ public class Http2
 	 */
 	public static final String[] TLS_BAD_CIPHER_SUITES;
 
+	/**
+	 * Whether server push is supported for a response. Push is only supported
+	 * by the Jetty server connector over HTTP/2, if the client has not disabled
+	 * it.
+	 * 
+	 * @param response
+	 *        The current response
+	 * @return True if server push is supported
+	 */
+	public static boolean isPushSupported( Response response )
+	{
+		final JettyServerCall call = getJettyServerCall( response );
+		return ( call != null ) && call.isPushSupported();
+	}
+
+	/**
+	 * Pushes resources to the client over the same HTTP/2 connection as the
+	 * response. The pushed requests copy the headers of the original request,
+	 * and are handled by the server like any other request. Does nothing if
+	 * push is not supported.
+	 * <p>
+	 * Must be called before the response is committed.
+	 * 
+	 * @param response
+	 *        The current response
+	 * @param paths
+	 *        The paths of the resources to push, either absolute or relative to
+	 *        the path of the request; may include a query
+	 * @return True if the pushes were initiated, false if push is not supported
+	 */
+	public static boolean push( Response response, String... paths )
+	{
+		final JettyServerCall call = getJettyServerCall( response );
+		if( ( call == null ) || !call.isPushSupported() )
+			return false;
+		for( String path : paths )
+			call.push( path );
+		return true;
+	}
+
+	/**
+	 * The Jetty server call for a response.
+	 * 
+	 * @param response
+	 *        The response
+	 * @return The Jetty server call or null
+	 */
+	private static JettyServerCall getJettyServerCall( Response response )
+	{
+		if( response instanceof HttpResponse )
+		{
+			final Object call = ( (HttpResponse) response ).getHttpCall();
+			if( call instanceof JettyServerCall )
+				return (JettyServerCall) call;
+		}
+		return null;
+	}
+
 	static
 	{
 		final ArrayList<String> ciphers = new ArrayList<String>();
@@ -12,30 +12,64 @@
 
 package org.restlet.ext.jetty9;
 
+import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.CookieStore;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
+import javax.management.ObjectName;
+
 import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpClientTransport;
+import org.eclipse.jetty.client.http.HttpClientTransportOverHTTP;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.util.SocketAddressResolver;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
 import org.eclipse.jetty.util.thread.Scheduler;
 import org.restlet.Client;
 import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.Parameter;
 import org.restlet.data.Protocol;
+import org.restlet.data.Status;
 import org.restlet.engine.adapter.ClientCall;
 import org.restlet.engine.adapter.HttpClientHelper;
 import org.restlet.engine.ssl.DefaultSslContextFactory;
 import org.restlet.engine.util.ReferenceUtils;
+import org.restlet.ext.jetty9.internal.Batch;
+import org.restlet.ext.jetty9.internal.CachingSocketAddressResolver;
+import org.restlet.ext.jetty9.internal.CircuitBreaker;
+import org.restlet.ext.jetty9.internal.ClientMetrics;
+import org.restlet.ext.jetty9.internal.ConcurrencyLimiter;
+import org.restlet.ext.jetty9.internal.ConnectionPrewarmer;
+import org.restlet.ext.jetty9.internal.Http2ClientSupport;
+import org.restlet.ext.jetty9.internal.HttpCache;
+import org.restlet.ext.jetty9.internal.InstrumentedHttpClient;
 import org.restlet.ext.jetty9.internal.JettyClientCall;
+import org.restlet.ext.jetty9.internal.LatencyHistogram;
+import org.restlet.ext.jetty9.internal.LoadBalancer;
+import org.restlet.ext.jetty9.internal.RequestCoalescer;
+import org.restlet.ext.jetty9.internal.ResponseLeakDetector;
+import org.restlet.ext.jetty9.internal.RetryBudget;
+import org.restlet.ext.jetty9.internal.SharedHttpClients;
+import org.restlet.ext.jetty9.internal.UnixSocketClientSupport;
 
 /**
  * HTTP client connector using the Jetty project.<br>
@@ -56,6 +90,39 @@ import org.restlet.ext.jetty9.internal.JettyClientCall;
  * <td>The timeout in milliseconds for the DNS resolution of host addresses</td>
  * </tr>
  * <tr>
+ * <td>adaptiveConcurrency</td>
+ * <td>boolean</td>
+ * <td>false</td>
+ * <td>Whether the concurrent requests to each destination are limited
+ * adaptively, based on the observed round-trip time; requests beyond the limit
+ * fail fast with a connector error instead of queueing</td>
+ * </tr>
+ * <tr>
+ * <td>adaptiveConcurrency.initialLimit</td>
+ * <td>int</td>
+ * <td>20</td>
+ * <td>The initial adaptive limit of concurrent requests per destination</td>
+ * </tr>
+ * <tr>
+ * <td>adaptiveConcurrency.maxLimit</td>
+ * <td>int</td>
+ * <td>200</td>
+ * <td>The max adaptive limit of concurrent requests per destination</td>
+ * </tr>
+ * <tr>
+ * <td>adaptiveConcurrency.minLimit</td>
+ * <td>int</td>
+ * <td>1</td>
+ * <td>The min adaptive limit of concurrent requests per destination</td>
+ * </tr>
+ * <tr>
+ * <td>adaptiveResponseThreshold</td>
+ * <td>int</td>
+ * <td>16384</td>
+ * <td>For the "adaptive" responseMode, the max size in bytes of responses that
+ * are buffered in a single pooled buffer; larger responses are streamed</td>
+ * </tr>
+ * <tr>
  * <td>bindAddress</td>
  * <td>String</td>
  * <td>null</td>
@@ -70,6 +137,75 @@ import org.restlet.ext.jetty9.internal.JettyClientCall;
  * bindAddress</td>
  * </tr>
  * <tr>
+ * <td>cache</td>
+ * <td>boolean</td>
+ * <td>false</td>
+ * <td>Whether cacheable GET responses are kept in a private HTTP cache (RFC
+ * 7234) and served from it while fresh, without a network request</td>
+ * </tr>
+ * <tr>
+ * <td>cache.diskDirectory</td>
+ * <td>String</td>
+ * <td>null</td>
+ * <td>The directory in which a private subdirectory is created for cached
+ * responses evicted from memory; when null they are discarded</td>
+ * </tr>
+ * <tr>
+ * <td>cache.diskSize</td>
+ * <td>long</td>
+ * <td>256*1024*1024</td>
+ * <td>The max size in bytes of cached responses in cache.diskDirectory</td>
+ * </tr>
+ * <tr>
+ * <td>cache.maxEntrySize</td>
+ * <td>int</td>
+ * <td>1024*1024</td>
+ * <td>The max size in bytes of a single cached response</td>
+ * </tr>
+ * <tr>
+ * <td>cache.memorySize</td>
+ * <td>long</td>
+ * <td>16*1024*1024</td>
+ * <td>The max size in bytes of cached responses kept in memory</td>
+ * </tr>
+ * <tr>
+ * <td>circuitBreaker</td>
+ * <td>boolean</td>
+ * <td>false</td>
+ * <td>Whether requests to a destination fail fast with a connector error after
+ * consecutive failures (connection failures or 5xx statuses), until a trial
+ * request succeeds</td>
+ * </tr>
+ * <tr>
+ * <td>circuitBreaker.failureThreshold</td>
+ * <td>int</td>
+ * <td>5</td>
+ * <td>The number of consecutive failures that open the circuit of a
+ * destination</td>
+ * </tr>
+ * <tr>
+ * <td>circuitBreaker.openTime</td>
+ * <td>long</td>
+ * <td>10000</td>
+ * <td>How long in milliseconds an open circuit rejects requests before
+ * letting a trial request through</td>
+ * </tr>
+ * <tr>
+ * <td>coalesceHeaders</td>
+ * <td>String</td>
+ * <td>Accept,Accept-Encoding,Accept-Language,Authorization,Cookie</td>
+ * <td>Comma-separated names of the request headers that, in addition to the
+ * method and URI, must match for requests to be coalesced</td>
+ * </tr>
+ * <tr>
+ * <td>coalesceRequests</td>
+ * <td>boolean</td>
+ * <td>false</td>
+ * <td>Whether identical concurrent GET and HEAD requests are coalesced into a
+ * single upstream request, whose buffered response is shared by all of
+ * them</td>
+ * </tr>
+ * <tr>
  * <td>connectTimeout</td>
  * <td>long</td>
  * <td>15000</td>
@@ -77,12 +213,69 @@ import org.restlet.ext.jetty9.internal.JettyClientCall;
  * destinations</td>
  * </tr>
  * <tr>
+ * <td>dns.cache</td>
+ * <td>boolean</td>
+ * <td>false</td>
+ * <td>Whether to cache host addresses, refreshing them in the background and
+ * using stale addresses while DNS is slow or failing (ignored if
+ * {@link #getSocketAddressResolver(HttpClient)} is overridden)</td>
+ * </tr>
+ * <tr>
+ * <td>dns.staleTtl</td>
+ * <td>long</td>
+ * <td>60000</td>
+ * <td>How long in milliseconds after their TTL cached host addresses may
+ * still be used while they are refreshed</td>
+ * </tr>
+ * <tr>
+ * <td>dns.ttl</td>
+ * <td>long</td>
+ * <td>30000</td>
+ * <td>How long in milliseconds host addresses are cached</td>
+ * </tr>
+ * <tr>
  * <td>followRedirects</td>
  * <td>boolean</td>
  * <td>true</td>
  * <td>Whether to follow HTTP redirects</td>
  * </tr>
  * <tr>
+ * <td>hedging</td>
+ * <td>boolean</td>
+ * <td>false</td>
+ * <td>Whether idempotent requests without an entity are hedged: if there is no
+ * response after hedging.delay, a duplicate request is sent and the first
+ * response wins</td>
+ * </tr>
+ * <tr>
+ * <td>hedging.delay</td>
+ * <td>String</td>
+ * <td>p95</td>
+ * <td>The hedging delay in milliseconds, or a latency percentile of the
+ * destination in the form "pNN"</td>
+ * </tr>
+ * <tr>
+ * <td>hedging.minDelay</td>
+ * <td>long</td>
+ * <td>5</td>
+ * <td>The min hedging delay in milliseconds when using a percentile</td>
+ * </tr>
+ * <tr>
+ * <td>http2.maxConcurrentStreams</td>
+ * <td>int</td>
+ * <td>128</td>
+ * <td>For the HTTP/2 transports, the initial max number of concurrent streams
+ * (requests) multiplexed over each connection; it is updated by the server's
+ * announced limit</td>
+ * </tr>
+ * <tr>
+ * <td>http2.maxConnectionsPerDestination</td>
+ * <td>int</td>
+ * <td>1</td>
+ * <td>For the HTTP/2 transports, the max number of connections to open to
+ * each destination; used instead of maxConnectionsPerDestination</td>
+ * </tr>
+ * <tr>
  * <td>idleTimeout</td>
  * <td>long</td>
  * <td>0</td>
@@ -96,6 +289,38 @@ import org.restlet.ext.jetty9.internal.JettyClientCall;
  * <td>Sets the max number of connections to open to each destination</td>
  * </tr>
  * <tr>
+ * <td>leakTracking</td>
+ * <td>boolean</td>
+ * <td>false</td>
+ * <td>Whether to log (with the site where they were obtained) response
+ * entities that are garbage collected without having been consumed or closed,
+ * and abort their requests to release their connections</td>
+ * </tr>
+ * <tr>
+ * <td>loadBalancing</td>
+ * <td>String</td>
+ * <td>roundRobin</td>
+ * <td>How requests to a service are balanced among its endpoints:
+ * "roundRobin", "leastOutstanding" (fewest outstanding requests) or
+ * "powerOfTwoChoices" (the fewer outstanding requests of two random
+ * endpoints)</td>
+ * </tr>
+ * <tr>
+ * <td>maxBufferedRequestLength</td>
+ * <td>int</td>
+ * <td>64*1024</td>
+ * <td>The max size in bytes of request entities of known size that are read
+ * into memory and sent from a single buffer; larger entities are streamed
+ * (files are always sent from their channel)</td>
+ * </tr>
+ * <tr>
+ * <td>maxBufferedResponseLength</td>
+ * <td>int</td>
+ * <td>2*1024*1024</td>
+ * <td>The max size in bytes of asynchronous responses that are buffered in
+ * memory before the callback is called; larger responses are streamed</td>
+ * </tr>
+ * <tr>
  * <td>maxRedirects</td>
  * <td>int</td>
  * <td>8</td>
@@ -108,6 +333,70 @@ import org.restlet.ext.jetty9.internal.JettyClientCall;
  * <td>Sets the max number of requests that may be queued to a destination</td>
  * </tr>
  * <tr>
+ * <td>metrics</td>
+ * <td>boolean</td>
+ * <td>false</td>
+ * <td>Whether to record per-destination metrics: request latencies, connect
+ * and TLS handshake times, connection pool and queue state, and failures by
+ * cause (see {@link #getMetrics()})</td>
+ * </tr>
+ * <tr>
+ * <td>metrics.jmx</td>
+ * <td>boolean</td>
+ * <td>false</td>
+ * <td>Whether to register the metrics as a JMX MXBean</td>
+ * </tr>
+ * <tr>
+ * <td>metrics.jmxName</td>
+ * <td>String</td>
+ * <td>org.restlet.ext.jetty9:type=JettyHttpClientHelper,name=<i>number</i></td>
+ * <td>The JMX object name of the metrics MXBean</td>
+ * </tr>
+ * <tr>
+ * <td>outlierDetection.consecutiveFailures</td>
+ * <td>int</td>
+ * <td>5</td>
+ * <td>The number of consecutive failures (connection failures, 5xx statuses
+ * or, if outlierDetection.maxLatency is set, slow responses) after which a
+ * service endpoint is ejected</td>
+ * </tr>
+ * <tr>
+ * <td>outlierDetection.ejectionTime</td>
+ * <td>long</td>
+ * <td>30000</td>
+ * <td>How long in milliseconds an ejected service endpoint receives no
+ * requests</td>
+ * </tr>
+ * <tr>
+ * <td>outlierDetection.maxEjectionPercent</td>
+ * <td>int</td>
+ * <td>50</td>
+ * <td>The max percentage of a service's endpoints that can be ejected at
+ * once</td>
+ * </tr>
+ * <tr>
+ * <td>outlierDetection.maxLatency</td>
+ * <td>long</td>
+ * <td>0</td>
+ * <td>The latency in milliseconds above which a response counts as a failure
+ * of its service endpoint; 0 to ignore latency</td>
+ * </tr>
+ * <tr>
+ * <td>prewarm</td>
+ * <td>String</td>
+ * <td>null</td>
+ * <td>A destination to which idle connections are kept open, in the form
+ * "scheme://host:port=count" (count defaults to 1); if the host is a service,
+ * each of its endpoints is pre-warmed. Can be specified multiple times</td>
+ * </tr>
+ * <tr>
+ * <td>prewarm.interval</td>
+ * <td>long</td>
+ * <td>10000</td>
+ * <td>The interval in milliseconds at which pre-warmed connections are topped
+ * up (and, for HTTP/2, pinged)</td>
+ * </tr>
+ * <tr>
  * <td>removeIdleDestinations</td>
  * <td>boolean</td>
  * <td>false</td>
@@ -127,6 +416,77 @@ import org.restlet.ext.jetty9.internal.JettyClientCall;
  * <td>The size in bytes of the buffer used to read responses</td>
  * </tr>
  * <tr>
+ * <td>responseDrainLimit</td>
+ * <td>long</td>
+ * <td>65536</td>
+ * <td>The max number of remaining bytes to drain when a response entity is
+ * closed before its end, so that the connection can be reused; larger
+ * remainders abort the response, closing the connection</td>
+ * </tr>
+ * <tr>
+ * <td>responseDrainTimeout</td>
+ * <td>long</td>
+ * <td>1000</td>
+ * <td>The max time in milliseconds to wait for the remainder of a response
+ * entity that is being drained; if the server is slower, the response is
+ * aborted, closing the connection</td>
+ * </tr>
+ * <tr>
+ * <td>responseMode</td>
+ * <td>String</td>
+ * <td>stream</td>
+ * <td>How synchronous response entities are read; "stream" for an input
+ * stream, "channel" for a readable channel that hands Jetty's content buffers
+ * to the reader directly, with demand-based flow control, "adaptive" for a
+ * channel that buffers small responses (see adaptiveResponseThreshold) and
+ * streams larger ones</td>
+ * </tr>
+ * <tr>
+ * <td>retry.backoff</td>
+ * <td>long</td>
+ * <td>50</td>
+ * <td>The initial delay in milliseconds before a retry; it doubles (with
+ * jitter) for each further retry</td>
+ * </tr>
+ * <tr>
+ * <td>retry.budgetRatio</td>
+ * <td>double</td>
+ * <td>0.1</td>
+ * <td>The max ratio of retries and hedged requests to requests, over a sliding
+ * ten-second window</td>
+ * </tr>
+ * <tr>
+ * <td>retry.maxRetries</td>
+ * <td>int</td>
+ * <td>0</td>
+ * <td>The max number of retries of idempotent requests without an entity that
+ * fail to connect or get a 502, 503 or 504 status; each attempt gets an equal
+ * share of the time left of the timeout</td>
+ * </tr>
+ * <tr>
+ * <td>retry.minPerSecond</td>
+ * <td>int</td>
+ * <td>10</td>
+ * <td>The number of retries and hedged requests per second that are allowed
+ * regardless of retry.budgetRatio</td>
+ * </tr>
+ * <tr>
+ * <td>service</td>
+ * <td>String</td>
+ * <td>null</td>
+ * <td>A logical service in the form "name=host:port,host:port,..."; requests
+ * to the host "name" are balanced among the endpoints (see loadBalancing). Can
+ * be specified multiple times</td>
+ * </tr>
+ * <tr>
+ * <td>sharedClient</td>
+ * <td>boolean</td>
+ * <td>false</td>
+ * <td>Whether to share the Jetty HTTP client (threads and connection pools)
+ * with other client helpers in this process that have the same
+ * configuration</td>
+ * </tr>
+ * <tr>
  * <td>stopTimeout</td>
  * <td>long</td>
  * <td>30000</td>
@@ -152,6 +512,31 @@ import org.restlet.ext.jetty9.internal.JettyClientCall;
  * <td>Request timeout in milliseconds</td>
  * </tr>
  * <tr>
+ * <td>transport</td>
+ * <td>String</td>
+ * <td>http1</td>
+ * <td>The client transport; "http1" for HTTP/1.1, "h2" for HTTP/2 negotiated
+ * via ALPN for HTTPS, "h2c" for HTTP/2 with prior knowledge (cleartext for
+ * HTTP, and without ALPN for HTTPS); the HTTP/2 transports require the Jetty
+ * HTTP/2 client transport library</td>
+ * </tr>
+ * <tr>
+ * <td>unixSocket</td>
+ * <td>String</td>
+ * <td>null</td>
+ * <td>The path of a Unix domain socket to send all requests to, instead of
+ * connecting to their hosts via TCP; uses HTTP/1.1 whatever the transport.
+ * Requires the Jetty Unix socket library</td>
+ * </tr>
+ * <tr>
+ * <td>unixSocketMapping</td>
+ * <td>String</td>
+ * <td>null</td>
+ * <td>Maps a host to the path of a Unix domain socket, in the form
+ * "host=path"; requests to the host are sent to the socket instead of via
+ * TCP. May be set multiple times. Requires the Jetty Unix socket library</td>
+ * </tr>
+ * <tr>
  * <td>userAgentField</td>
  * <td>String</td>
  * <td>null</td>
@@ -212,6 +597,68 @@ public class JettyHttpClientHelper extends HttpClientHelper
 		return result;
 	}
 
+	/**
+	 * Sends many requests asynchronously and completes when all of them have
+	 * succeeded, when one has failed, or when the deadline expires. Unfinished
+	 * requests are then aborted.
+	 * 
+	 * @param requests
+	 *        The requests
+	 * @param timeout
+	 *        The deadline in milliseconds from now, or 0 for none
+	 * @return A future for the responses, in the order of the requests
+	 * @see #sendQuorum(List, int, long)
+	 */
+	public CompletableFuture<List<Response>> sendAll( List<Request> requests, long timeout )
+	{
+		return sendQuorum( requests, requests.size(), timeout );
+	}
+
+	/**
+	 * Sends many requests asynchronously and completes when one of them has
+	 * succeeded, when all have failed, or when the deadline expires. Unfinished
+	 * requests are then aborted.
+	 * 
+	 * @param requests
+	 *        The requests
+	 * @param timeout
+	 *        The deadline in milliseconds from now, or 0 for none
+	 * @return A future for the responses, in the order of the requests
+	 * @see #sendQuorum(List, int, long)
+	 */
+	public CompletableFuture<List<Response>> sendAny( List<Request> requests, long timeout )
+	{
+		return sendQuorum( requests, 1, timeout );
+	}
+
+	/**
+	 * Sends many requests asynchronously and completes when a quorum of them
+	 * have succeeded, when too many have failed for that to happen, or when the
+	 * deadline expires. Unfinished requests are then aborted, and their status
+	 * is {@link Status#CONNECTOR_ERROR_COMMUNICATION}.
+	 * <p>
+	 * Requests to the same destination are sent one after the other, which
+	 * only affects the order in which they are queued. No thread waits for the
+	 * responses, which are buffered or streamed as for other asynchronous
+	 * requests (see {@link #getMaxBufferedResponseLength()}); streamed
+	 * response entities must be read or released by the caller. The requests
+	 * are not modified, and their "onResponse" callbacks, if any, are still
+	 * called.
+	 * 
+	 * @param requests
+	 *        The requests
+	 * @param quorum
+	 *        The number of successful responses required
+	 * @param timeout
+	 *        The deadline in milliseconds from now, or 0 for none
+	 * @return A future for the responses, in the order of the requests,
+	 *         completed once all requests are finished or aborted
+	 */
+	public CompletableFuture<List<Response>> sendQuorum( List<Request> requests, int quorum, long timeout )
+	{
+		return new Batch( this, requests, quorum, timeout ).send();
+	}
+
 	/**
 	 * Returns the wrapped Jetty HTTP client.
 	 * 
@@ -222,13 +669,212 @@ public class JettyHttpClientHelper extends HttpClientHelper
 		return httpClient;
 	}
 
+	/**
+	 * Returns the client metrics.
+	 * 
+	 * @return The client metrics or null if not recording metrics.
+	 * @see #isMetrics()
+	 */
+	public ClientMetrics getClientMetrics()
+	{
+		return clientMetrics;
+	}
+
+	/**
+	 * Snapshots of the metrics of all destinations.
+	 * 
+	 * @return The destination metrics (empty if not recording metrics).
+	 * @see #isMetrics()
+	 */
+	public List<DestinationMetrics> getMetrics()
+	{
+		final ClientMetrics clientMetrics = getClientMetrics();
+		return clientMetrics != null ? clientMetrics.getDestinations() : new ArrayList<DestinationMetrics>();
+	}
+
+	/**
+	 * Returns the HTTP cache.
+	 * 
+	 * @return The HTTP cache or null if not caching.
+	 * @see #isCache()
+	 */
+	public HttpCache getHttpCache()
+	{
+		return httpCache;
+	}
+
+	/**
+	 * Returns the load balancer for a logical service.
+	 * 
+	 * @param host
+	 *        The host or null
+	 * @return The load balancer or null if the host is not a service.
+	 * @see #getServices()
+	 */
+	public LoadBalancer getLoadBalancer( String host )
+	{
+		return host != null ? loadBalancers.get( host.toLowerCase() ) : null;
+	}
+
+	/**
+	 * Returns the circuit breaker for a destination, creating it if necessary.
+	 * 
+	 * @param destination
+	 *        The destination ("scheme://host:port")
+	 * @return The circuit breaker or null if not circuit breaking.
+	 * @see #isCircuitBreaker()
+	 */
+	public CircuitBreaker getCircuitBreaker( String destination )
+	{
+		if( !isCircuitBreaker() )
+			return null;
+		return circuitBreakers.computeIfAbsent( destination, d -> new CircuitBreaker( d, getCircuitBreakerFailureThreshold(), getCircuitBreakerOpenTime(), getLogger() ) );
+	}
+
+	/**
+	 * Returns the concurrency limiter for a destination, creating it if
+	 * necessary.
+	 * 
+	 * @param destination
+	 *        The destination ("scheme://host:port")
+	 * @return The concurrency limiter or null if not limiting concurrency.
+	 * @see #isAdaptiveConcurrency()
+	 */
+	public ConcurrencyLimiter getConcurrencyLimiter( String destination )
+	{
+		if( !isAdaptiveConcurrency() )
+			return null;
+		return concurrencyLimiters.computeIfAbsent( destination, d -> new ConcurrencyLimiter( getAdaptiveConcurrencyInitialLimit(), getAdaptiveConcurrencyMinLimit(), getAdaptiveConcurrencyMaxLimit() ) );
+	}
+
+	/**
+	 * Returns the latency histogram for a destination, creating it if
+	 * necessary.
+	 * 
+	 * @param destination
+	 *        The destination ("scheme://host:port")
+	 * @return The latency histogram or null if not hedging.
+	 * @see #isHedging()
+	 */
+	public LatencyHistogram getLatencyHistogram( String destination )
+	{
+		if( !isHedging() )
+			return null;
+		return latencyHistograms.computeIfAbsent( destination, d -> new LatencyHistogram( LATENCY_WINDOW ) );
+	}
+
+	/**
+	 * Returns the retry budget, shared by all requests.
+	 * 
+	 * @return The retry budget or null if neither hedging nor retrying.
+	 * @see #getRetryBudgetRatio()
+	 */
+	public RetryBudget getRetryBudget()
+	{
+		return retryBudget;
+	}
+
+	/**
+	 * Returns the request coalescer.
+	 * 
+	 * @return The request coalescer or null if not coalescing requests.
+	 * @see #isCoalesceRequests()
+	 */
+	public RequestCoalescer getRequestCoalescer()
+	{
+		return requestCoalescer;
+	}
+
+	/**
+	 * Returns the response leak detector.
+	 * 
+	 * @return The response leak detector or null if not tracking leaks.
+	 * @see #isLeakTracking()
+	 */
+	public ResponseLeakDetector getResponseLeakDetector()
+	{
+		return responseLeakDetector;
+	}
+
+	/**
+	 * Returns the wrapped Jetty HTTP client for a host. Hosts mapped to a Unix
+	 * domain socket have their own client.
+	 * 
+	 * @param host
+	 *        The host or null
+	 * @return The wrapped Jetty HTTP client for the host.
+	 * @see #getUnixSocketMapping()
+	 */
+	public HttpClient getHttpClient( String host )
+	{
+		if( host != null )
+		{
+			final HttpClient unixSocketHttpClient = unixSocketHttpClients.get( host.toLowerCase() );
+			if( unixSocketHttpClient != null )
+				return unixSocketHttpClient;
+		}
+		return getHttpClient();
+	}
+
 	@Override
 	public void start() throws Exception
 	{
 		super.start();
 
+		if( isMetrics() && ( clientMetrics == null ) )
+		{
+			clientMetrics = new ClientMetrics( () ->
+			{
+				final List<HttpClient> httpClients = new ArrayList<HttpClient>( unixSocketHttpClients.values() );
+				final HttpClient httpClient = getHttpClient();
+				if( httpClient != null )
+					httpClients.add( 0, httpClient );
+				return httpClients;
+			}, LATENCY_WINDOW );
+		}
+
+		// Registered before anything is started, so that a failure leaves
+		// nothing running
+		final ClientMetrics clientMetrics = getClientMetrics();
+		if( ( clientMetrics != null ) && isMetricsJmx() && ( metricsObjectName == null ) )
+		{
+			final ObjectName objectName = new ObjectName( getMetricsJmxName() );
+			ManagementFactory.getPlatformMBeanServer().registerMBean( clientMetrics, objectName );
+			metricsObjectName = objectName;
+		}
+
 		if( httpClient == null )
-			httpClient = createHttpClient();
+		{
+			if( isSharedClient() )
+			{
+				httpClient = SharedHttpClients.acquire( getSharedClientKey( null ), this::createHttpClient );
+				sharedClient = true;
+			}
+			else
+				httpClient = createHttpClient();
+		}
+
+		for( Map.Entry<String, String[]> entry : getServices().entrySet() )
+			loadBalancers.put( entry.getKey().toLowerCase(), new LoadBalancer( entry.getKey(), entry.getValue(), getLoadBalancing(), getOutlierDetectionConsecutiveFailures(), getOutlierDetectionEjectionTime(), getOutlierDetectionMaxLatency(), getOutlierDetectionMaxEjectionPercent(), getLogger() ) );
+
+		if( ( isHedging() || ( getRetryMaxRetries() > 0 ) ) && ( retryBudget == null ) )
+			retryBudget = new RetryBudget( getRetryBudgetRatio(), getRetryMinPerSecond() );
+
+		if( isCoalesceRequests() && ( requestCoalescer == null ) )
+			requestCoalescer = new RequestCoalescer();
+
+		if( isCache() && ( httpCache == null ) )
+		{
+			final String diskDirectory = getCacheDiskDirectory();
+			httpCache = new HttpCache( getCacheMemorySize(), diskDirectory != null ? new File( diskDirectory ) : null, getCacheDiskSize(), getCacheMaxEntrySize(), getLogger() );
+		}
+
+		if( isLeakTracking() && ( responseLeakDetector == null ) )
+		{
+			final ResponseLeakDetector responseLeakDetector = new ResponseLeakDetector( getLogger() );
+			responseLeakDetector.start();
+			this.responseLeakDetector = responseLeakDetector;
+		}
 
 		final HttpClient httpClient = getHttpClient();
 		if( httpClient != null )
@@ -236,16 +882,95 @@ public class JettyHttpClientHelper extends HttpClientHelper
 			getLogger().info( "Starting a Jetty HTTP/HTTPS client" );
 			httpClient.start();
 		}
+
+		for( Map.Entry<String, String> entry : getUnixSocketMapping().entrySet() )
+		{
+			final String unixSocket = entry.getValue();
+			final HttpClient unixSocketHttpClient = isSharedClient() ? SharedHttpClients.acquire( getSharedClientKey( unixSocket ), () -> createHttpClient( UnixSocketClientSupport.createTransport( unixSocket ) ) ) : createHttpClient( UnixSocketClientSupport.createTransport( unixSocket ) );
+			getLogger().info( "Starting a Jetty HTTP client for " + entry.getKey() + " via Unix domain socket " + entry.getValue() );
+			unixSocketHttpClient.start();
+			unixSocketHttpClients.put( entry.getKey().toLowerCase(), unixSocketHttpClient );
+		}
+
+		final Map<String, Integer> prewarm = getPrewarm();
+		if( !prewarm.isEmpty() && ( connectionPrewarmer == null ) )
+		{
+			final ConnectionPrewarmer connectionPrewarmer = new ConnectionPrewarmer( this, prewarm, getPrewarmInterval() );
+			connectionPrewarmer.start();
+			this.connectionPrewarmer = connectionPrewarmer;
+		}
 	}
 
 	@Override
 	public void stop() throws Exception
 	{
+		final ConnectionPrewarmer connectionPrewarmer = this.connectionPrewarmer;
+		if( connectionPrewarmer != null )
+		{
+			this.connectionPrewarmer = null;
+			connectionPrewarmer.stop();
+		}
+
 		final HttpClient httpClient = getHttpClient();
 		if( httpClient != null )
 		{
-			getLogger().info( "Stopping a Jetty HTTP/HTTPS client" );
-			httpClient.stop();
+			if( sharedClient )
+			{
+				// Shared clients are stopped by the last helper to release them
+				this.httpClient = null;
+				sharedClient = false;
+				if( SharedHttpClients.release( httpClient ) )
+				{
+					getLogger().info( "Stopping a shared Jetty HTTP/HTTPS client" );
+					httpClient.stop();
+				}
+			}
+			else
+			{
+				getLogger().info( "Stopping a Jetty HTTP/HTTPS client" );
+				httpClient.stop();
+			}
+		}
+
+		for( HttpClient unixSocketHttpClient : unixSocketHttpClients.values() )
+		{
+			if( !isSharedClient() || SharedHttpClients.release( unixSocketHttpClient ) )
+				unixSocketHttpClient.stop();
+		}
+		unixSocketHttpClients.clear();
+
+		loadBalancers.clear();
+		concurrencyLimiters.clear();
+		circuitBreakers.clear();
+		latencyHistograms.clear();
+		retryBudget = null;
+
+		final ObjectName metricsObjectName = this.metricsObjectName;
+		if( metricsObjectName != null )
+		{
+			this.metricsObjectName = null;
+			try
+			{
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean( metricsObjectName );
+			}
+			catch( Exception e )
+			{
+				getLogger().log( Level.FINE, "Could not unregister client metrics: " + metricsObjectName, e );
+			}
+		}
+
+		final ResponseLeakDetector responseLeakDetector = getResponseLeakDetector();
+		if( responseLeakDetector != null )
+		{
+			this.responseLeakDetector = null;
+			responseLeakDetector.stop();
+		}
+
+		final HttpCache httpCache = getHttpCache();
+		if( httpCache != null )
+		{
+			this.httpCache = null;
+			httpCache.close();
 		}
 
 		super.stop();
@@ -262,6 +987,20 @@ public class JettyHttpClientHelper extends HttpClientHelper
 		return Long.parseLong( getHelpedParameters().getFirstValue( "addressResolutionTimeout", "15000" ) );
 	}
 
+	/**
+	 * For the "adaptive" response mode, the max size in bytes of responses that
+	 * are buffered in a single pooled buffer. Larger responses, whether known
+	 * from their Content-Length or from the content received so far, are
+	 * streamed. Defaults to 16384.
+	 * 
+	 * @return The adaptive response threshold.
+	 * @see #getResponseMode()
+	 */
+	public int getAdaptiveResponseThreshold()
+	{
+		return Integer.parseInt( getHelpedParameters().getFirstValue( "adaptiveResponseThreshold", "16384" ) );
+	}
+
 	/**
 	 * The address to bind socket channels to. Defaults to null.
 	 * 
@@ -277,35 +1016,329 @@ public class JettyHttpClientHelper extends HttpClientHelper
 	}
 
 	/**
-	 * The {@link ByteBufferPool} of this {@link HttpClient}. When null, uses a
-	 * {@link MappedByteBufferPool}. Defaults to null.
+	 * The initial adaptive limit of concurrent requests per destination.
+	 * Defaults to 20.
+	 * 
+	 * @return The initial limit.
+	 * @see #isAdaptiveConcurrency()
+	 */
+	public int getAdaptiveConcurrencyInitialLimit()
+	{
+		return Integer.parseInt( getHelpedParameters().getFirstValue( "adaptiveConcurrency.initialLimit", "20" ) );
+	}
+
+	/**
+	 * The max adaptive limit of concurrent requests per destination. Defaults
+	 * to 200.
+	 * 
+	 * @return The max limit.
+	 * @see #isAdaptiveConcurrency()
+	 */
+	public int getAdaptiveConcurrencyMaxLimit()
+	{
+		return Integer.parseInt( getHelpedParameters().getFirstValue( "adaptiveConcurrency.maxLimit", "200" ) );
+	}
+
+	/**
+	 * The min adaptive limit of concurrent requests per destination. Defaults
+	 * to 1.
+	 * 
+	 * @return The min limit.
+	 * @see #isAdaptiveConcurrency()
+	 */
+	public int getAdaptiveConcurrencyMinLimit()
+	{
+		return Integer.parseInt( getHelpedParameters().getFirstValue( "adaptiveConcurrency.minLimit", "1" ) );
+	}
+
+	/**
+	 * Whether the concurrent requests to each destination are limited
+	 * adaptively. The limit follows the gradient of the observed round-trip
+	 * time: it grows while the RTT is stable and shrinks when the RTT rises or
+	 * requests are dropped. Requests beyond the limit fail fast with a
+	 * {@link Status#CONNECTOR_ERROR_CONNECTION} status instead
+	 * of waiting in the destination's queue. Defaults to false.
+	 * 
+	 * @return Whether to limit concurrency adaptively.
+	 */
+	public boolean isAdaptiveConcurrency()
+	{
+		return Boolean.parseBoolean( getHelpedParameters().getFirstValue( "adaptiveConcurrency", "false" ) );
+	}
+
+	/**
+	 * The number of consecutive failures (connection failures or 5xx
+	 * statuses) that open the circuit of a destination. Defaults to 5.
+	 * 
+	 * @return The failure threshold.
+	 * @see #isCircuitBreaker()
+	 */
+	public int getCircuitBreakerFailureThreshold()
+	{
+		return Integer.parseInt( getHelpedParameters().getFirstValue( "circuitBreaker.failureThreshold", "5" ) );
+	}
+
+	/**
+	 * How long in milliseconds an open circuit rejects requests before letting
+	 * a trial request through. Defaults to 10000.
+	 * 
+	 * @return The open time.
+	 * @see #isCircuitBreaker()
+	 */
+	public long getCircuitBreakerOpenTime()
+	{
+		return Long.parseLong( getHelpedParameters().getFirstValue( "circuitBreaker.openTime", "10000" ) );
+	}
+
+	/**
+	 * Whether requests to an unhealthy destination fail fast. After
+	 * consecutive failures the destination's circuit opens, and requests fail
+	 * with a {@link Status#CONNECTOR_ERROR_CONNECTION} status
+	 * until a trial request succeeds. Defaults to false.
+	 * 
+	 * @return Whether to break circuits.
+	 */
+	public boolean isCircuitBreaker()
+	{
+		return Boolean.parseBoolean( getHelpedParameters().getFirstValue( "circuitBreaker", "false" ) );
+	}
+
+	/**
+	 * The {@link ByteBufferPool} of this {@link HttpClient}. When null, uses a
+	 * {@link MappedByteBufferPool}. Defaults to null.
+	 * 
+	 * @return The byte buffer pool or null.
+	 */
+	public ByteBufferPool getByteBufferPool()
+	{
+		return null;
+	}
+
+	/**
+	 * The directory to which cached responses evicted from memory are moved.
+	 * They are kept in a private subdirectory ("restlet-http-cache-*") that is
+	 * deleted when the helper is stopped, so that other files in the directory
+	 * are never touched. When null, evicted responses are discarded. Defaults
+	 * to null.
+	 * 
+	 * @return The cache disk directory or null.
+	 * @see #isCache()
+	 */
+	public String getCacheDiskDirectory()
+	{
+		return getHelpedParameters().getFirstValue( "cache.diskDirectory", null );
+	}
+
+	/**
+	 * The max size in bytes of cached responses in the disk directory. Defaults
+	 * to 256*1024*1024.
+	 * 
+	 * @return The cache disk size.
+	 * @see #getCacheDiskDirectory()
+	 */
+	public long getCacheDiskSize()
+	{
+		return Long.parseLong( getHelpedParameters().getFirstValue( "cache.diskSize", "268435456" ) );
+	}
+
+	/**
+	 * The max size in bytes of a single cached response. Defaults to
+	 * 1024*1024.
+	 * 
+	 * @return The cache max entry size.
+	 * @see #isCache()
+	 */
+	public int getCacheMaxEntrySize()
+	{
+		return Integer.parseInt( getHelpedParameters().getFirstValue( "cache.maxEntrySize", "1048576" ) );
+	}
+
+	/**
+	 * The max size in bytes of cached responses kept in memory. Defaults to
+	 * 16*1024*1024.
+	 * 
+	 * @return The cache memory size.
+	 * @see #isCache()
+	 */
+	public long getCacheMemorySize()
+	{
+		return Long.parseLong( getHelpedParameters().getFirstValue( "cache.memorySize", "16777216" ) );
+	}
+
+	/**
+	 * Whether cacheable responses to GET requests are kept in a private HTTP
+	 * cache (RFC 7234). Fresh responses are served from the cache without
+	 * creating a Jetty request; stale responses are revalidated with
+	 * conditional requests, or served while being revalidated in the
+	 * background if allowed by "stale-while-revalidate". Successful unsafe
+	 * requests invalidate the cached response for their URI. Responses that
+	 * can be stored are buffered, up to the cache's max entry size; others
+	 * are streamed. Defaults to false.
+	 * 
+	 * @return Whether to cache responses.
+	 */
+	public boolean isCache()
+	{
+		return Boolean.parseBoolean( getHelpedParameters().getFirstValue( "cache", "false" ) );
+	}
+
+	/**
+	 * The names of the request headers that, in addition to the method and URI,
+	 * must match for requests to be coalesced. Defaults to
+	 * "Accept,Accept-Encoding,Accept-Language,Authorization,Cookie".
+	 * 
+	 * @return The coalesce header names.
+	 * @see #isCoalesceRequests()
+	 */
+	public String[] getCoalesceHeaders()
+	{
+		return getHelpedParameters().getFirstValue( "coalesceHeaders", "Accept,Accept-Encoding,Accept-Language,Authorization,Cookie" ).split( "\\s*,\\s*" );
+	}
+
+	/**
+	 * Whether identical concurrent GET and HEAD requests without an entity are
+	 * coalesced. While such a request is in flight, identical requests wait for
+	 * its response instead of being sent upstream; the response is buffered (up
+	 * to {@link #getMaxBufferedResponseLength()} bytes) and shared by all of
+	 * them. Defaults to false.
+	 * 
+	 * @return Whether to coalesce requests.
+	 * @see #getCoalesceHeaders()
+	 */
+	public boolean isCoalesceRequests()
+	{
+		return Boolean.parseBoolean( getHelpedParameters().getFirstValue( "coalesceRequests", "false" ) );
+	}
+
+	/**
+	 * The max time in milliseconds a connection can take to connect to
+	 * destinations. Defaults to 15000.
+	 * 
+	 * @return The connect timeout.
+	 */
+	public long getConnectTimeout()
+	{
+		return Long.parseLong( getHelpedParameters().getFirstValue( "connectTimeout", "15000" ) );
+	}
+
+	/**
+	 * Whether to cache host addresses. Lookups run asynchronously on the
+	 * executor and concurrent lookups of a host are shared. Hosts that are
+	 * used near the end of their TTL are refreshed in the background, and
+	 * expired addresses are used for up to the stale TTL while they are
+	 * refreshed, so that a slow or failing DNS server does not turn into
+	 * request timeouts. Ignored if
+	 * {@link #getSocketAddressResolver(HttpClient)} is overridden. Defaults to
+	 * false.
+	 * 
+	 * @return Whether to cache host addresses.
+	 * @see #getDnsTtl()
+	 * @see #getDnsStaleTtl()
+	 */
+	public boolean isDnsCache()
+	{
+		return Boolean.parseBoolean( getHelpedParameters().getFirstValue( "dns.cache", "false" ) );
+	}
+
+	/**
+	 * How long in milliseconds after their TTL cached host addresses may still
+	 * be used while they are refreshed. Defaults to 60000.
+	 * 
+	 * @return The DNS stale TTL.
+	 * @see #isDnsCache()
+	 */
+	public long getDnsStaleTtl()
+	{
+		return Long.parseLong( getHelpedParameters().getFirstValue( "dns.staleTtl", "60000" ) );
+	}
+
+	/**
+	 * How long in milliseconds host addresses are cached. Defaults to 30000
+	 * (the JVM's own default for successful lookups).
+	 * 
+	 * @return The DNS TTL.
+	 * @see #isDnsCache()
+	 */
+	public long getDnsTtl()
+	{
+		return Long.parseLong( getHelpedParameters().getFirstValue( "dns.ttl", "30000" ) );
+	}
+
+	/**
+	 * Whether to follow HTTP redirects. Defaults to true.
+	 * 
+	 * @return Whether to follow redirects.
+	 */
+	public boolean isFollowRedirects()
+	{
+		return Boolean.parseBoolean( getHelpedParameters().getFirstValue( "followRedirects", "true" ) );
+	}
+
+	/**
+	 * For the HTTP/2 transports, the initial max number of concurrent streams
+	 * (requests) multiplexed over each connection. Defaults to 128.
+	 * <p>
+	 * It is updated by the limit announced by the server.
+	 * 
+	 * @return The maximum concurrent streams per connection.
+	 */
+	public int getHttp2MaxConcurrentStreams()
+	{
+		return Integer.parseInt( getHelpedParameters().getFirstValue( "http2.maxConcurrentStreams", "128" ) );
+	}
+
+	/**
+	 * For the HTTP/2 transports, the max number of connections to open to each
+	 * destination. Defaults to 1.
+	 * <p>
+	 * Used instead of {@link #getMaxConnectionsPerDestination()}, because
+	 * HTTP/2 multiplexes requests over each connection.
+	 * 
+	 * @return The maximum HTTP/2 connections per destination.
+	 */
+	public int getHttp2MaxConnectionsPerDestination()
+	{
+		return Integer.parseInt( getHelpedParameters().getFirstValue( "http2.maxConnectionsPerDestination", "1" ) );
+	}
+
+	/**
+	 * The hedging delay in milliseconds, or a latency percentile of the
+	 * destination in the form "pNN" (for example, "p95"). Percentiles are not
+	 * used until enough latencies have been observed. Defaults to "p95".
 	 * 
-	 * @return The byte buffer pool or null.
+	 * @return The hedging delay.
+	 * @see #isHedging()
 	 */
-	public ByteBufferPool getByteBufferPool()
+	public String getHedgingDelay()
 	{
-		return null;
+		return getHelpedParameters().getFirstValue( "hedging.delay", "p95" );
 	}
 
 	/**
-	 * The max time in milliseconds a connection can take to connect to
-	 * destinations. Defaults to 15000.
+	 * The min hedging delay in milliseconds when using a percentile. Defaults
+	 * to 5.
 	 * 
-	 * @return The connect timeout.
+	 * @return The min hedging delay.
+	 * @see #getHedgingDelay()
 	 */
-	public long getConnectTimeout()
+	public long getHedgingMinDelay()
 	{
-		return Long.parseLong( getHelpedParameters().getFirstValue( "connectTimeout", "15000" ) );
+		return Long.parseLong( getHelpedParameters().getFirstValue( "hedging.minDelay", "5" ) );
 	}
 
 	/**
-	 * Whether to follow HTTP redirects. Defaults to true.
+	 * Whether idempotent requests without an entity are hedged. If there is no
+	 * response after the {@link #getHedgingDelay() hedging delay}, a duplicate
+	 * request is sent (to a new connection or, for services, to another
+	 * endpoint); the first response wins and the other request is aborted.
+	 * Hedged requests are withdrawn from the {@link #getRetryBudget() retry
+	 * budget}. The winning response is streamed. Defaults to false.
 	 * 
-	 * @return Whether to follow redirects.
+	 * @return Whether to hedge requests.
 	 */
-	public boolean isFollowRedirects()
+	public boolean isHedging()
 	{
-		return Boolean.parseBoolean( getHelpedParameters().getFirstValue( "followRedirects", "true" ) );
+		return Boolean.parseBoolean( getHelpedParameters().getFirstValue( "hedging", "false" ) );
 	}
 
 	/**
@@ -319,6 +1352,24 @@ public class JettyHttpClientHelper extends HttpClientHelper
 		return Long.parseLong( getHelpedParameters().getFirstValue( "idleTimeout", "0" ) );
 	}
 
+	/**
+	 * How requests to a logical service are balanced among its endpoints.
+	 * Defaults to "roundRobin".
+	 * <p>
+	 * "roundRobin" cycles through the endpoints. "leastOutstanding" selects the
+	 * endpoint with the fewest outstanding requests. "powerOfTwoChoices"
+	 * selects the one with fewer outstanding requests of two random endpoints,
+	 * which avoids herding on the least loaded endpoint when there are many
+	 * clients.
+	 * 
+	 * @return The load balancing strategy.
+	 * @see #getServices()
+	 */
+	public String getLoadBalancing()
+	{
+		return getHelpedParameters().getFirstValue( "loadBalancing", "roundRobin" );
+	}
+
 	/**
 	 * Sets the max number of connections to open to each destination. Defaults
 	 * to 64.
@@ -337,6 +1388,50 @@ public class JettyHttpClientHelper extends HttpClientHelper
 		return Integer.parseInt( getHelpedParameters().getFirstValue( "maxConnectionsPerDestination", "64" ) );
 	}
 
+	/**
+	 * Whether to track response entities that are garbage collected without
+	 * having been consumed or closed, which would hold their connections until
+	 * timeout. Leaks are logged with the stack trace of the site where the
+	 * entity was obtained, and their requests are aborted. Defaults to false.
+	 * 
+	 * @return Whether to track leaks.
+	 */
+	public boolean isLeakTracking()
+	{
+		return Boolean.parseBoolean( getHelpedParameters().getFirstValue( "leakTracking", "false" ) );
+	}
+
+	/**
+	 * The max size in bytes of request entities of known size that are read
+	 * into memory and sent from a single buffer. Larger entities are streamed,
+	 * and files are always sent from their channel. Defaults to 64*1024.
+	 * 
+	 * @return The maximum buffered request length.
+	 */
+	public int getMaxBufferedRequestLength()
+	{
+		return Integer.parseInt( getHelpedParameters().getFirstValue( "maxBufferedRequestLength", "65536" ) );
+	}
+
+	/**
+	 * The max size in bytes of asynchronous responses that are buffered in
+	 * memory. Defaults to 2*1024*1024.
+	 * <p>
+	 * Asynchronous requests do not block a thread while waiting for the
+	 * response. Responses up to this size are buffered in memory before the
+	 * callback is called. Larger responses are streamed: the callback is
+	 * called on the Jetty HTTP client's executor once the response headers
+	 * arrive, and must read or release the response entity. Coalesced
+	 * responses, which are shared, are always buffered, and larger ones fail
+	 * the request.
+	 * 
+	 * @return The maximum buffered response length.
+	 */
+	public int getMaxBufferedResponseLength()
+	{
+		return Integer.parseInt( getHelpedParameters().getFirstValue( "maxBufferedResponseLength", "2097152" ) );
+	}
+
 	/**
 	 * The max number of HTTP redirects that are followed. Defaults to 8.
 	 * 
@@ -366,6 +1461,132 @@ public class JettyHttpClientHelper extends HttpClientHelper
 		return Integer.parseInt( getHelpedParameters().getFirstValue( "maxRequestsQueuedPerDestination", "1024" ) );
 	}
 
+	/**
+	 * Whether to record per-destination metrics: request latencies, connect
+	 * and TLS handshake times, connection pool and queue state, and failures
+	 * by cause. Defaults to false.
+	 * 
+	 * @return Whether to record metrics.
+	 * @see #getMetrics()
+	 */
+	public boolean isMetrics()
+	{
+		return Boolean.parseBoolean( getHelpedParameters().getFirstValue( "metrics", "false" ) );
+	}
+
+	/**
+	 * Whether to register the metrics as a JMX MXBean (see
+	 * {@link JettyHttpClientMetricsMXBean}) in the platform MBean server.
+	 * Requires metrics to be enabled. Defaults to false.
+	 * 
+	 * @return Whether to register the metrics with JMX.
+	 * @see #getMetricsJmxName()
+	 */
+	public boolean isMetricsJmx()
+	{
+		return Boolean.parseBoolean( getHelpedParameters().getFirstValue( "metrics.jmx", "false" ) );
+	}
+
+	/**
+	 * The JMX object name of the metrics MXBean. Defaults to
+	 * "org.restlet.ext.jetty9:type=JettyHttpClientHelper,name=" followed by
+	 * a number that is unique to this helper instance.
+	 * 
+	 * @return The JMX object name.
+	 */
+	public String getMetricsJmxName()
+	{
+		return getHelpedParameters().getFirstValue( "metrics.jmxName", "org.restlet.ext.jetty9:type=JettyHttpClientHelper,name=" + instanceNumber );
+	}
+
+	/**
+	 * The number of consecutive failures (connection failures, 5xx statuses
+	 * or, if {@link #getOutlierDetectionMaxLatency()} is set, slow responses)
+	 * after which a service endpoint is ejected. Defaults to 5.
+	 * 
+	 * @return The consecutive failures.
+	 * @see #getServices()
+	 */
+	public int getOutlierDetectionConsecutiveFailures()
+	{
+		return Integer.parseInt( getHelpedParameters().getFirstValue( "outlierDetection.consecutiveFailures", "5" ) );
+	}
+
+	/**
+	 * How long in milliseconds an ejected service endpoint receives no
+	 * requests. Defaults to 30000.
+	 * 
+	 * @return The ejection time.
+	 * @see #getServices()
+	 */
+	public long getOutlierDetectionEjectionTime()
+	{
+		return Long.parseLong( getHelpedParameters().getFirstValue( "outlierDetection.ejectionTime", "30000" ) );
+	}
+
+	/**
+	 * The max percentage of a service's endpoints that can be ejected at once.
+	 * Defaults to 50.
+	 * 
+	 * @return The max ejection percentage.
+	 * @see #getServices()
+	 */
+	public int getOutlierDetectionMaxEjectionPercent()
+	{
+		return Integer.parseInt( getHelpedParameters().getFirstValue( "outlierDetection.maxEjectionPercent", "50" ) );
+	}
+
+	/**
+	 * The latency in milliseconds above which a response counts as a failure of
+	 * its service endpoint. When 0, latency is ignored. Defaults to 0.
+	 * 
+	 * @return The max latency.
+	 * @see #getServices()
+	 */
+	public long getOutlierDetectionMaxLatency()
+	{
+		return Long.parseLong( getHelpedParameters().getFirstValue( "outlierDetection.maxLatency", "0" ) );
+	}
+
+	/**
+	 * Destinations to which idle connections are kept open, so that requests
+	 * do not pay for TCP and TLS handshakes after startup or after idle
+	 * connections were closed. Each value is in the form
+	 * "scheme://host:port=count", where count is the min number of idle
+	 * connections and defaults to 1. If the host is a logical service, each of
+	 * its endpoints is pre-warmed.
+	 * 
+	 * @return The min number of idle connections by destination.
+	 * @see #getPrewarmInterval()
+	 */
+	public Map<String, Integer> getPrewarm()
+	{
+		final Map<String, Integer> prewarm = new LinkedHashMap<String, Integer>();
+		for( String value : getHelpedParameters().getValuesArray( "prewarm" ) )
+		{
+			final int equals = value.lastIndexOf( '=' );
+			if( equals == -1 )
+				prewarm.put( value.trim(), 1 );
+			else
+				prewarm.put( value.substring( 0, equals ).trim(), Integer.parseInt( value.substring( equals + 1 ).trim() ) );
+		}
+		return prewarm;
+	}
+
+	/**
+	 * The interval in milliseconds at which pre-warmed connections are topped
+	 * up, replacing connections that were closed. With the HTTP/2 transports,
+	 * idle connections are also pinged, keeping them alive through
+	 * intermediaries. Defaults to 10000.
+	 * 
+	 * @return The pre-warm interval.
+	 * @see #getPrewarm()
+	 */
+	public long getPrewarmInterval()
+	{
+		return Long.parseLong( getHelpedParameters().getFirstValue( "prewarm.interval", "10000" ) );
+	}
+
 	/**
 	 * Whether destinations that have no connections (nor active nor idle)
 	 * should be removed.
@@ -405,6 +1626,142 @@ public class JettyHttpClientHelper extends HttpClientHelper
 		return Integer.parseInt( getHelpedParameters().getFirstValue( "responseBufferSize", "16384" ) );
 	}
 
+	/**
+	 * The max number of remaining bytes to drain when a response entity is
+	 * closed before its end, so that the connection can be reused. Larger
+	 * remainders (known from the entity size or found while draining) abort the
+	 * response, closing the connection. Defaults to 65536.
+	 * 
+	 * @return The response drain limit.
+	 */
+	public long getResponseDrainLimit()
+	{
+		return Long.parseLong( getHelpedParameters().getFirstValue( "responseDrainLimit", "65536" ) );
+	}
+
+	/**
+	 * The max time in milliseconds to wait for the remainder of a response
+	 * entity that is being drained. If the server is slower, the response is
+	 * aborted, closing the connection. Defaults to 1000.
+	 * 
+	 * @return The response drain timeout.
+	 */
+	public long getResponseDrainTimeout()
+	{
+		return Long.parseLong( getHelpedParameters().getFirstValue( "responseDrainTimeout", "1000" ) );
+	}
+
+	/**
+	 * How synchronous response entities are read. Defaults to "stream".
+	 * <p>
+	 * "stream" is an input stream. "channel" is a readable channel that hands
+	 * Jetty's content buffers to the reader directly, with demand-based flow
+	 * control. "adaptive" is a channel that buffers small responses in a single
+	 * pooled buffer and completes them in one shot, switching to streaming for
+	 * larger ones.
+	 * 
+	 * @see #getAdaptiveResponseThreshold()
+	 * @return The response mode.
+	 */
+	public String getResponseMode()
+	{
+		return getHelpedParameters().getFirstValue( "responseMode", "stream" );
+	}
+
+	/**
+	 * The initial delay in milliseconds before a retry; it doubles (with
+	 * jitter) for each further retry. Defaults to 50.
+	 * 
+	 * @return The retry backoff.
+	 * @see #getRetryMaxRetries()
+	 */
+	public long getRetryBackoff()
+	{
+		return Long.parseLong( getHelpedParameters().getFirstValue( "retry.backoff", "50" ) );
+	}
+
+	/**
+	 * The max ratio of retries and hedged requests to requests, over a sliding
+	 * ten-second window. Defaults to 0.1.
+	 * 
+	 * @return The retry budget ratio.
+	 * @see #getRetryMinPerSecond()
+	 */
+	public double getRetryBudgetRatio()
+	{
+		return Double.parseDouble( getHelpedParameters().getFirstValue( "retry.budgetRatio", "0.1" ) );
+	}
+
+	/**
+	 * The max number of retries of idempotent requests without an entity that
+	 * fail to connect or get a "502 Bad Gateway", "503 Service Unavailable" or
+	 * "504 Gateway Timeout" status. Retries are withdrawn from the
+	 * {@link #getRetryBudget() retry budget}. Responses with these statuses are
+	 * buffered, in case they are the last answer; other responses are
+	 * streamed. The {@link #getTimeout() timeout} is shared by the attempts:
+	 * each attempt gets an equal share of the time left until its response
+	 * headers arrive. Defaults to 0.
+	 * 
+	 * @return The max retries.
+	 */
+	public int getRetryMaxRetries()
+	{
+		return Integer.parseInt( getHelpedParameters().getFirstValue( "retry.maxRetries", "0" ) );
+	}
+
+	/**
+	 * The number of retries and hedged requests per second that are allowed
+	 * regardless of the {@link #getRetryBudgetRatio() budget ratio}, so that
+	 * clients with little traffic can retry. Defaults to 10.
+	 * 
+	 * @return The min retries per second.
+	 */
+	public int getRetryMinPerSecond()
+	{
+		return Integer.parseInt( getHelpedParameters().getFirstValue( "retry.minPerSecond", "10" ) );
+	}
+
+	/**
+	 * Logical services. Requests to a service name (as the host of the request
+	 * URI) are balanced among its endpoints, saving a hop through a load
+	 * balancing proxy. Each value is in the form "name=host:port,host:port,...";
+	 * an endpoint without a port uses the port of the request URI.
+	 * 
+	 * @return The endpoints by service name.
+	 * @see #getLoadBalancing()
+	 */
+	public Map<String, String[]> getServices()
+	{
+		final Map<String, String[]> services = new LinkedHashMap<String, String[]>();
+		for( String value : getHelpedParameters().getValuesArray( "service" ) )
+		{
+			final int equals = value.indexOf( '=' );
+			if( equals == -1 )
+				throw new IllegalArgumentException( "Unsupported service: " + value );
+			services.put( value.substring( 0, equals ).trim(), value.substring( equals + 1 ).trim().split( "\\s*,\\s*" ) );
+		}
+		return services;
+	}
+
+	/**
+	 * Whether to share the Jetty HTTP client (with its selector threads,
+	 * scheduler, executor and connection pools) with other client helpers in
+	 * this process that have the same configuration: the same class, the same
+	 * parameters and the same pluggable objects (executor, scheduler, byte
+	 * buffer pool, cookie store and SSL context factory attribute). Shared
+	 * clients are reference counted, and stopped when the last helper using
+	 * them is stopped. Defaults to false.
+	 * <p>
+	 * Because the client is created by the first helper, so are its connect
+	 * and TLS handshake metrics and its DNS resolver.
+	 * 
+	 * @return Whether to share the client.
+	 */
+	public boolean isSharedClient()
+	{
+		return Boolean.parseBoolean( getHelpedParameters().getFirstValue( "sharedClient", "false" ) );
+	}
+
 	/**
 	 * Stop timeout in milliseconds. Defaults to 30000.
 	 * <p>
@@ -456,6 +1813,21 @@ public class JettyHttpClientHelper extends HttpClientHelper
 		return Boolean.parseBoolean( getHelpedParameters().getFirstValue( "tcpNoDelay", "true" ) );
 	}
 
+	/**
+	 * The client transport. Defaults to "http1".
+	 * <p>
+	 * "http1" is HTTP/1.1. "h2" is HTTP/2 negotiated via ALPN for HTTPS (HTTP
+	 * URIs use cleartext HTTP/2 with prior knowledge). "h2c" is HTTP/2 with
+	 * prior knowledge: cleartext for HTTP, and without ALPN for HTTPS. The
+	 * HTTP/2 transports require the Jetty HTTP/2 client transport library.
+	 * 
+	 * @return The transport.
+	 */
+	public String getTransport()
+	{
+		return getHelpedParameters().getFirstValue( "transport", "http1" );
+	}
+
 	/**
 	 * Request timeout in milliseconds. Defaults to 5000.
 	 * <p>
@@ -468,6 +1840,42 @@ public class JettyHttpClientHelper extends HttpClientHelper
 		return Long.parseLong( getHelpedParameters().getFirstValue( "timeout", "5000" ) );
 	}
 
+	/**
+	 * The path of a Unix domain socket to send all requests to, instead of
+	 * connecting to their hosts via TCP. Defaults to null.
+	 * <p>
+	 * Requests are sent with HTTP/1.1, whatever the {@link #getTransport()}.
+	 * Requires the Jetty Unix socket library.
+	 * 
+	 * @return The Unix domain socket path or null.
+	 */
+	public String getUnixSocket()
+	{
+		return getHelpedParameters().getFirstValue( "unixSocket", null );
+	}
+
+	/**
+	 * Maps hosts to the paths of Unix domain sockets. Requests to these hosts
+	 * are sent to the sockets instead of via TCP. Each value is in the form
+	 * "host=path".
+	 * <p>
+	 * Requires the Jetty Unix socket library.
+	 * 
+	 * @return The Unix domain socket paths by host.
+	 */
+	public Map<String, String> getUnixSocketMapping()
+	{
+		final Map<String, String> unixSocketMapping = new LinkedHashMap<String, String>();
+		for( String value : getHelpedParameters().getValuesArray( "unixSocketMapping" ) )
+		{
+			final int equals = value.indexOf( '=' );
+			if( equals == -1 )
+				throw new IllegalArgumentException( "Unsupported unixSocketMapping: " + value );
+			unixSocketMapping.put( value.substring( 0, equals ).trim(), value.substring( equals + 1 ).trim() );
+		}
+		return unixSocketMapping;
+	}
+
 	/**
 	 * The "User-Agent" HTTP header string. When null, uses the Jetty default.
 	 * Defaults to null.
@@ -512,12 +1920,63 @@ public class JettyHttpClientHelper extends HttpClientHelper
 		return null;
 	}
 
+	/**
+	 * The socket address resolver. Defaults to null. When null, creates a
+	 * caching resolver if {@link #isDnsCache()}, otherwise uses Jetty's
+	 * default asynchronous resolver.
+	 * 
+	 * @param httpClient
+	 *        The Jetty HTTP client that will use the resolver
+	 * @return The socket address resolver.
+	 */
+	public SocketAddressResolver getSocketAddressResolver( HttpClient httpClient )
+	{
+		return null;
+	}
+
+	/**
+	 * The key of the effective configuration of the Jetty HTTP client, for
+	 * sharing it with other helpers.
+	 * 
+	 * @param unixSocket
+	 *        The Unix socket of the client, or null for the main client
+	 * @return The shared client key.
+	 * @see #isSharedClient()
+	 */
+	private SharedHttpClients.Key getSharedClientKey( String unixSocket )
+	{
+		final List<String> parameters = new ArrayList<String>();
+		for( Parameter parameter : getHelpedParameters() )
+			parameters.add( parameter.getName() + "=" + parameter.getValue() );
+		Collections.sort( parameters );
+
+		final StringBuilder configuration = new StringBuilder( getClass().getName() );
+		for( String parameter : parameters )
+			configuration.append( '\n' ).append( parameter );
+		if( unixSocket != null )
+			configuration.append( "\nunixSocket=" ).append( unixSocket );
+		return new SharedHttpClients.Key( configuration.toString(), getExecutor(), getScheduler(), getByteBufferPool(), getCookieStore(), getAttributes().get( "sslContextFactory" ) );
+	}
+
 	/**
 	 * Creates a Jetty HTTP client.
 	 * 
 	 * @return A new HTTP client.
 	 */
 	private HttpClient createHttpClient()
+	{
+		final HttpClientTransport transport = createHttpClientTransport();
+		return createHttpClient( transport );
+	}
+
+	/**
+	 * Creates a Jetty HTTP client.
+	 * 
+	 * @param transport
+	 *        The transport or null to use the default HTTP/1.1 transport
+	 * @return A new HTTP client.
+	 */
+	private HttpClient createHttpClient( HttpClientTransport transport )
 	{
 		SslContextFactory sslContextFactory = null;
 		try
@@ -530,7 +1989,12 @@ public class JettyHttpClientHelper extends HttpClientHelper
 		{
 		}
 
-		final HttpClient httpClient = new HttpClient( sslContextFactory );
+		final ClientMetrics clientMetrics = getClientMetrics();
+		final HttpClient httpClient;
+		if( clientMetrics != null )
+			httpClient = new InstrumentedHttpClient( transport != null ? transport : new HttpClientTransportOverHTTP(), sslContextFactory, clientMetrics );
+		else
+			httpClient = transport != null ? new HttpClient( transport, sslContextFactory ) : new HttpClient( sslContextFactory );
 
 		httpClient.setAddressResolutionTimeout( getAddressResolutionTimeout() );
 		httpClient.setBindAddress( getBindAddress() );
@@ -551,6 +2015,11 @@ public class JettyHttpClientHelper extends HttpClientHelper
 		httpClient.setRequestBufferSize( getRequestBufferSize() );
 		httpClient.setResponseBufferSize( getResponseBufferSize() );
 		httpClient.setScheduler( getScheduler() );
+		final SocketAddressResolver socketAddressResolver = getSocketAddressResolver( httpClient );
+		if( socketAddressResolver != null )
+			httpClient.setSocketAddressResolver( socketAddressResolver );
+		else if( isDnsCache() )
+			httpClient.setSocketAddressResolver( new CachingSocketAddressResolver( httpClient, getDnsTtl(), getDnsStaleTtl(), getAddressResolutionTimeout(), getLogger() ) );
 		httpClient.setStopTimeout( getStopTimeout() );
 		httpClient.setStrictEventOrdering( isStrictEventOrdering() );
 		httpClient.setTCPNoDelay( isTcpNoDelay() );
@@ -561,8 +2030,110 @@ public class JettyHttpClientHelper extends HttpClientHelper
 		return httpClient;
 	}
 
+	/**
+	 * Creates a Jetty HTTP client transport.
+	 * 
+	 * @return A new HTTP client transport or null to use the default HTTP/1.1
+	 *         transport.
+	 */
+	private HttpClientTransport createHttpClientTransport()
+	{
+		final String unixSocket = getUnixSocket();
+		if( unixSocket != null )
+			return UnixSocketClientSupport.createTransport( unixSocket );
+
+		final String transport = getTransport();
+		if( "h2".equalsIgnoreCase( transport ) )
+			return Http2ClientSupport.createTransport( this, false );
+		else if( "h2c".equalsIgnoreCase( transport ) )
+			return Http2ClientSupport.createTransport( this, true );
+		else if( !"http1".equalsIgnoreCase( transport ) )
+			throw new IllegalArgumentException( "Unsupported transport: " + transport );
+		return null;
+	}
+
+	/**
+	 * The number of latency samples after which histogram counts are halved.
+	 */
+	private static final long LATENCY_WINDOW = 10000;
+
+	/**
+	 * The number of helper instances created so far.
+	 */
+	private static final AtomicInteger instances = new AtomicInteger();
+
+	/**
+	 * The unique number of this helper instance.
+	 */
+	private final int instanceNumber = instances.incrementAndGet();
+
 	/**
 	 * The wrapped Jetty HTTP client.
 	 */
 	private volatile HttpClient httpClient;
+
+	/**
+	 * The request coalescer.
+	 */
+	private volatile RequestCoalescer requestCoalescer;
+
+	/**
+	 * The HTTP cache.
+	 */
+	private volatile HttpCache httpCache;
+
+	/**
+	 * The response leak detector.
+	 */
+	private volatile ResponseLeakDetector responseLeakDetector;
+
+	/**
+	 * The wrapped Jetty HTTP clients for hosts mapped to Unix domain sockets.
+	 */
+	private final Map<String, HttpClient> unixSocketHttpClients = new ConcurrentHashMap<String, HttpClient>();
+
+	/**
+	 * The load balancers for logical services.
+	 */
+	private final Map<String, LoadBalancer> loadBalancers = new ConcurrentHashMap<String, LoadBalancer>();
+
+	/**
+	 * The latency histograms by destination.
+	 */
+	private final Map<String, LatencyHistogram> latencyHistograms = new ConcurrentHashMap<String, LatencyHistogram>();
+
+	/**
+	 * The retry budget.
+	 */
+	private volatile RetryBudget retryBudget;
+
+	/**
+	 * The client metrics.
+	 */
+	private volatile ClientMetrics clientMetrics;
+
+	/**
+	 * Whether the wrapped Jetty HTTP client is shared.
+	 */
+	private volatile boolean sharedClient;
+
+	/**
+	 * The connection pre-warmer.
+	 */
+	private volatile ConnectionPrewarmer connectionPrewarmer;
+
+	/**
+	 * The JMX object name under which the client metrics are registered.
+	 */
+	private volatile ObjectName metricsObjectName;
+
+	/**
+	 * The concurrency limiters by destination.
+	 */
+	private final Map<String, ConcurrencyLimiter> concurrencyLimiters = new ConcurrentHashMap<String, ConcurrencyLimiter>();
+
+	/**
+	 * The circuit breakers by destination.
+	 */
+	private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<String, CircuitBreaker>();
 }
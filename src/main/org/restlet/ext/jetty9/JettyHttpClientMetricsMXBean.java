@@ -0,0 +1,31 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9;
+
+import java.util.List;
+
+/**
+ * JMX view of the metrics of a Jetty HTTP client.
+ * 
+ * @author Tal Liron
+ * @see JettyHttpClientHelper#isMetricsJmx()
+ */
+public interface JettyHttpClientMetricsMXBean
+{
+	/**
+	 * Snapshots of the metrics of all destinations.
+	 * 
+	 * @return The destination metrics.
+	 */
+	public List<DestinationMetrics> getDestinations();
+}
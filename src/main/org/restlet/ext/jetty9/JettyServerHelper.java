@@ -18,11 +18,15 @@ import java.lang.reflect.InvocationTargetException;
 import java.net.Socket;
 import java.nio.channels.ServerSocketChannel;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 
 import javax.servlet.ServletException;
 
+import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.io.ArrayByteBufferPool;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.server.ConnectionFactory;
@@ -40,6 +44,7 @@ import org.eclipse.jetty.util.thread.ThreadPool;
 import org.restlet.Server;
 import org.restlet.data.Protocol;
 import org.restlet.engine.adapter.HttpServerHelper;
+import org.restlet.ext.jetty9.internal.Http2ServerSupport;
 import org.restlet.ext.jetty9.internal.JettyServerCall;
 
 /**
@@ -54,6 +59,15 @@ import org.restlet.ext.jetty9.internal.JettyServerCall;
  * <th>Description</th>
  * </tr>
  * <tr>
+ * <td>asyncTimeout</td>
+ * <td>long</td>
+ * <td>30000</td>
+ * <td>The time in milliseconds to wait for a response that is committed after
+ * its call was handled (when auto-committing is disabled); if it passes, a
+ * "500 Internal Server Error" is sent, or the call is aborted if the response
+ * was already committed</td>
+ * </tr>
+ * <tr>
  * <td>connector.acceptorPriorityDelta</td>
  * <td>int</td>
  * <td>-2</td>
@@ -68,12 +82,30 @@ import org.restlet.ext.jetty9.internal.JettyServerCall;
  * will use the selector threads instead</td>
  * </tr>
  * <tr>
+ * <td>connector.autoTune</td>
+ * <td>boolean</td>
+ * <td>false</td>
+ * <td>When true, acceptor, selector and reserved thread counts that are left at
+ * their defaults (&lt; 0) are sized from {@link Runtime#availableProcessors()}
+ * instead of Jetty's conservative heuristics: 1 acceptor, one selector per two
+ * cores, and one reserved thread per selector</td>
+ * </tr>
+ * <tr>
  * <td>connector.acceptQueueSize</td>
  * <td>int</td>
  * <td>0</td>
  * <td>Connector accept queue size; also known as accept backlog</td>
  * </tr>
  * <tr>
+ * <td>connector.executionStrategy</td>
+ * <td>String</td>
+ * <td>eatWhatYouKill</td>
+ * <td>How selector threads hand work to other threads; "eatWhatYouKill" lets
+ * the selecting thread consume the task it produced (better cache locality)
+ * while a reserved thread takes over selecting; "produceExecuteConsume" always
+ * dispatches tasks to the thread pool and disables reserved threads</td>
+ * </tr>
+ * <tr>
  * <td>connector.idleTimeout</td>
  * <td>int</td>
  * <td>30000</td>
@@ -122,6 +154,14 @@ import org.restlet.ext.jetty9.internal.JettyServerCall;
  * <td>Whether to generate a Host header if not provided by the request</td>
  * </tr>
  * <tr>
+ * <td>handlerOnly</td>
+ * <td>boolean</td>
+ * <td>false</td>
+ * <td>When true, no Jetty server is created: calls are only handled by a
+ * {@link org.restlet.ext.jetty9.internal.JettyHandler} embedded in an existing
+ * Jetty server, using its threads, connectors and buffers</td>
+ * </tr>
+ * <tr>
  * <td>http.delayDispatchUntilContent</td>
  * <td>boolean</td>
  * <td>true</td>
@@ -191,6 +231,61 @@ import org.restlet.ext.jetty9.internal.JettyServerCall;
  * <td>If true, send the X-Powered-By header in responses</td>
  * </tr>
  * <tr>
+ * <td>http2.flowControlBufferRatio</td>
+ * <td>float</td>
+ * <td>0.5</td>
+ * <td>HTTP/2 "buffering" flow control strategy ratio; window updates are sent
+ * when the consumed data exceeds this fraction of the receive window</td>
+ * </tr>
+ * <tr>
+ * <td>http2.flowControlStrategy</td>
+ * <td>String</td>
+ * <td>buffering</td>
+ * <td>HTTP/2 flow control strategy; "simple" sends a window update for every
+ * consumed data frame, "buffering" accumulates them (see
+ * http2.flowControlBufferRatio)</td>
+ * </tr>
+ * <tr>
+ * <td>http2.initialSessionRecvWindow</td>
+ * <td>int</td>
+ * <td>1024*1024</td>
+ * <td>HTTP/2 initial session receive window in bytes, shared by all streams of
+ * a connection</td>
+ * </tr>
+ * <tr>
+ * <td>http2.initialStreamRecvWindow</td>
+ * <td>int</td>
+ * <td>512*1024</td>
+ * <td>HTTP/2 initial stream receive window in bytes</td>
+ * </tr>
+ * <tr>
+ * <td>http2.maxConcurrentStreams</td>
+ * <td>int</td>
+ * <td>128</td>
+ * <td>HTTP/2 max number of concurrent streams per connection</td>
+ * </tr>
+ * <tr>
+ * <td>http2.maxDynamicTableSize</td>
+ * <td>int</td>
+ * <td>4096</td>
+ * <td>HTTP/2 max HPACK dynamic table size in bytes</td>
+ * </tr>
+ * <tr>
+ * <td>http2.maxHeaderBlockFragment</td>
+ * <td>int</td>
+ * <td>0</td>
+ * <td>HTTP/2 max header block fragment size in bytes; larger header blocks are
+ * split into CONTINUATION frames; when 0, uses the max frame size</td>
+ * </tr>
+ * <tr>
+ * <td>http2.pushPreloadLinks</td>
+ * <td>boolean</td>
+ * <td>false</td>
+ * <td>If true, same-origin resources listed in "Link: rel=preload" response
+ * headers are pushed to HTTP/2 clients, unless the link has the "nopush"
+ * attribute; see also {@link Http2#push(org.restlet.Response, String...)}</td>
+ * </tr>
+ * <tr>
  * <td>lowResource.idleTimeout</td>
  * <td>int</td>
  * <td>1000</td>
@@ -238,6 +333,15 @@ import org.restlet.ext.jetty9.internal.JettyServerCall;
  * <td>Low resource monitor, whether to check if we're low on threads</td>
  * </tr>
  * <tr>
+ * <td>sharedServer</td>
+ * <td>String</td>
+ * <td>null</td>
+ * <td>When set, the connector is attached to the Jetty server of this name,
+ * which is shared with other Restlet servers in this process (one thread pool,
+ * scheduler and byte buffer pool); the first server to attach creates it from
+ * its own thread pool and low resource monitor parameters</td>
+ * </tr>
+ * <tr>
  * <td>threadPool.idleTimeout</td>
  * <td>int</td>
  * <td>60000</td>
@@ -257,6 +361,14 @@ import org.restlet.ext.jetty9.internal.JettyServerCall;
  * <td>Thread pool minimum threads</td>
  * </tr>
  * <tr>
+ * <td>threadPool.reservedThreads</td>
+ * <td>int</td>
+ * <td>-1</td>
+ * <td>Thread pool reserved threads, kept ready for the "eatWhatYouKill"
+ * execution strategy; when -1, Jetty uses a heuristic; when 0, selectors
+ * always fall back to "produceExecuteConsume"</td>
+ * </tr>
+ * <tr>
  * <td>threadPool.stopTimeout</td>
  * <td>long</td>
  * <td>5000</td>
@@ -293,6 +405,17 @@ public abstract class JettyServerHelper extends HttpServerHelper
 	{
 		super.start();
 
+		// The handler's host server accepts and dispatches calls
+		if( getHandlerOnly() )
+			return;
+
+		final String sharedServer = getSharedServer();
+		if( sharedServer != null )
+		{
+			startShared( sharedServer );
+			return;
+		}
+
 		final org.eclipse.jetty.server.Server server = getWrappedServer();
 		final ServerConnector connector = (ServerConnector) server.getConnectors()[0];
 
@@ -307,6 +430,19 @@ public abstract class JettyServerHelper extends HttpServerHelper
 	@Override
 	public void stop() throws Exception
 	{
+		if( getHandlerOnly() )
+		{
+			super.stop();
+			return;
+		}
+
+		if( sharedConnector != null )
+		{
+			stopShared();
+			super.stop();
+			return;
+		}
+
 		getLogger().info( "Stopping a Jetty HTTP/HTTPS server" );
 
 		getWrappedServer().stop();
@@ -314,6 +450,21 @@ public abstract class JettyServerHelper extends HttpServerHelper
 		super.stop();
 	}
 
+	/**
+	 * The time in milliseconds to wait for a response that is committed after
+	 * its call was handled, which is the case when the application has
+	 * disabled auto-committing. If it passes, a "500 Internal Server Error" is
+	 * sent, or the call is aborted if the response was already committed, so
+	 * that calls whose response is never committed (for example, because an
+	 * exception was swallowed) do not hang. Defaults to 30000.
+	 * 
+	 * @return The async timeout.
+	 */
+	public long getAsyncTimeout()
+	{
+		return Long.parseLong( getHelpedParameters().getFirstValue( "asyncTimeout", "30000" ) );
+	}
+
 	/**
 	 * Set the acceptor thread priority delta.
 	 * <p>
@@ -342,6 +493,21 @@ public abstract class JettyServerHelper extends HttpServerHelper
 		return Integer.parseInt( getHelpedParameters().getFirstValue( "connector.acceptors", "-1" ) );
 	}
 
+	/**
+	 * Whether to size acceptor, selector and reserved thread counts that are
+	 * left at their defaults (&lt; 0) from
+	 * {@link Runtime#availableProcessors()}. Defaults to false.
+	 * <p>
+	 * When true, uses 1 acceptor, one selector per two cores (without Jetty's
+	 * upper bound), and one reserved thread per selector.
+	 * 
+	 * @return Connector auto-tune.
+	 */
+	public boolean getConnectorAutoTune()
+	{
+		return Boolean.parseBoolean( getHelpedParameters().getFirstValue( "connector.autoTune", "false" ) );
+	}
+
 	/**
 	 * Connector accept queue size. Defaults to 0.
 	 * <p>
@@ -376,6 +542,23 @@ public abstract class JettyServerHelper extends HttpServerHelper
 		return null;
 	}
 
+	/**
+	 * Connector execution strategy: how selector threads hand work to other
+	 * threads. Defaults to "eatWhatYouKill".
+	 * <p>
+	 * With "eatWhatYouKill" the selecting thread consumes the task it has just
+	 * produced, while a reserved thread takes over selecting, which keeps the
+	 * task's data hot in the CPU cache. With "produceExecuteConsume" tasks are
+	 * always dispatched to the thread pool; this is achieved by disabling the
+	 * thread pool's reserved threads.
+	 * 
+	 * @return Connector execution strategy.
+	 */
+	public String getConnectorExecutionStrategy()
+	{
+		return getHelpedParameters().getFirstValue( "connector.executionStrategy", EXECUTION_STRATEGY_EAT_WHAT_YOU_KILL );
+	}
+
 	/**
 	 * Connector idle timeout in milliseconds. Defaults to 30000.
 	 * <p>
@@ -482,6 +665,22 @@ public abstract class JettyServerHelper extends HttpServerHelper
 		return Boolean.parseBoolean( getHelpedParameters().getFirstValue( "ensureHostHeader", "true" ) );
 	}
 
+	/**
+	 * Whether to only handle calls from a
+	 * {@link org.restlet.ext.jetty9.internal.JettyHandler} embedded in an
+	 * existing Jetty server. Defaults to false.
+	 * <p>
+	 * When true, starting this helper creates no Jetty server, thread pool or
+	 * connector: calls are accepted and dispatched by the host server, using
+	 * its threads and buffers.
+	 * 
+	 * @return Whether to only handle calls from an embedded handler.
+	 */
+	public boolean getHandlerOnly()
+	{
+		return Boolean.parseBoolean( getHelpedParameters().getFirstValue( "handlerOnly", "false" ) );
+	}
+
 	/**
 	 * If true, delay the application dispatch until content is available.
 	 * Defaults to true.
@@ -599,6 +798,102 @@ public abstract class JettyServerHelper extends HttpServerHelper
 		return Boolean.parseBoolean( getHelpedParameters().getFirstValue( "http.sendXPoweredBy", "false" ) );
 	}
 
+	/**
+	 * HTTP/2 "buffering" flow control strategy ratio. Defaults to 0.5.
+	 * <p>
+	 * Window updates are sent when the consumed data exceeds this fraction of
+	 * the receive window.
+	 * 
+	 * @return HTTP/2 flow control buffer ratio.
+	 */
+	public float getHttp2FlowControlBufferRatio()
+	{
+		return Float.parseFloat( getHelpedParameters().getFirstValue( "http2.flowControlBufferRatio", "0.5" ) );
+	}
+
+	/**
+	 * HTTP/2 flow control strategy. Defaults to "buffering".
+	 * <p>
+	 * The "simple" strategy sends a window update for every consumed data
+	 * frame. The "buffering" strategy accumulates them (see
+	 * {@link #getHttp2FlowControlBufferRatio()}).
+	 * 
+	 * @return HTTP/2 flow control strategy.
+	 */
+	public String getHttp2FlowControlStrategy()
+	{
+		return getHelpedParameters().getFirstValue( "http2.flowControlStrategy", "buffering" );
+	}
+
+	/**
+	 * HTTP/2 initial session receive window in bytes. Defaults to 1024*1024.
+	 * <p>
+	 * The session window is shared by all streams of a connection.
+	 * 
+	 * @return HTTP/2 initial session receive window.
+	 */
+	public int getHttp2InitialSessionRecvWindow()
+	{
+		return Integer.parseInt( getHelpedParameters().getFirstValue( "http2.initialSessionRecvWindow", "1048576" ) );
+	}
+
+	/**
+	 * HTTP/2 initial stream receive window in bytes. Defaults to 512*1024.
+	 * 
+	 * @return HTTP/2 initial stream receive window.
+	 */
+	public int getHttp2InitialStreamRecvWindow()
+	{
+		return Integer.parseInt( getHelpedParameters().getFirstValue( "http2.initialStreamRecvWindow", "524288" ) );
+	}
+
+	/**
+	 * HTTP/2 max number of concurrent streams per connection. Defaults to 128.
+	 * 
+	 * @return HTTP/2 max concurrent streams.
+	 */
+	public int getHttp2MaxConcurrentStreams()
+	{
+		return Integer.parseInt( getHelpedParameters().getFirstValue( "http2.maxConcurrentStreams", "128" ) );
+	}
+
+	/**
+	 * HTTP/2 max HPACK dynamic table size in bytes. Defaults to 4096.
+	 * 
+	 * @return HTTP/2 max dynamic table size.
+	 */
+	public int getHttp2MaxDynamicTableSize()
+	{
+		return Integer.parseInt( getHelpedParameters().getFirstValue( "http2.maxDynamicTableSize", "4096" ) );
+	}
+
+	/**
+	 * HTTP/2 max header block fragment size in bytes. Defaults to 0. When 0,
+	 * uses the max frame size.
+	 * <p>
+	 * Larger header blocks are split into CONTINUATION frames.
+	 * 
+	 * @return HTTP/2 max header block fragment.
+	 */
+	public int getHttp2MaxHeaderBlockFragment()
+	{
+		return Integer.parseInt( getHelpedParameters().getFirstValue( "http2.maxHeaderBlockFragment", "0" ) );
+	}
+
+	/**
+	 * If true, same-origin resources listed in "Link: rel=preload" response
+	 * headers are pushed to HTTP/2 clients, unless the link has the "nopush"
+	 * attribute. Defaults to false.
+	 * <p>
+	 * See also {@link Http2#push(org.restlet.Response, String...)}.
+	 * 
+	 * @return HTTP/2 push preload links.
+	 */
+	public boolean getHttp2PushPreloadLinks()
+	{
+		return Boolean.parseBoolean( getHelpedParameters().getFirstValue( "http2.pushPreloadLinks", "false" ) );
+	}
+
 	/**
 	 * Low resource monitor idle timeout in milliseconds. Defaults to 1000.
 	 * <p>
@@ -681,6 +976,25 @@ public abstract class JettyServerHelper extends HttpServerHelper
 		return Boolean.parseBoolean( getHelpedParameters().getFirstValue( "lowResource.threads", "true" ) );
 	}
 
+	/**
+	 * The name of a Jetty server shared with other Restlet servers in this
+	 * process. Defaults to null.
+	 * <p>
+	 * When set, this server's connector is attached to the shared Jetty server
+	 * instead of to a Jetty server of its own, so that all servers with the
+	 * same name share one thread pool, one scheduler and one byte buffer pool.
+	 * Requests are routed to the Restlet server by the connector that accepted
+	 * them. The shared Jetty server is created by the first server to attach,
+	 * from its thread pool and low resource monitor parameters, and is stopped
+	 * when the last server detaches.
+	 * 
+	 * @return The shared server name or null.
+	 */
+	public String getSharedServer()
+	{
+		return getHelpedParameters().getFirstValue( "sharedServer" );
+	}
+
 	/**
 	 * Thread pool idle timeout in milliseconds. Defaults to 60000.
 	 * <p>
@@ -713,6 +1027,21 @@ public abstract class JettyServerHelper extends HttpServerHelper
 		return Integer.parseInt( getHelpedParameters().getFirstValue( "threadPool.minThreads", "8" ) );
 	}
 
+	/**
+	 * Thread pool reserved threads. Defaults to -1. When -1, Jetty uses a
+	 * heuristic. When 0, selectors always fall back to the
+	 * "produceExecuteConsume" execution strategy.
+	 * <p>
+	 * Reserved threads are kept ready to take over selecting when a selector
+	 * thread consumes a task itself.
+	 * 
+	 * @return Thread pool reserved threads.
+	 */
+	public int getThreadPoolReservedThreads()
+	{
+		return Integer.parseInt( getHelpedParameters().getFirstValue( "threadPool.reservedThreads", "-1" ) );
+	}
+
 	/**
 	 * Thread pool stop timeout in milliseconds. Defaults to 5000.
 	 * <p>
@@ -776,7 +1105,11 @@ public abstract class JettyServerHelper extends HttpServerHelper
 
 		// HTTP/2
 		if( h2 )
-			connectionFactories.add( createDynamically( "org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory", configuration ) );
+		{
+			final ConnectionFactory http2ConnectionFactory = createDynamically( "org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory", configuration );
+			Http2ServerSupport.configure( http2ConnectionFactory, this );
+			connectionFactories.add( http2ConnectionFactory );
+		}
 
 		// HTTP/1.1
 		if( legacy )
@@ -784,8 +1117,12 @@ public abstract class JettyServerHelper extends HttpServerHelper
 
 		// HTTP/2 cleartext
 		if( h2c )
+		{
 			// Must be *after* legacy
-			connectionFactories.add( createDynamically( "org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory", configuration ) );
+			final ConnectionFactory http2cConnectionFactory = createDynamically( "org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory", configuration );
+			Http2ServerSupport.configure( http2cConnectionFactory, this );
+			connectionFactories.add( http2cConnectionFactory );
+		}
 
 		if( negotiator != null )
 		{
@@ -859,11 +1196,11 @@ public abstract class JettyServerHelper extends HttpServerHelper
 		final ThreadPool threadPool = createThreadPool();
 
 		// Server
-		final org.eclipse.jetty.server.Server server = new WrappedServer( this, threadPool );
+		final WrappedServer server = new WrappedServer( threadPool );
 
 		// Connector
 		final Connector connector = createConnector( server );
-		server.addConnector( connector );
+		server.attach( connector, this );
 
 		// Low resource monitor (must be created after connectors have been
 		// added)
@@ -872,6 +1209,99 @@ public abstract class JettyServerHelper extends HttpServerHelper
 		return server;
 	}
 
+	/**
+	 * Attaches a connector to a shared Jetty server, creating and starting the
+	 * server if necessary.
+	 * 
+	 * @param name
+	 *        The shared server name
+	 * @throws Exception
+	 *         In case of a Jetty error
+	 */
+	private void startShared( String name ) throws Exception
+	{
+		final ServerConnector connector;
+		synchronized( sharedServers )
+		{
+			WrappedServer server = sharedServers.get( name );
+			if( server == null )
+			{
+				server = new WrappedServer( createThreadPool() );
+
+				// Used by all connectors that do not have their own
+				server.addBean( new ScheduledExecutorScheduler( "Scheduler-" + name, false ) );
+				server.addBean( new ArrayByteBufferPool() );
+
+				// Monitors all connectors, because none are attached yet
+				createLowResourceMonitor( server );
+
+				sharedServers.put( name, server );
+			}
+
+			connector = (ServerConnector) createConnector( server );
+			server.attach( connector, this );
+
+			try
+			{
+				if( !server.isStarted() )
+				{
+					getLogger().info( "Starting a shared Jetty HTTP/HTTPS server: " + name );
+					server.start();
+				}
+				else if( !connector.isStarted() )
+				{
+					getLogger().info( "Attaching a Jetty HTTP/HTTPS connector to shared server: " + name );
+					connector.start();
+				}
+			}
+			catch( Exception x )
+			{
+				connector.stop();
+				if( server.detach( connector ) )
+				{
+					sharedServers.remove( name );
+					server.stop();
+				}
+				throw x;
+			}
+
+			setWrappedServer( server );
+			sharedConnector = connector;
+		}
+
+		// We won't know the local port until after the connector starts
+		setEphemeralPort( connector.getLocalPort() );
+	}
+
+	/**
+	 * Detaches the connector from its shared Jetty server, stopping the server
+	 * if no connectors remain.
+	 * 
+	 * @throws Exception
+	 *         In case of a Jetty error
+	 */
+	private void stopShared() throws Exception
+	{
+		final String name = getSharedServer();
+		synchronized( sharedServers )
+		{
+			final Connector connector = sharedConnector;
+			final WrappedServer server = (WrappedServer) getWrappedServer();
+			sharedConnector = null;
+			setWrappedServer( null );
+
+			connector.stop();
+			if( server.detach( connector ) )
+			{
+				getLogger().info( "Stopping a shared Jetty HTTP/HTTPS server: " + name );
+				sharedServers.values().remove( server );
+				server.stop();
+			}
+			else
+				getLogger().info( "Detaching a Jetty HTTP/HTTPS connector from shared server: " + name );
+		}
+	}
+
 	/**
 	 * Creates a Jetty thread pool.
 	 * 
@@ -885,6 +1315,7 @@ public abstract class JettyServerHelper extends HttpServerHelper
 		threadPool.setThreadsPriority( getThreadPoolThreadsPriority() );
 		threadPool.setIdleTimeout( getThreadPoolIdleTimeout() );
 		threadPool.setStopTimeout( getThreadPoolStopTimeout() );
+		threadPool.setReservedThreads( getEffectiveReservedThreads() );
 		// threadPool.setDaemon( daemon );
 		// threadPool.setDetailedDump( detailedDump );
 		return threadPool;
@@ -902,8 +1333,8 @@ public abstract class JettyServerHelper extends HttpServerHelper
 		final HttpConfiguration configuration = createConfiguration();
 		final ConnectionFactory[] connectionFactories = createConnectionFactories( configuration );
 
-		final int acceptors = getConnectorAcceptors();
-		final int selectors = getConnectorSelectors();
+		final int acceptors = getEffectiveAcceptors();
+		final int selectors = getEffectiveSelectors();
 		final Executor executor = getConnectorExecutor();
 		final Scheduler scheduler = getConnectorScheduler();
 		final ByteBufferPool byteBufferPool = getConnectorByteBufferPool();
@@ -926,6 +1357,54 @@ public abstract class JettyServerHelper extends HttpServerHelper
 		return connector;
 	}
 
+	/**
+	 * The connector acceptor thread count, taking auto-tuning into account.
+	 * 
+	 * @return The acceptor thread count.
+	 */
+	private int getEffectiveAcceptors()
+	{
+		final int acceptors = getConnectorAcceptors();
+		if( ( acceptors < 0 ) && getConnectorAutoTune() )
+			return 1;
+		return acceptors;
+	}
+
+	/**
+	 * The connector selector thread count, taking auto-tuning into account.
+	 * 
+	 * @return The selector thread count.
+	 */
+	private int getEffectiveSelectors()
+	{
+		final int selectors = getConnectorSelectors();
+		if( ( selectors < 0 ) && getConnectorAutoTune() )
+			return Math.max( 1, Runtime.getRuntime().availableProcessors() / 2 );
+		return selectors;
+	}
+
+	/**
+	 * The thread pool reserved thread count, taking the execution strategy and
+	 * auto-tuning into account.
+	 * 
+	 * @return The reserved thread count.
+	 */
+	private int getEffectiveReservedThreads()
+	{
+		final String executionStrategy = getConnectorExecutionStrategy();
+		if( EXECUTION_STRATEGY_PRODUCE_EXECUTE_CONSUME.equalsIgnoreCase( executionStrategy ) )
+			// Without reserved threads the selectors can never consume
+			// their own tasks
+			return 0;
+		else if( !EXECUTION_STRATEGY_EAT_WHAT_YOU_KILL.equalsIgnoreCase( executionStrategy ) )
+			throw new IllegalArgumentException( "Unsupported connector.executionStrategy: " + executionStrategy );
+
+		final int reservedThreads = getThreadPoolReservedThreads();
+		if( ( reservedThreads < 0 ) && getConnectorAutoTune() )
+			return getEffectiveSelectors();
+		return reservedThreads;
+	}
+
 	/**
 	 * Creates a Jetty low resource monitor.
 	 * 
@@ -954,7 +1433,9 @@ public abstract class JettyServerHelper extends HttpServerHelper
 	}
 
 	/**
-	 * Jetty server wrapped by a parent Restlet HTTP server connector.
+	 * Jetty server wrapped by parent Restlet HTTP server connectors. Each
+	 * Jetty connector is attached to one Restlet server connector; usually
+	 * there is only one, unless the Jetty server is shared.
 	 * 
 	 * @author Jerome Louvel
 	 * @author Tal Liron
@@ -964,16 +1445,41 @@ public abstract class JettyServerHelper extends HttpServerHelper
 		/**
 		 * Constructor.
 		 * 
-		 * @param helper
-		 *        The Jetty HTTP server.
 		 * @param threadPool
 		 *        The thread pool.
 		 */
-		public WrappedServer( JettyServerHelper helper, ThreadPool threadPool )
+		public WrappedServer( ThreadPool threadPool )
 		{
 			super( threadPool );
-			this.helper = helper;
-			ensureHostHeader = helper.getEnsureHostHeader();
+		}
+
+		/**
+		 * Adds a connector whose calls are handled by a Restlet server
+		 * connector.
+		 * 
+		 * @param connector
+		 *        The Jetty connector.
+		 * @param helper
+		 *        The Jetty HTTP server.
+		 */
+		public void attach( Connector connector, JettyServerHelper helper )
+		{
+			routes.put( connector, new Route( helper ) );
+			addConnector( connector );
+		}
+
+		/**
+		 * Removes a connector.
+		 * 
+		 * @param connector
+		 *        The Jetty connector.
+		 * @return True if no connectors remain.
+		 */
+		public boolean detach( Connector connector )
+		{
+			removeConnector( connector );
+			routes.remove( connector );
+			return routes.isEmpty();
 		}
 
 		/**
@@ -985,13 +1491,27 @@ public abstract class JettyServerHelper extends HttpServerHelper
 		@Override
 		public void handle( HttpChannel channel ) throws IOException, ServletException
 		{
+			final Route route = routes.get( channel.getConnector() );
+			if( route == null )
+			{
+				// The connector is being detached
+				channel.getResponse().sendError( HttpStatus.SERVICE_UNAVAILABLE_503 );
+				return;
+			}
+
+			final JettyServerHelper helper = route.helper;
+			final JettyServerCall call = new JettyServerCall( helper.getHelped(), channel, route.ensureHostHeader, route.pushPreloadLinks );
 			try
 			{
-				helper.handle( new JettyServerCall( helper.getHelped(), channel, ensureHostHeader ) );
+				helper.handle( call );
+
+				// Release this thread if the response will be committed later
+				call.suspend( route.asyncTimeout );
 			}
 			catch( Throwable e )
 			{
-				channel.getEndPoint().close();
+				// Only resets the stream for HTTP/2
+				call.abort( e );
 				throw new IOException( "Restlet exception", e );
 			}
 		}
@@ -999,13 +1519,41 @@ public abstract class JettyServerHelper extends HttpServerHelper
 		@Override
 		public void handleAsync( HttpChannel channel ) throws IOException, ServletException
 		{
-			// TODO: should we handle async differently?
+			// Suspended calls are resumed by completing them, never by
+			// dispatching them
 			handle( channel );
 		}
 
-		private final JettyServerHelper helper;
+		/**
+		 * The Restlet server connector for a Jetty connector.
+		 */
+		private static class Route
+		{
+			/**
+			 * Constructor.
+			 * 
+			 * @param helper
+			 *        The Jetty HTTP server.
+			 */
+			private Route( JettyServerHelper helper )
+			{
+				this.helper = helper;
+				ensureHostHeader = helper.getEnsureHostHeader();
+				pushPreloadLinks = helper.getHttp2PushPreloadLinks();
+				asyncTimeout = helper.getAsyncTimeout();
+			}
+
+			private final JettyServerHelper helper;
+
+			private final boolean ensureHostHeader;
 
-		private final boolean ensureHostHeader;
+			private final boolean pushPreloadLinks;
+
+			private final long asyncTimeout;
+		}
+
+		/** The routes by Jetty connector. */
+		private final Map<Connector, Route> routes = new ConcurrentHashMap<Connector, Route>();
 	}
 
 	/**
@@ -1060,6 +1608,18 @@ public abstract class JettyServerHelper extends HttpServerHelper
 		}
 	}
 
+	/** The "eatWhatYouKill" execution strategy. */
+	private static final String EXECUTION_STRATEGY_EAT_WHAT_YOU_KILL = "eatWhatYouKill";
+
+	/** The "produceExecuteConsume" execution strategy. */
+	private static final String EXECUTION_STRATEGY_PRODUCE_EXECUTE_CONSUME = "produceExecuteConsume";
+
+	/** The shared Jetty servers by name. */
+	private static final Map<String, WrappedServer> sharedServers = new HashMap<String, WrappedServer>();
+
 	/** The wrapped Jetty server. */
 	private volatile org.eclipse.jetty.server.Server wrappedServer;
+
+	/** The connector attached to a shared Jetty server. */
+	private volatile ServerConnector sharedConnector;
 }
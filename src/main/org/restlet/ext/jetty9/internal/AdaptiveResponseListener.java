@@ -0,0 +1,203 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import java.nio.ByteBuffer;
+
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+
+/**
+ * Response listener that buffers small responses and streams large ones.
+ * <p>
+ * Responses that fit within the threshold (whether their Content-Length is
+ * declared or not) are accumulated into a pooled buffer, and the response is
+ * only made available once it is complete, so the caller wakes up once and
+ * reads from memory. The buffer is sized from the Content-Length when it is
+ * declared, and otherwise starts small and grows up to the threshold. As soon as a response is known to exceed the
+ * threshold, either from its Content-Length or from the content received so
+ * far, it switches to streaming as a {@link ChannelResponseListener}.
+ * 
+ * @author Tal Liron
+ */
+public class AdaptiveResponseListener extends ChannelResponseListener
+{
+	/**
+	 * Constructor.
+	 * 
+	 * @param byteBufferPool
+	 *        The byte buffer pool
+	 * @param threshold
+	 *        The max size in bytes of buffered responses
+	 */
+	public AdaptiveResponseListener( ByteBufferPool byteBufferPool, int threshold )
+	{
+		this.byteBufferPool = byteBufferPool;
+		this.threshold = threshold;
+	}
+
+	//
+	// Response.Listener
+	//
+
+	@Override
+	public void onHeaders( Response response )
+	{
+		contentLength = response.getHeaders().getLongField( HttpHeader.CONTENT_LENGTH.asString() );
+		if( contentLength > threshold )
+			headersReady( response );
+		else
+		{
+			bufferedResponse = response;
+			buffering = true;
+		}
+	}
+
+	@Override
+	public void onContent( Response response, ByteBuffer content, Callback callback )
+	{
+		if( !buffering )
+		{
+			super.onContent( response, content, callback );
+			return;
+		}
+
+		final int length = content.remaining();
+		final int size = buffer == null ? 0 : buffer.remaining();
+		if( (long) size + length > threshold )
+		{
+			// Too large: switch to streaming, starting with what we buffered
+			buffering = false;
+			enqueueBuffer();
+			headersReady( response );
+			super.onContent( response, content, callback );
+			return;
+		}
+
+		ensureSpace( size, length );
+		BufferUtil.append( buffer, content );
+		callback.succeeded();
+	}
+
+	@Override
+	public void onComplete( Result result )
+	{
+		if( buffering )
+		{
+			buffering = false;
+			if( result.isSucceeded() )
+			{
+				// The response is complete by the time it is made available
+				enqueueBuffer();
+				super.onComplete( result );
+				headersReady( bufferedResponse );
+				return;
+			}
+			releaseBuffer();
+		}
+
+		super.onComplete( result );
+	}
+
+	// //////////////////////////////////////////////////////////////////////////
+	// Private
+
+	/** The initial buffer capacity when the content length is unknown. */
+	private static final int INITIAL_CAPACITY = 4096;
+
+	/**
+	 * Makes sure the buffer has room for more content. The first buffer is
+	 * sized from the Content-Length when it is known, otherwise it starts
+	 * small; it then grows by doubling, never beyond the threshold.
+	 * 
+	 * @param size
+	 *        The number of bytes already buffered
+	 * @param length
+	 *        The number of bytes to add
+	 */
+	private void ensureSpace( int size, int length )
+	{
+		if( ( buffer != null ) && ( BufferUtil.space( buffer ) >= length ) )
+			return;
+
+		final int required = size + length;
+		int capacity;
+		if( buffer == null )
+			capacity = contentLength >= 0 ? (int) contentLength : INITIAL_CAPACITY;
+		else
+			capacity = (int) Math.min( 2L * buffer.capacity(), threshold );
+		capacity = Math.min( Math.max( capacity, required ), threshold );
+
+		final ByteBuffer grown = byteBufferPool.acquire( capacity, false );
+		BufferUtil.clear( grown );
+		if( buffer != null )
+		{
+			BufferUtil.append( grown, buffer );
+			byteBufferPool.release( buffer );
+		}
+		buffer = grown;
+	}
+
+	/**
+	 * Queues the buffered content for the reader, if there is any. The buffer
+	 * is returned to the pool once it is consumed.
+	 */
+	private void enqueueBuffer()
+	{
+		final ByteBuffer buffer = this.buffer;
+		this.buffer = null;
+		if( buffer == null )
+			return;
+
+		if( buffer.hasRemaining() )
+		{
+			final Runnable release = () -> byteBufferPool.release( buffer );
+			enqueue( buffer, Callback.from( release, x -> release.run() ) );
+		}
+		else
+			byteBufferPool.release( buffer );
+	}
+
+	/**
+	 * Returns the buffer to the pool.
+	 */
+	private void releaseBuffer()
+	{
+		final ByteBuffer buffer = this.buffer;
+		this.buffer = null;
+		if( buffer != null )
+			byteBufferPool.release( buffer );
+	}
+
+	/** The byte buffer pool. */
+	private final ByteBufferPool byteBufferPool;
+
+	/** The max size in bytes of buffered responses. */
+	private final int threshold;
+
+	/** The declared Content-Length, or -1 if unknown. */
+	private long contentLength = -1;
+
+	/** The response, while it is being buffered. */
+	private Response bufferedResponse;
+
+	/** Whether the response is being buffered. */
+	private boolean buffering;
+
+	/** The pooled buffer. */
+	private ByteBuffer buffer;
+}
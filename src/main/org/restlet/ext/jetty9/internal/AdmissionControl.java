@@ -0,0 +1,126 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.http.HttpStatus;
+
+/**
+ * Admits a Jetty request to its destination through a concurrency limiter and
+ * a circuit breaker.
+ * <p>
+ * The request is admitted when Jetty queues it. If it is not admitted, it is
+ * aborted with a {@link RejectedExecutionException} (as Jetty does when the
+ * destination's queue is full), failing fast instead of waiting in the queue.
+ * When an admitted request completes, its outcome is recorded.
+ * <p>
+ * The two record different outcomes on purpose. The concurrency limiter only
+ * counts failures and "503 Service Unavailable" as drops, because they are
+ * signs of overload that call for less concurrency. Other "5xx" statuses are
+ * errors of the destination rather than of its load, so they do not shrink
+ * the limit. The circuit breaker counts failures and all "5xx" statuses,
+ * because any of them means the destination is unhealthy.
+ * 
+ * @author Tal Liron
+ */
+public class AdmissionControl implements Request.QueuedListener, Response.CompleteListener
+{
+	/**
+	 * Constructor.
+	 * 
+	 * @param destination
+	 *        The destination
+	 * @param limiter
+	 *        The concurrency limiter or null
+	 * @param breaker
+	 *        The circuit breaker or null
+	 */
+	public AdmissionControl( String destination, ConcurrencyLimiter limiter, CircuitBreaker breaker )
+	{
+		this.destination = destination;
+		this.limiter = limiter;
+		this.breaker = breaker;
+	}
+
+	public void onQueued( Request request )
+	{
+		// A redirect may queue a copy of the request
+		if( admitted )
+			return;
+
+		if( ( limiter != null ) && !limiter.tryAcquire() )
+		{
+			request.abort( new RejectedExecutionException( "Concurrency limit " + limiter.getLimit() + " reached for " + destination ) );
+			return;
+		}
+
+		if( ( breaker != null ) && !breaker.tryAcquire() )
+		{
+			if( limiter != null )
+				limiter.cancel();
+			request.abort( new RejectedExecutionException( "Circuit open for " + destination ) );
+			return;
+		}
+
+		start = System.nanoTime();
+		admitted = true;
+	}
+
+	public void onComplete( Result result )
+	{
+		if( !admitted )
+			return;
+
+		if( result.getFailure() instanceof CancellationException )
+		{
+			// Aborted by us (for example, a hedged request that lost), so
+			// there is no outcome to record
+			if( limiter != null )
+				limiter.cancel();
+			if( breaker != null )
+				breaker.cancel();
+			return;
+		}
+
+		// Only overload shrinks the concurrency limit, while any server
+		// error counts against the circuit
+		final int status = result.getResponse().getStatus();
+		if( limiter != null )
+			limiter.release( System.nanoTime() - start, result.isFailed() || ( status == HttpStatus.SERVICE_UNAVAILABLE_503 ) );
+		if( breaker != null )
+			breaker.release( result.isFailed() || HttpStatus.isServerError( status ) );
+	}
+
+	// //////////////////////////////////////////////////////////////////////////
+	// Private
+
+	/** The destination. */
+	private final String destination;
+
+	/** The concurrency limiter or null. */
+	private final ConcurrencyLimiter limiter;
+
+	/** The circuit breaker or null. */
+	private final CircuitBreaker breaker;
+
+	/** When the request was admitted. */
+	private volatile long start;
+
+	/** Whether the request was admitted. */
+	private volatile boolean admitted;
+}
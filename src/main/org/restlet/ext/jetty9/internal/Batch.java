@@ -0,0 +1,253 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Uniform;
+import org.restlet.data.Status;
+import org.restlet.engine.adapter.ClientAdapter;
+import org.restlet.ext.jetty9.JettyHttpClientHelper;
+
+/**
+ * Sends many requests asynchronously and completes when enough of them have
+ * succeeded, when too many have failed for that to happen, or when a deadline
+ * expires. The remaining requests are then aborted.
+ * <p>
+ * No thread waits for the responses: requests are sent via Jetty's
+ * asynchronous API, and the deadline is scheduled on the client's scheduler.
+ * 
+ * @author Tal Liron
+ */
+public class Batch
+{
+	/**
+	 * Constructor.
+	 * 
+	 * @param helper
+	 *        The client helper
+	 * @param requests
+	 *        The requests
+	 * @param quorum
+	 *        The number of successful responses required
+	 * @param timeout
+	 *        The deadline in milliseconds from now, or 0 for none
+	 */
+	public Batch( JettyHttpClientHelper helper, List<Request> requests, int quorum, long timeout )
+	{
+		this.helper = helper;
+		this.requests = new ArrayList<Request>( requests );
+		this.quorum = Math.min( quorum, requests.size() );
+		this.timeout = timeout;
+		responses = new Response[requests.size()];
+		calls = new AtomicReferenceArray<JettyClientCall>( requests.size() );
+		finished = new AtomicIntegerArray( requests.size() );
+	}
+
+	/**
+	 * Sends the requests, in order.
+	 * <p>
+	 * The requests are not modified: their own "onResponse" callbacks, if
+	 * any, are called before the batch counts them as finished.
+	 * 
+	 * @return A future for the responses, in the order of the requests. It is
+	 *         completed once all requests are finished, including the aborted
+	 *         ones, whose status is {@link Status#CONNECTOR_ERROR_COMMUNICATION}.
+	 */
+	public CompletableFuture<List<Response>> send()
+	{
+		if( requests.isEmpty() )
+		{
+			future.complete( Arrays.asList( responses ) );
+			return future;
+		}
+
+		if( timeout > 0 )
+		{
+			final Scheduler scheduler = helper.getHttpClient().getScheduler();
+			deadline = scheduler.schedule( () -> decide( new TimeoutException( "Batch deadline expired" ) ), timeout, TimeUnit.MILLISECONDS );
+		}
+
+		for( int i = 0, size = requests.size(); i < size; i++ )
+			send( i );
+
+		return future;
+	}
+
+	// //////////////////////////////////////////////////////////////////////////
+	// Private
+
+	/**
+	 * Sends a request asynchronously.
+	 * 
+	 * @param index
+	 *        The request index
+	 */
+	private void send( final int index )
+	{
+		final Request request = requests.get( index );
+		final Response response = new Response( request );
+		responses[index] = response;
+
+		if( reason.get() != null )
+		{
+			response.setStatus( Status.CONNECTOR_ERROR_COMMUNICATION, new CancellationException( "Batch already completed" ) );
+			finished( index, response );
+			return;
+		}
+
+		final Uniform onResponse = request.getOnResponse();
+		try
+		{
+			final ClientAdapter adapter = helper.getAdapter();
+			final JettyClientCall call = (JettyClientCall) adapter.toSpecific( helper, request );
+			if( call == null )
+			{
+				response.setStatus( Status.CONNECTOR_ERROR_INTERNAL, "Unable to create the call" );
+				finished( index, response );
+				return;
+			}
+			calls.set( index, call );
+
+			// The call is sent asynchronously with our own callback, rather
+			// than via the request's "onResponse"
+			call.sendRequest( request, response, ( req, resp ) ->
+			{
+				try
+				{
+					adapter.updateResponse( resp, new Status( call.getStatusCode(), call.getReasonPhrase() ), call );
+					if( onResponse != null )
+						onResponse.handle( req, resp );
+				}
+				finally
+				{
+					finished( index, resp );
+				}
+			} );
+			if( reason.get() != null )
+				abort( index );
+		}
+		catch( Exception e )
+		{
+			helper.getLogger().log( Level.WARNING, "An error occurred while sending a batch request.", e );
+			response.setStatus( Status.CONNECTOR_ERROR_INTERNAL, e );
+			finished( index, response );
+		}
+	}
+
+	/**
+	 * Called once for each finished request.
+	 * 
+	 * @param index
+	 *        The request index
+	 * @param response
+	 *        The response
+	 */
+	private void finished( int index, Response response )
+	{
+		if( !finished.compareAndSet( index, 0, 1 ) )
+			return;
+
+		final int succeeded = response.getStatus().isSuccess() ? this.succeeded.incrementAndGet() : this.succeeded.get();
+		final int finishedCount = this.finishedCount.incrementAndGet();
+
+		if( succeeded >= quorum )
+			decide( new CancellationException( "Batch quorum reached" ) );
+		else if( succeeded + ( requests.size() - finishedCount ) < quorum )
+			decide( new CancellationException( "Batch quorum unreachable" ) );
+
+		if( finishedCount == requests.size() )
+		{
+			if( deadline != null )
+				deadline.cancel();
+			future.complete( Arrays.asList( responses ) );
+		}
+	}
+
+	/**
+	 * Decides the batch, aborting the unfinished requests.
+	 * 
+	 * @param reason
+	 *        The reason for aborting
+	 */
+	private void decide( Throwable reason )
+	{
+		if( !this.reason.compareAndSet( null, reason ) )
+			return;
+		for( int i = 0, size = calls.length(); i < size; i++ )
+			abort( i );
+	}
+
+	/**
+	 * Aborts a request if it is unfinished.
+	 * 
+	 * @param index
+	 *        The request index
+	 */
+	private void abort( int index )
+	{
+		final JettyClientCall call = calls.get( index );
+		if( ( call != null ) && ( finished.get( index ) == 0 ) )
+			call.abortHttpRequest( reason.get() );
+	}
+
+	/** The client helper. */
+	private final JettyHttpClientHelper helper;
+
+	/** The requests. */
+	private final List<Request> requests;
+
+	/** The number of successful responses required. */
+	private final int quorum;
+
+	/** The deadline in milliseconds. */
+	private final long timeout;
+
+	/** The responses. */
+	private final Response[] responses;
+
+	/** The calls, read when deciding on other threads. */
+	private final AtomicReferenceArray<JettyClientCall> calls;
+
+	/** Which requests are finished. */
+	private final AtomicIntegerArray finished;
+
+	/** The number of finished requests. */
+	private final AtomicInteger finishedCount = new AtomicInteger();
+
+	/** The number of successful responses. */
+	private final AtomicInteger succeeded = new AtomicInteger();
+
+	/** The reason for aborting unfinished requests, once decided. */
+	private final AtomicReference<Throwable> reason = new AtomicReference<Throwable>();
+
+	/** The future. */
+	private final CompletableFuture<List<Response>> future = new CompletableFuture<List<Response>>();
+
+	/** The scheduled deadline. */
+	private volatile Scheduler.Task deadline;
+}
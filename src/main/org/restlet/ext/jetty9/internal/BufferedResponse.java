@@ -0,0 +1,110 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.http.HttpFields;
+
+/**
+ * An immutable, fully buffered client response, which can be shared by
+ * several calls.
+ * 
+ * @author Tal Liron
+ */
+public class BufferedResponse
+{
+	/**
+	 * Constructor.
+	 * 
+	 * @param status
+	 *        The status code
+	 * @param reason
+	 *        The reason phrase
+	 * @param headers
+	 *        The headers (must not be modified afterwards)
+	 * @param content
+	 *        The content (must not be modified afterwards)
+	 */
+	public BufferedResponse( int status, String reason, HttpFields headers, byte[] content )
+	{
+		this.status = status;
+		this.reason = reason;
+		this.headers = headers;
+		this.content = content;
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param response
+	 *        The Jetty response (its headers are copied)
+	 * @param content
+	 *        The content (must not be modified afterwards)
+	 */
+	public BufferedResponse( Response response, byte[] content )
+	{
+		this( response.getStatus(), response.getReason(), new HttpFields( response.getHeaders() ), content );
+	}
+
+	/**
+	 * The status code.
+	 * 
+	 * @return The status code.
+	 */
+	public int getStatus()
+	{
+		return status;
+	}
+
+	/**
+	 * The reason phrase.
+	 * 
+	 * @return The reason phrase.
+	 */
+	public String getReason()
+	{
+		return reason;
+	}
+
+	/**
+	 * The headers. Must not be modified.
+	 * 
+	 * @return The headers.
+	 */
+	public HttpFields getHeaders()
+	{
+		return headers;
+	}
+
+	/**
+	 * The content. Must not be modified.
+	 * 
+	 * @return The content.
+	 */
+	public byte[] getContent()
+	{
+		return content;
+	}
+
+	/** The status code. */
+	private final int status;
+
+	/** The reason phrase. */
+	private final String reason;
+
+	/** The headers. */
+	private final HttpFields headers;
+
+	/** The content. */
+	private final byte[] content;
+}
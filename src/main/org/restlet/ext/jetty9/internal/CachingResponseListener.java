@@ -0,0 +1,201 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import java.nio.ByteBuffer;
+
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.restlet.data.Header;
+import org.restlet.util.Series;
+
+/**
+ * Response listener that stores cacheable responses in an {@link HttpCache}
+ * while passing them on to another listener.
+ * <p>
+ * Whether a response can be stored is decided from its status and headers.
+ * Responses that cannot be stored are passed on as they arrive. Responses that
+ * can are buffered, up to the cache's max entry size, and passed on once they
+ * are complete; a response that turns out to be larger is passed on from then
+ * on, starting with what was buffered, and is not stored. "304 Not Modified"
+ * responses are passed on as they are, for the caller to revalidate its
+ * entry.
+ * 
+ * @author Tal Liron
+ */
+public class CachingResponseListener extends Response.Listener.Adapter
+{
+	/**
+	 * Constructor.
+	 * 
+	 * @param listener
+	 *        The listener to pass the response on to
+	 * @param cache
+	 *        The cache
+	 * @param key
+	 *        The cache key
+	 * @param requestHeaders
+	 *        The request headers
+	 * @param requestTime
+	 *        When the request was sent
+	 */
+	public CachingResponseListener( Response.Listener listener, HttpCache cache, String key, Series<Header> requestHeaders, long requestTime )
+	{
+		this.listener = listener;
+		this.cache = cache;
+		this.key = key;
+		this.requestHeaders = requestHeaders;
+		this.requestTime = requestTime;
+	}
+
+	/**
+	 * The listener the response is passed on to.
+	 * 
+	 * @return The listener
+	 */
+	public Response.Listener getListener()
+	{
+		return listener;
+	}
+
+	//
+	// Response.Listener
+	//
+
+	@Override
+	public void onHeaders( Response response )
+	{
+		final int status = response.getStatus();
+		if( ( status != HttpStatus.NOT_MODIFIED_304 ) && cache.isStorable( status, response.getHeaders() ) )
+		{
+			final long contentLength = response.getHeaders().getLongField( HttpHeader.CONTENT_LENGTH.asString() );
+			buffer = BufferUtil.allocate( contentLength > 0 ? (int) contentLength : INITIAL_CAPACITY );
+		}
+		else
+		{
+			if( status != HttpStatus.NOT_MODIFIED_304 )
+				cache.invalidate( key );
+			listener.onHeaders( response );
+		}
+	}
+
+	@Override
+	public void onContent( Response response, ByteBuffer content, Callback callback )
+	{
+		final ByteBuffer buffer = this.buffer;
+		if( buffer == null )
+		{
+			listener.onContent( response, content, callback );
+			return;
+		}
+
+		final int length = buffer.remaining() + content.remaining();
+		if( length <= cache.getMaxEntrySize() )
+		{
+			if( BufferUtil.space( buffer ) < content.remaining() )
+				this.buffer = BufferUtil.ensureCapacity( buffer, Math.min( cache.getMaxEntrySize(), Math.max( length, buffer.capacity() * 2 ) ) );
+			BufferUtil.append( this.buffer, content );
+			callback.succeeded();
+		}
+		else
+		{
+			// Too large to store: pass it on from here on
+			this.buffer = null;
+			listener.onHeaders( response );
+			if( buffer.hasRemaining() )
+				listener.onContent( response, buffer, Callback.NOOP );
+			listener.onContent( response, content, callback );
+		}
+	}
+
+	@Override
+	public void onSuccess( Response response )
+	{
+		if( buffer == null )
+			listener.onSuccess( response );
+	}
+
+	@Override
+	public void onFailure( Response response, Throwable failure )
+	{
+		if( buffer == null )
+			listener.onFailure( response, failure );
+	}
+
+	@Override
+	public void onComplete( Result result )
+	{
+		final ByteBuffer buffer = this.buffer;
+		if( buffer != null )
+		{
+			this.buffer = null;
+			final Response response = result.getResponse();
+			if( result.isSucceeded() )
+			{
+				final byte[] content = BufferUtil.toArray( buffer );
+				cache.store( key, requestHeaders, new BufferedResponse( response, content ), requestTime, System.currentTimeMillis() );
+				listener.onHeaders( response );
+				if( content.length > 0 )
+					listener.onContent( response, ByteBuffer.wrap( content ), Callback.NOOP );
+				listener.onSuccess( response );
+			}
+			else
+				listener.onFailure( response, result.getFailure() );
+		}
+
+		listener.onComplete( result );
+	}
+
+	// //////////////////////////////////////////////////////////////////////////
+	// Private
+
+	/**
+	 * The initial buffer capacity when the content length is unknown.
+	 */
+	private static final int INITIAL_CAPACITY = 4096;
+
+	/**
+	 * The listener to pass the response on to.
+	 */
+	private final Response.Listener listener;
+
+	/**
+	 * The cache.
+	 */
+	private final HttpCache cache;
+
+	/**
+	 * The cache key.
+	 */
+	private final String key;
+
+	/**
+	 * The request headers.
+	 */
+	private final Series<Header> requestHeaders;
+
+	/**
+	 * When the request was sent.
+	 */
+	private final long requestTime;
+
+	/**
+	 * The content buffered for storing, or null if the response is passed on
+	 * as it arrives.
+	 */
+	private ByteBuffer buffer;
+}
@@ -0,0 +1,279 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.SocketAddressResolver;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * Socket address resolver with a cache of host addresses.
+ * <p>
+ * Lookups run on the Jetty HTTP client's executor, and concurrent lookups of
+ * the same host share a single lookup. Cached addresses are used for their
+ * TTL; a host that is used after three quarters of its TTL is refreshed in
+ * the background, so that hot hosts never wait for DNS. Expired addresses are
+ * still used, while being refreshed in the background, for the stale TTL, so
+ * that a slow or failing DNS server does not fail requests to hosts that were
+ * already resolved.
+ * <p>
+ * Cache reads take no locks: entries are immutable and replaced atomically.
+ * 
+ * @author Tal Liron
+ */
+public class CachingSocketAddressResolver implements SocketAddressResolver
+{
+	/**
+	 * Constructor.
+	 * 
+	 * @param httpClient
+	 *        The Jetty HTTP client, whose executor and scheduler are used once
+	 *        it is started
+	 * @param ttl
+	 *        How long in milliseconds addresses are cached
+	 * @param staleTtl
+	 *        How long in milliseconds after their TTL addresses may still be
+	 *        used while they are refreshed
+	 * @param timeout
+	 *        The lookup timeout in milliseconds
+	 * @param logger
+	 *        The logger
+	 */
+	public CachingSocketAddressResolver( HttpClient httpClient, long ttl, long staleTtl, long timeout, Logger logger )
+	{
+		this.httpClient = httpClient;
+		this.ttl = ttl;
+		this.staleTtl = staleTtl;
+		this.timeout = timeout;
+		this.logger = logger;
+	}
+
+	/**
+	 * Clears the cache.
+	 */
+	public void clear()
+	{
+		entries.clear();
+	}
+
+	//
+	// SocketAddressResolver
+	//
+
+	public void resolve( final String host, final int port, final Promise<List<InetSocketAddress>> promise )
+	{
+		final long now = System.currentTimeMillis();
+		final Entry entry = entries.get( host );
+		if( entry != null )
+		{
+			final long age = now - entry.resolved;
+			if( age < ttl + staleTtl )
+			{
+				if( age >= ttl * 3 / 4 )
+					// Refresh in the background
+					lookup( host );
+				promise.succeeded( entry.toSocketAddresses( port ) );
+				return;
+			}
+		}
+
+		lookup( host ).whenComplete( ( addresses, x ) ->
+		{
+			if( x == null )
+				promise.succeeded( toSocketAddresses( addresses, port ) );
+			else
+				promise.failed( x );
+		} );
+	}
+
+	// //////////////////////////////////////////////////////////////////////////
+	// Private
+
+	/**
+	 * The max number of cached hosts before expired entries are swept.
+	 */
+	private static final int SWEEP_SIZE = 1024;
+
+	/**
+	 * Cached addresses of a host.
+	 */
+	private static class Entry
+	{
+		/**
+		 * Constructor.
+		 * 
+		 * @param addresses
+		 *        The addresses
+		 */
+		private Entry( InetAddress[] addresses )
+		{
+			this.addresses = addresses;
+		}
+
+		/**
+		 * The socket addresses for a port.
+		 * 
+		 * @param port
+		 *        The port
+		 * @return The socket addresses
+		 */
+		private List<InetSocketAddress> toSocketAddresses( int port )
+		{
+			return CachingSocketAddressResolver.toSocketAddresses( addresses, port );
+		}
+
+		/** The addresses. */
+		private final InetAddress[] addresses;
+
+		/** When the addresses were resolved. */
+		private final long resolved = System.currentTimeMillis();
+	}
+
+	/**
+	 * The socket addresses for a port.
+	 * 
+	 * @param addresses
+	 *        The addresses
+	 * @param port
+	 *        The port
+	 * @return The socket addresses
+	 */
+	private static List<InetSocketAddress> toSocketAddresses( InetAddress[] addresses, int port )
+	{
+		final List<InetSocketAddress> socketAddresses = new ArrayList<InetSocketAddress>( addresses.length );
+		for( InetAddress address : addresses )
+			socketAddresses.add( new InetSocketAddress( address, port ) );
+		return socketAddresses;
+	}
+
+	/**
+	 * Looks up the addresses of a host, joining a lookup that is already in
+	 * progress.
+	 * 
+	 * @param host
+	 *        The host
+	 * @return The future addresses
+	 */
+	private CompletableFuture<InetAddress[]> lookup( final String host )
+	{
+		final CompletableFuture<InetAddress[]> future = new CompletableFuture<InetAddress[]>();
+		final CompletableFuture<InetAddress[]> existing = lookups.putIfAbsent( host, future );
+		if( existing != null )
+			return existing;
+
+		final Scheduler scheduler = httpClient.getScheduler();
+		final Scheduler.Task timeoutTask = timeout > 0 ? scheduler.schedule( () -> future.completeExceptionally( new TimeoutException( "DNS lookup timed out after " + timeout + " ms: " + host ) ), timeout, TimeUnit.MILLISECONDS ) : null;
+
+		future.whenComplete( ( addresses, x ) ->
+		{
+			lookups.remove( host, future );
+			if( timeoutTask != null )
+				timeoutTask.cancel();
+			if( x != null )
+				logger.log( Level.FINE, "DNS lookup failed: " + host, x );
+		} );
+
+		try
+		{
+			httpClient.getExecutor().execute( () ->
+			{
+				try
+				{
+					final InetAddress[] addresses = InetAddress.getAllByName( host );
+					if( addresses.length == 0 )
+						throw new UnknownHostException( host );
+					put( host, new Entry( addresses ) );
+					future.complete( addresses );
+				}
+				catch( Throwable x )
+				{
+					future.completeExceptionally( x );
+				}
+			} );
+		}
+		catch( Throwable x )
+		{
+			future.completeExceptionally( x );
+		}
+
+		return future;
+	}
+
+	/**
+	 * Caches an entry, first sweeping entries that can no longer be used if
+	 * the cache is large.
+	 * 
+	 * @param host
+	 *        The host
+	 * @param entry
+	 *        The entry
+	 */
+	private void put( String host, Entry entry )
+	{
+		if( entries.size() >= SWEEP_SIZE )
+		{
+			final long expired = System.currentTimeMillis() - ttl - staleTtl;
+			entries.values().removeIf( e -> e.resolved <= expired );
+		}
+		entries.put( host, entry );
+	}
+
+	/**
+	 * The Jetty HTTP client.
+	 */
+	private final HttpClient httpClient;
+
+	/**
+	 * How long in milliseconds addresses are cached.
+	 */
+	private final long ttl;
+
+	/**
+	 * How long in milliseconds after their TTL addresses may still be used.
+	 */
+	private final long staleTtl;
+
+	/**
+	 * The lookup timeout in milliseconds.
+	 */
+	private final long timeout;
+
+	/**
+	 * The logger.
+	 */
+	private final Logger logger;
+
+	/**
+	 * The cached addresses by host.
+	 */
+	private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * The lookups in progress by host.
+	 */
+	private final Map<String, CompletableFuture<InetAddress[]>> lookups = new ConcurrentHashMap<String, CompletableFuture<InetAddress[]>>();
+}
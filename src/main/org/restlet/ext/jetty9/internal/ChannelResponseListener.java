@@ -0,0 +1,441 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.util.Callback;
+
+/**
+ * Response listener that exposes the response content as a blocking
+ * {@link ReadableByteChannel}.
+ * <p>
+ * Jetty's content buffers are handed to the reader as they are, without being
+ * copied into an intermediate queue. Demand is driven by the reader: Jetty is
+ * only asked for more content once a buffer has been fully consumed, so a slow
+ * reader slows the download down rather than accumulating memory.
+ * 
+ * @author Tal Liron
+ */
+public class ChannelResponseListener extends Response.Listener.Adapter implements ReadableByteChannel
+{
+	/**
+	 * Sets the max number of remaining bytes to drain when the channel is
+	 * closed before the end of the content, so that the connection can be
+	 * reused. Larger remainders abort the response. Defaults to 0.
+	 * 
+	 * @param drainLimit
+	 *        The drain limit
+	 */
+	public void setDrainLimit( long drainLimit )
+	{
+		this.drainLimit = drainLimit;
+	}
+
+	/**
+	 * Sets the max time in milliseconds to wait for remaining content while
+	 * draining. If it passes, the response is aborted. Defaults to 0.
+	 * 
+	 * @param drainTimeout
+	 *        The drain timeout
+	 */
+	public void setDrainTimeout( long drainTimeout )
+	{
+		this.drainTimeout = drainTimeout;
+	}
+
+	/**
+	 * Waits for the response headers.
+	 * 
+	 * @param timeout
+	 *        The max time to wait
+	 * @param unit
+	 *        The time unit
+	 * @return The response
+	 * @throws InterruptedException
+	 *         If interrupted
+	 * @throws TimeoutException
+	 *         If timed out
+	 * @throws ExecutionException
+	 *         If the request failed before the response headers arrived
+	 */
+	public synchronized Response get( long timeout, TimeUnit unit ) throws InterruptedException, TimeoutException, ExecutionException
+	{
+		final long deadline = System.nanoTime() + unit.toNanos( timeout );
+		while( ( response == null ) && ( failure == null ) )
+		{
+			final long remaining = deadline - System.nanoTime();
+			if( remaining <= 0 )
+				throw new TimeoutException();
+			TimeUnit.NANOSECONDS.timedWait( this, remaining );
+		}
+		if( response == null )
+			throw new ExecutionException( failure );
+		return response;
+	}
+
+	/**
+	 * The response, once its headers are available. Lets callers wait without
+	 * blocking a thread.
+	 * 
+	 * @return A future completed with the response, or failed if the request
+	 *         failed before the response headers arrived
+	 */
+	public CompletableFuture<Response> whenReady()
+	{
+		return ready;
+	}
+
+	/**
+	 * Whether the response is complete: its content has been received in
+	 * full, or it failed.
+	 * 
+	 * @return True if complete
+	 */
+	public synchronized boolean isCompleted()
+	{
+		return completed;
+	}
+
+	/**
+	 * Writes the remaining content directly from Jetty's buffers to a channel,
+	 * without an intermediate copy.
+	 * 
+	 * @param channel
+	 *        The channel
+	 * @return The number of bytes written
+	 * @throws IOException
+	 *         In case of an I/O error
+	 */
+	public long transferTo( WritableByteChannel channel ) throws IOException
+	{
+		long transferred = 0;
+		Chunk chunk;
+		while( ( chunk = awaitChunk() ) != null )
+		{
+			while( chunk.buffer.hasRemaining() )
+				transferred += channel.write( chunk.buffer );
+			consumed( chunk );
+		}
+		return transferred;
+	}
+
+	//
+	// Response.Listener
+	//
+
+	@Override
+	public void onHeaders( Response response )
+	{
+		headersReady( response );
+	}
+
+	@Override
+	public void onContent( Response response, ByteBuffer content, Callback callback )
+	{
+		if( content.hasRemaining() )
+			enqueue( content, callback );
+		else
+			callback.succeeded();
+	}
+
+	@Override
+	public void onComplete( Result result )
+	{
+		synchronized( this )
+		{
+			if( result.isFailed() )
+				failure = result.getFailure();
+			completed = true;
+			notifyAll();
+		}
+
+		if( result.isFailed() )
+			ready.completeExceptionally( result.getFailure() );
+	}
+
+	//
+	// ReadableByteChannel
+	//
+
+	public int read( ByteBuffer dst ) throws IOException
+	{
+		final Chunk chunk = awaitChunk();
+		if( chunk == null )
+			return -1;
+
+		final ByteBuffer buffer = chunk.buffer;
+		final int length = Math.min( dst.remaining(), buffer.remaining() );
+		if( length == buffer.remaining() )
+			dst.put( buffer );
+		else
+		{
+			final ByteBuffer slice = buffer.slice();
+			slice.limit( length );
+			dst.put( slice );
+			buffer.position( buffer.position() + length );
+		}
+
+		if( !buffer.hasRemaining() )
+			consumed( chunk );
+		return length;
+	}
+
+	public synchronized boolean isOpen()
+	{
+		return !closed;
+	}
+
+	/**
+	 * Closes the channel. If the response has not been fully read, up to the
+	 * drain limit is drained within the drain timeout, otherwise it is
+	 * aborted.
+	 */
+	public void close()
+	{
+		drain();
+
+		final Queue<Chunk> abandoned;
+		final Response response;
+		synchronized( this )
+		{
+			if( closed )
+				return;
+			closed = true;
+			abandoned = new ArrayDeque<Chunk>( chunks );
+			chunks.clear();
+			response = completed ? null : this.response;
+			notifyAll();
+		}
+
+		final Throwable x = new AsynchronousCloseException();
+		for( Chunk chunk : abandoned )
+			chunk.callback.failed( x );
+		if( response != null )
+			response.abort( x );
+	}
+
+	// //////////////////////////////////////////////////////////////////////////
+	// Protected
+
+	/**
+	 * Makes the response available to {@link #get(long, TimeUnit)} and
+	 * {@link #whenReady()}.
+	 * 
+	 * @param response
+	 *        The response
+	 */
+	protected void headersReady( Response response )
+	{
+		synchronized( this )
+		{
+			this.response = response;
+			notifyAll();
+		}
+
+		ready.complete( response );
+	}
+
+	/**
+	 * Queues a content buffer for the reader. The callback is succeeded once
+	 * the buffer is consumed, or failed if the channel is closed first.
+	 * 
+	 * @param content
+	 *        The content buffer
+	 * @param callback
+	 *        The callback
+	 */
+	protected void enqueue( ByteBuffer content, Callback callback )
+	{
+		synchronized( this )
+		{
+			if( !closed )
+			{
+				chunks.add( new Chunk( content, callback ) );
+				notifyAll();
+				return;
+			}
+		}
+
+		callback.failed( new AsynchronousCloseException() );
+	}
+
+	/**
+	 * Waits for the next content buffer.
+	 * 
+	 * @return The next chunk or null if the content is complete
+	 * @throws IOException
+	 *         If the response failed or the channel is closed
+	 */
+	protected Chunk awaitChunk() throws IOException
+	{
+		return awaitChunk( -1 );
+	}
+
+	/**
+	 * Waits for the next content buffer, for a limited time.
+	 * 
+	 * @param timeout
+	 *        The max time in nanoseconds to wait, or -1 to wait without a
+	 *        limit
+	 * @return The next chunk or null if the content is complete
+	 * @throws IOException
+	 *         If the response failed, the channel is closed or the timeout
+	 *         passed
+	 */
+	protected synchronized Chunk awaitChunk( long timeout ) throws IOException
+	{
+		final long deadline = System.nanoTime() + timeout;
+		try
+		{
+			while( true )
+			{
+				if( closed )
+					throw new ClosedChannelException();
+				final Chunk chunk = chunks.peek();
+				if( chunk != null )
+					return chunk;
+				if( failure != null )
+					throw new IOException( failure );
+				if( completed )
+					return null;
+				if( timeout == -1 )
+					wait();
+				else
+				{
+					final long remaining = deadline - System.nanoTime();
+					if( remaining <= 0 )
+						throw new InterruptedIOException( "Timed out waiting for response content" );
+					TimeUnit.NANOSECONDS.timedWait( this, remaining );
+				}
+			}
+		}
+		catch( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	/**
+	 * Releases a fully consumed content buffer back to Jetty, which demands
+	 * more content.
+	 * 
+	 * @param chunk
+	 *        The chunk
+	 */
+	protected void consumed( Chunk chunk )
+	{
+		synchronized( this )
+		{
+			if( chunks.peek() != chunk )
+				return;
+			chunks.poll();
+		}
+		chunk.callback.succeeded();
+	}
+
+	/**
+	 * A content buffer and its callback.
+	 */
+	protected static class Chunk
+	{
+		/**
+		 * Constructor.
+		 * 
+		 * @param buffer
+		 *        The content buffer
+		 * @param callback
+		 *        The callback
+		 */
+		protected Chunk( ByteBuffer buffer, Callback callback )
+		{
+			this.buffer = buffer;
+			this.callback = callback;
+		}
+
+		/** The content buffer. */
+		protected final ByteBuffer buffer;
+
+		/** The callback to succeed when the buffer is consumed. */
+		protected final Callback callback;
+	}
+
+	// //////////////////////////////////////////////////////////////////////////
+	// Private
+
+	/**
+	 * Consumes up to the drain limit of remaining content, without copying it,
+	 * waiting no longer than the drain timeout. The response is aborted by the
+	 * caller if it is not complete.
+	 */
+	private void drain()
+	{
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( Math.max( 0, drainTimeout ) );
+		long remaining = drainLimit;
+		try
+		{
+			Chunk chunk;
+			while( isOpen() && ( ( chunk = awaitChunk( Math.max( 0, deadline - System.nanoTime() ) ) ) != null ) )
+			{
+				remaining -= chunk.buffer.remaining();
+				if( remaining < 0 )
+					return;
+				chunk.buffer.position( chunk.buffer.limit() );
+				consumed( chunk );
+			}
+		}
+		catch( IOException x )
+		{
+			// The connection will not be reused
+		}
+	}
+
+	/** The max number of remaining bytes to drain on close. */
+	private volatile long drainLimit;
+
+	/** The max time in milliseconds to wait for remaining content on close. */
+	private volatile long drainTimeout;
+
+	/** Completed once the response headers are available. */
+	private final CompletableFuture<Response> ready = new CompletableFuture<Response>();
+
+	/** The queued content buffers. */
+	private final Queue<Chunk> chunks = new ArrayDeque<Chunk>();
+
+	/** The response, once its headers have arrived. */
+	private Response response;
+
+	/** The failure. */
+	private Throwable failure;
+
+	/** Whether the response is complete. */
+	private boolean completed;
+
+	/** Whether the channel is closed. */
+	private boolean closed;
+}
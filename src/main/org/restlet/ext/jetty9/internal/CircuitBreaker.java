@@ -0,0 +1,152 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import java.util.logging.Logger;
+
+/**
+ * Circuit breaker for a destination.
+ * <p>
+ * After too many consecutive failures the circuit opens, and requests are
+ * rejected immediately. Once the open time has elapsed, a single trial request
+ * is let through: if it succeeds the circuit closes, otherwise it opens again.
+ * 
+ * @author Tal Liron
+ */
+public class CircuitBreaker
+{
+	/**
+	 * Constructor.
+	 * 
+	 * @param destination
+	 *        The destination
+	 * @param failureThreshold
+	 *        The number of consecutive failures that open the circuit
+	 * @param openTime
+	 *        How long in milliseconds the circuit stays open before a trial
+	 *        request
+	 * @param logger
+	 *        The logger
+	 */
+	public CircuitBreaker( String destination, int failureThreshold, long openTime, Logger logger )
+	{
+		this.destination = destination;
+		this.failureThreshold = failureThreshold;
+		this.openTime = openTime;
+		this.logger = logger;
+	}
+
+	/**
+	 * Whether the circuit is open (or half-open, with a trial request in
+	 * flight).
+	 * 
+	 * @return True if open.
+	 */
+	public boolean isOpen()
+	{
+		return state != State.CLOSED;
+	}
+
+	/**
+	 * Acquires permission for a request.
+	 * 
+	 * @return True if the request may be sent
+	 */
+	public boolean tryAcquire()
+	{
+		if( state == State.CLOSED )
+			return true;
+
+		synchronized( this )
+		{
+			if( ( state == State.OPEN ) && ( System.currentTimeMillis() >= openUntil ) )
+			{
+				// Let a trial request through
+				state = State.HALF_OPEN;
+				return true;
+			}
+			return state == State.CLOSED;
+		}
+	}
+
+	/**
+	 * Records the outcome of a request.
+	 * 
+	 * @param failed
+	 *        Whether the request failed
+	 */
+	public synchronized void release( boolean failed )
+	{
+		if( !failed )
+		{
+			failures = 0;
+			if( state == State.HALF_OPEN )
+			{
+				state = State.CLOSED;
+				logger.info( "Closed circuit for " + destination );
+			}
+			return;
+		}
+
+		if( ( state == State.HALF_OPEN ) || ( ( state == State.CLOSED ) && ( ++failures >= failureThreshold ) ) )
+		{
+			state = State.OPEN;
+			openUntil = System.currentTimeMillis() + openTime;
+			failures = 0;
+			logger.info( "Opened circuit for " + destination + " for " + openTime + " ms" );
+		}
+	}
+
+	/**
+	 * Records a request without an outcome. If it was the trial request,
+	 * another one is let through.
+	 */
+	public synchronized void cancel()
+	{
+		if( state == State.HALF_OPEN )
+		{
+			state = State.OPEN;
+			openUntil = 0;
+		}
+	}
+
+	// //////////////////////////////////////////////////////////////////////////
+	// Private
+
+	/** Circuit states. */
+	private enum State
+	{
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	/** The destination. */
+	private final String destination;
+
+	/** The number of consecutive failures that open the circuit. */
+	private final int failureThreshold;
+
+	/** How long in milliseconds the circuit stays open. */
+	private final long openTime;
+
+	/** The logger. */
+	private final Logger logger;
+
+	/** The state. */
+	private volatile State state = State.CLOSED;
+
+	/** The number of consecutive failures. */
+	private int failures;
+
+	/** When the open circuit allows a trial request. */
+	private long openUntil;
+}
@@ -0,0 +1,305 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.eclipse.jetty.client.AbstractConnectionPool;
+import org.eclipse.jetty.client.ConnectionPool;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpDestination;
+import org.eclipse.jetty.client.api.Destination;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.restlet.ext.jetty9.DestinationMetrics;
+import org.restlet.ext.jetty9.JettyHttpClientMetricsMXBean;
+
+/**
+ * Records the metrics of Jetty HTTP clients by destination
+ * ("scheme://host:port"), and combines them with the state of the clients'
+ * connection pools and queues into {@link DestinationMetrics} snapshots.
+ * <p>
+ * Requests are recorded by {@link #track(Request)}; connections and TLS
+ * handshakes by {@link InstrumentedHttpClient}.
+ * 
+ * @author Tal Liron
+ */
+public class ClientMetrics implements JettyHttpClientMetricsMXBean
+{
+	/**
+	 * Constructor.
+	 * 
+	 * @param httpClients
+	 *        Supplies the Jetty HTTP clients whose pools and queues are
+	 *        included in snapshots
+	 * @param window
+	 *        The number of samples after which histogram counts are halved
+	 */
+	public ClientMetrics( Supplier<Collection<HttpClient>> httpClients, long window )
+	{
+		this.httpClients = httpClients;
+		this.window = window;
+	}
+
+	/**
+	 * Records the latency and outcome of a request.
+	 * 
+	 * @param request
+	 *        The Jetty request
+	 */
+	public void track( Request request )
+	{
+		final Recorder recorder = getRecorder( request.getScheme(), request.getHost(), request.getPort() );
+		final AtomicLong start = new AtomicLong();
+		request.onRequestBegin( r -> start.set( System.nanoTime() ) );
+		request.onComplete( result ->
+		{
+			final long begin = start.get();
+			recorder.completed( result, begin != 0 ? System.nanoTime() - begin : -1 );
+		} );
+	}
+
+	/**
+	 * Records the opening of a connection.
+	 * 
+	 * @param destination
+	 *        The Jetty destination
+	 * @param nanos
+	 *        The time to open the connection in nanoseconds
+	 * @param failure
+	 *        The failure or null
+	 */
+	public void connected( HttpDestination destination, long nanos, Throwable failure )
+	{
+		final Recorder recorder = getRecorder( destination.getScheme(), destination.getHost(), destination.getPort() );
+		if( failure == null )
+		{
+			recorder.connects.increment();
+			recorder.connectTime.record( nanos );
+		}
+		else
+			recorder.connectFailures.increment();
+	}
+
+	/**
+	 * Records a TLS handshake.
+	 * 
+	 * @param destination
+	 *        The Jetty destination
+	 * @param nanos
+	 *        The handshake time in nanoseconds
+	 * @param failure
+	 *        The failure or null
+	 */
+	public void handshaken( HttpDestination destination, long nanos, Throwable failure )
+	{
+		final Recorder recorder = getRecorder( destination.getScheme(), destination.getHost(), destination.getPort() );
+		if( failure == null )
+		{
+			recorder.tlsHandshakes.increment();
+			recorder.tlsHandshakeTime.record( nanos );
+		}
+		else
+			recorder.tlsFailures.increment();
+	}
+
+	/**
+	 * Snapshots of the metrics of all destinations, both those with recorded
+	 * metrics and those known to the Jetty clients.
+	 * 
+	 * @return The destination metrics.
+	 */
+	public List<DestinationMetrics> getDestinations()
+	{
+		final Map<String, HttpDestination> httpDestinations = new ConcurrentHashMap<String, HttpDestination>();
+		final Map<String, Integer> maxQueuedRequests = new ConcurrentHashMap<String, Integer>();
+		for( HttpClient httpClient : httpClients.get() )
+		{
+			for( Destination destination : httpClient.getDestinations() )
+			{
+				if( destination instanceof HttpDestination )
+				{
+					final String key = key( destination.getScheme(), destination.getHost(), destination.getPort() );
+					httpDestinations.put( key, (HttpDestination) destination );
+					maxQueuedRequests.put( key, httpClient.getMaxRequestsQueuedPerDestination() );
+					getRecorder( destination.getScheme(), destination.getHost(), destination.getPort() );
+				}
+			}
+		}
+
+		final List<DestinationMetrics> destinations = new ArrayList<DestinationMetrics>();
+		for( Map.Entry<String, Recorder> entry : recorders.entrySet() )
+		{
+			final String key = entry.getKey();
+			final Recorder recorder = entry.getValue();
+			final HttpDestination httpDestination = httpDestinations.get( key );
+
+			int active = 0, idle = 0, pending = 0, max = 0, queued = 0;
+			if( httpDestination != null )
+			{
+				queued = httpDestination.getQueuedRequestCount();
+				final ConnectionPool connectionPool = httpDestination.getConnectionPool();
+				if( connectionPool instanceof AbstractConnectionPool )
+				{
+					final AbstractConnectionPool abstractConnectionPool = (AbstractConnectionPool) connectionPool;
+					active = abstractConnectionPool.getActiveConnectionCount();
+					idle = abstractConnectionPool.getIdleConnectionCount();
+					pending = abstractConnectionPool.getPendingConnectionCount();
+					max = abstractConnectionPool.getMaxConnectionCount();
+				}
+			}
+			final Integer maxQueued = maxQueuedRequests.get( key );
+
+			destinations.add( new DestinationMetrics( key, recorder.requests.sum(), recorder.latency.getPercentile( 50 ), recorder.latency.getPercentile( 95 ), recorder.latency.getPercentile( 99 ), recorder.connects.sum(), recorder.connectTime.getPercentile( 50 ), recorder.connectTime.getPercentile( 99 ), recorder.tlsHandshakes.sum(), recorder.tlsHandshakeTime.getPercentile( 50 ), recorder.tlsHandshakeTime.getPercentile( 99 ), active, idle, pending, max, queued, maxQueued != null ? maxQueued : 0, recorder.timeouts.sum(), recorder.aborts.sum(), recorder.rejections.sum(), recorder.ioFailures.sum(), recorder.otherFailures.sum(), recorder.connectFailures.sum(), recorder.tlsFailures.sum() ) );
+		}
+		return destinations;
+	}
+
+	/**
+	 * Clears all recorded metrics.
+	 */
+	public void clear()
+	{
+		recorders.clear();
+	}
+
+	// //////////////////////////////////////////////////////////////////////////
+	// Private
+
+	/**
+	 * The metrics of a destination.
+	 */
+	private class Recorder
+	{
+		/**
+		 * Records a completed request.
+		 * 
+		 * @param result
+		 *        The result
+		 * @param nanos
+		 *        The latency in nanoseconds or -1 if the request did not begin
+		 */
+		private void completed( Result result, long nanos )
+		{
+			final Throwable failure = result.getFailure();
+			if( failure == null )
+			{
+				requests.increment();
+				if( nanos >= 0 )
+					latency.record( nanos );
+			}
+			else if( failure instanceof TimeoutException )
+				timeouts.increment();
+			else if( failure instanceof CancellationException )
+				aborts.increment();
+			else if( failure instanceof RejectedExecutionException )
+				rejections.increment();
+			else if( failure instanceof IOException )
+				ioFailures.increment();
+			else
+				otherFailures.increment();
+		}
+
+		/** The request latencies. */
+		private final LatencyHistogram latency = new LatencyHistogram( window );
+
+		/** The connect times. */
+		private final LatencyHistogram connectTime = new LatencyHistogram( window );
+
+		/** The TLS handshake times. */
+		private final LatencyHistogram tlsHandshakeTime = new LatencyHistogram( window );
+
+		/** The number of completed requests. */
+		private final LongAdder requests = new LongAdder();
+
+		/** The number of connections opened. */
+		private final LongAdder connects = new LongAdder();
+
+		/** The number of TLS handshakes. */
+		private final LongAdder tlsHandshakes = new LongAdder();
+
+		/** The number of timeouts. */
+		private final LongAdder timeouts = new LongAdder();
+
+		/** The number of aborts. */
+		private final LongAdder aborts = new LongAdder();
+
+		/** The number of rejections. */
+		private final LongAdder rejections = new LongAdder();
+
+		/** The number of I/O failures. */
+		private final LongAdder ioFailures = new LongAdder();
+
+		/** The number of other failures. */
+		private final LongAdder otherFailures = new LongAdder();
+
+		/** The number of connect failures. */
+		private final LongAdder connectFailures = new LongAdder();
+
+		/** The number of TLS failures. */
+		private final LongAdder tlsFailures = new LongAdder();
+	}
+
+	/**
+	 * The destination key.
+	 * 
+	 * @param scheme
+	 *        The scheme
+	 * @param host
+	 *        The host
+	 * @param port
+	 *        The port
+	 * @return The key
+	 */
+	private static String key( String scheme, String host, int port )
+	{
+		return scheme + "://" + host + ":" + HttpClient.normalizePort( scheme, port );
+	}
+
+	/**
+	 * The recorder of a destination, creating it if necessary.
+	 * 
+	 * @param scheme
+	 *        The scheme
+	 * @param host
+	 *        The host
+	 * @param port
+	 *        The port
+	 * @return The recorder
+	 */
+	private Recorder getRecorder( String scheme, String host, int port )
+	{
+		return recorders.computeIfAbsent( key( scheme, host, port ), k -> new Recorder() );
+	}
+
+	/** Supplies the Jetty HTTP clients. */
+	private final Supplier<Collection<HttpClient>> httpClients;
+
+	/** The number of samples after which histogram counts are halved. */
+	private final long window;
+
+	/** The recorders by destination. */
+	private final Map<String, Recorder> recorders = new ConcurrentHashMap<String, Recorder>();
+}
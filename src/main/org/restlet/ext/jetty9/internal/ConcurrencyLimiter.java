@@ -0,0 +1,168 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adaptive limit of the concurrent requests to a destination, using a
+ * gradient of the observed round-trip time.
+ * <p>
+ * The limit grows while the short-term RTT stays close to the long-term RTT,
+ * and shrinks in proportion when the RTT rises (that is, when requests start
+ * queueing at the destination). Dropped requests (failures and "503 Service
+ * Unavailable") shrink it multiplicatively. Requests beyond the limit are
+ * rejected rather than queued.
+ * 
+ * @author Tal Liron
+ */
+public class ConcurrencyLimiter
+{
+	/**
+	 * Constructor.
+	 * 
+	 * @param initialLimit
+	 *        The initial limit
+	 * @param minLimit
+	 *        The min limit
+	 * @param maxLimit
+	 *        The max limit
+	 */
+	public ConcurrencyLimiter( int initialLimit, int minLimit, int maxLimit )
+	{
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		limit = Math.max( minLimit, Math.min( maxLimit, initialLimit ) );
+	}
+
+	/**
+	 * The current limit.
+	 * 
+	 * @return The current limit.
+	 */
+	public int getLimit()
+	{
+		return (int) limit;
+	}
+
+	/**
+	 * The number of requests in flight.
+	 * 
+	 * @return The number of requests in flight.
+	 */
+	public int getInFlight()
+	{
+		return inFlight.get();
+	}
+
+	/**
+	 * Acquires a permit for a request.
+	 * 
+	 * @return True if acquired, false if the limit is reached
+	 */
+	public boolean tryAcquire()
+	{
+		while( true )
+		{
+			final int current = inFlight.get();
+			if( current >= (int) limit )
+				return false;
+			if( inFlight.compareAndSet( current, current + 1 ) )
+				return true;
+		}
+	}
+
+	/**
+	 * Returns a permit without a sample, for a request that was not sent.
+	 */
+	public void cancel()
+	{
+		inFlight.decrementAndGet();
+	}
+
+	/**
+	 * Returns a permit and updates the limit.
+	 * 
+	 * @param rtt
+	 *        The round-trip time of the request in nanoseconds
+	 * @param dropped
+	 *        Whether the request was dropped
+	 */
+	public void release( long rtt, boolean dropped )
+	{
+		final int current = inFlight.getAndDecrement();
+
+		synchronized( this )
+		{
+			if( dropped )
+			{
+				limit = Math.max( minLimit, limit * BACKOFF_RATIO );
+				return;
+			}
+
+			if( rtt <= 0 )
+				return;
+
+			// Long-term RTT; it recovers quickly when the short-term RTT drops
+			// well below it
+			if( longRtt == 0 )
+				longRtt = rtt;
+			else
+			{
+				longRtt += ( rtt - longRtt ) / LONG_WINDOW;
+				if( longRtt > 2 * rtt )
+					longRtt *= 0.95;
+			}
+
+			final double gradient = Math.max( 0.5, Math.min( 1.0, TOLERANCE * longRtt / rtt ) );
+			double newLimit = limit * gradient + Math.sqrt( limit );
+
+			// Do not grow the limit when it is not being used
+			if( ( newLimit > limit ) && ( current < limit / 2 ) )
+				return;
+
+			newLimit = limit * ( 1 - SMOOTHING ) + newLimit * SMOOTHING;
+			limit = Math.max( minLimit, Math.min( maxLimit, newLimit ) );
+		}
+	}
+
+	// //////////////////////////////////////////////////////////////////////////
+	// Private
+
+	/** The ratio by which dropped requests shrink the limit. */
+	private static final double BACKOFF_RATIO = 0.9;
+
+	/** The number of samples averaged into the long-term RTT. */
+	private static final double LONG_WINDOW = 600;
+
+	/** How much the RTT can rise before the limit shrinks. */
+	private static final double TOLERANCE = 1.5;
+
+	/** The weight of a new limit. */
+	private static final double SMOOTHING = 0.2;
+
+	/** The min limit. */
+	private final int minLimit;
+
+	/** The max limit. */
+	private final int maxLimit;
+
+	/** The number of requests in flight. */
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	/** The current limit. */
+	private volatile double limit;
+
+	/** The long-term RTT in nanoseconds. */
+	private double longRtt;
+}
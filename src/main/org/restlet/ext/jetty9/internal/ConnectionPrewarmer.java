@@ -0,0 +1,224 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import org.eclipse.jetty.client.AbstractConnectionPool;
+import org.eclipse.jetty.client.ConnectionPool;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpDestination;
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.client.api.Destination;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.restlet.ext.jetty9.JettyHttpClientHelper;
+
+/**
+ * Keeps a minimum number of idle connections open to known destinations, so
+ * that requests do not pay for TCP and TLS handshakes after startup or after
+ * idle connections were closed.
+ * <p>
+ * Connections are opened when started, and topped up periodically. A
+ * destination whose host is a logical service is pre-warmed for each of its
+ * endpoints. With the HTTP/2 transports, idle connections are also pinged,
+ * keeping them alive through intermediaries and detecting broken connections
+ * before requests are sent over them.
+ * 
+ * @author Tal Liron
+ */
+public class ConnectionPrewarmer implements Runnable
+{
+	/**
+	 * Constructor.
+	 * 
+	 * @param helper
+	 *        The client helper
+	 * @param destinations
+	 *        The min number of idle connections by destination
+	 *        ("scheme://host:port")
+	 * @param interval
+	 *        The interval in milliseconds at which connections are topped up
+	 */
+	public ConnectionPrewarmer( JettyHttpClientHelper helper, Map<String, Integer> destinations, long interval )
+	{
+		this.helper = helper;
+		this.destinations = destinations;
+		this.interval = interval;
+		ping = !"http1".equalsIgnoreCase( helper.getTransport() );
+	}
+
+	/**
+	 * Opens the connections and starts topping them up. The Jetty HTTP clients
+	 * must be started.
+	 */
+	public void start()
+	{
+		run();
+	}
+
+	/**
+	 * Stops topping up connections.
+	 */
+	public synchronized void stop()
+	{
+		stopped = true;
+		if( task != null )
+		{
+			task.cancel();
+			task = null;
+		}
+	}
+
+	//
+	// Runnable
+	//
+
+	public void run()
+	{
+		if( stopped )
+			return;
+
+		for( Map.Entry<String, Integer> entry : destinations.entrySet() )
+		{
+			try
+			{
+				prewarm( entry.getKey(), entry.getValue() );
+			}
+			catch( Exception x )
+			{
+				helper.getLogger().log( Level.WARNING, "Could not pre-warm connections to " + entry.getKey(), x );
+			}
+		}
+
+		synchronized( this )
+		{
+			if( !stopped )
+				task = helper.getHttpClient().getScheduler().schedule( this, interval, TimeUnit.MILLISECONDS );
+		}
+	}
+
+	// //////////////////////////////////////////////////////////////////////////
+	// Private
+
+	/**
+	 * Pre-warms a destination, or each endpoint if its host is a logical
+	 * service.
+	 * 
+	 * @param destination
+	 *        The destination ("scheme://host:port")
+	 * @param minIdle
+	 *        The min number of idle connections
+	 */
+	private void prewarm( String destination, int minIdle )
+	{
+		final URI uri = URI.create( destination );
+		final String scheme = uri.getScheme();
+		final int port = HttpClient.normalizePort( scheme, uri.getPort() );
+		final LoadBalancer loadBalancer = helper.getLoadBalancer( uri.getHost() );
+		if( loadBalancer == null )
+			topUp( scheme, uri.getHost(), port, minIdle );
+		else
+			for( LoadBalancer.Endpoint endpoint : loadBalancer.getEndpoints() )
+				topUp( scheme, endpoint.getHost(), endpoint.getPort() != -1 ? endpoint.getPort() : port, minIdle );
+	}
+
+	/**
+	 * Pings the idle connections to a destination and opens connections until
+	 * there are enough idle ones.
+	 * 
+	 * @param scheme
+	 *        The scheme
+	 * @param host
+	 *        The host
+	 * @param port
+	 *        The port
+	 * @param minIdle
+	 *        The min number of idle connections
+	 */
+	private void topUp( String scheme, String host, int port, int minIdle )
+	{
+		final Destination destination = helper.getHttpClient( host ).getDestination( scheme, host, port );
+		if( !( destination instanceof HttpDestination ) )
+			return;
+		final ConnectionPool connectionPool = ( (HttpDestination) destination ).getConnectionPool();
+		if( !( connectionPool instanceof AbstractConnectionPool ) )
+			return;
+		final AbstractConnectionPool abstractConnectionPool = (AbstractConnectionPool) connectionPool;
+
+		if( ping && ( abstractConnectionPool.getIdleConnectionCount() > 0 ) )
+			for( Connection connection : getIdleConnections( abstractConnectionPool ) )
+				Http2ClientSupport.ping( connection );
+
+		final int missing = minIdle - abstractConnectionPool.getIdleConnectionCount() - abstractConnectionPool.getPendingConnectionCount();
+		if( missing > 0 )
+		{
+			abstractConnectionPool.preCreateConnections( missing ).whenComplete( ( v, x ) ->
+			{
+				if( x != null )
+					helper.getLogger().log( Level.FINE, "Could not pre-warm connections to " + destination, x );
+			} );
+		}
+	}
+
+	/**
+	 * The idle connections of a pool.
+	 * <p>
+	 * Jetty 9.4 deprecates {@link AbstractConnectionPool#getIdleConnections()}
+	 * without offering another way to enumerate idle connections. It returns
+	 * a snapshot copy of the pool's idle entries, which is safe to iterate
+	 * while the pool changes.
+	 * 
+	 * @param connectionPool
+	 *        The connection pool
+	 * @return The idle connections
+	 */
+	@SuppressWarnings("deprecation")
+	private static Collection<Connection> getIdleConnections( AbstractConnectionPool connectionPool )
+	{
+		return connectionPool.getIdleConnections();
+	}
+
+	/**
+	 * The client helper.
+	 */
+	private final JettyHttpClientHelper helper;
+
+	/**
+	 * The min number of idle connections by destination.
+	 */
+	private final Map<String, Integer> destinations;
+
+	/**
+	 * The interval in milliseconds at which connections are topped up.
+	 */
+	private final long interval;
+
+	/**
+	 * Whether to ping idle HTTP/2 connections.
+	 */
+	private final boolean ping;
+
+	/**
+	 * Whether stopped.
+	 */
+	private volatile boolean stopped;
+
+	/**
+	 * The scheduled top-up.
+	 */
+	private Scheduler.Task task;
+}
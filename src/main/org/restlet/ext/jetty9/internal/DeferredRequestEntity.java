@@ -0,0 +1,201 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.jetty.client.util.DeferredContentProvider;
+import org.eclipse.jetty.util.FutureCallback;
+
+/**
+ * Blocking writer for a request entity that is sent while it is written.
+ * <p>
+ * Writes are aggregated into a single buffer, which is offered to Jetty when
+ * full; the writer then waits until Jetty has sent it before reusing it. Memory
+ * is thus bounded by the buffer size, and a slow server slows the writer down.
+ * 
+ * @author Tal Liron
+ */
+public class DeferredRequestEntity extends OutputStream implements WritableByteChannel
+{
+	/**
+	 * Constructor.
+	 * 
+	 * @param contentProvider
+	 *        The deferred content provider
+	 * @param bufferSize
+	 *        The buffer size
+	 * @param timeout
+	 *        The max time in milliseconds to wait for each buffer to be sent,
+	 *        or 0 to wait indefinitely
+	 */
+	public DeferredRequestEntity( DeferredContentProvider contentProvider, int bufferSize, long timeout )
+	{
+		this.contentProvider = contentProvider;
+		buffer = ByteBuffer.allocate( bufferSize );
+		this.timeout = timeout;
+	}
+
+	//
+	// OutputStream
+	//
+
+	@Override
+	public void write( int b ) throws IOException
+	{
+		ensureOpen();
+		if( !buffer.hasRemaining() )
+			flush();
+		buffer.put( (byte) b );
+	}
+
+	@Override
+	public void write( byte[] b, int off, int len ) throws IOException
+	{
+		write( ByteBuffer.wrap( b, off, len ) );
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		ensureOpen();
+		if( buffer.position() > 0 )
+		{
+			buffer.flip();
+			send( buffer );
+			buffer.clear();
+		}
+	}
+
+	//
+	// WritableByteChannel
+	//
+
+	public boolean isOpen()
+	{
+		return !closed;
+	}
+
+	public int write( ByteBuffer src ) throws IOException
+	{
+		ensureOpen();
+		final int length = src.remaining();
+		if( length >= buffer.capacity() )
+		{
+			// Large writes are sent directly, without copying
+			flush();
+			send( src.slice() );
+			src.position( src.limit() );
+		}
+		else
+		{
+			while( src.hasRemaining() )
+			{
+				if( !buffer.hasRemaining() )
+					flush();
+				final ByteBuffer chunk = src.slice();
+				if( chunk.remaining() > buffer.remaining() )
+					chunk.limit( buffer.remaining() );
+				buffer.put( chunk );
+				src.position( src.position() + chunk.position() );
+			}
+		}
+		return length;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if( closed )
+			return;
+		try
+		{
+			flush();
+		}
+		finally
+		{
+			closed = true;
+			contentProvider.close();
+		}
+	}
+
+	// //////////////////////////////////////////////////////////////////////////
+	// Private
+
+	/**
+	 * Offers a buffer to Jetty and waits until it is sent.
+	 * 
+	 * @param byteBuffer
+	 *        The buffer
+	 * @throws IOException
+	 *         In case of an I/O error
+	 */
+	private void send( ByteBuffer byteBuffer ) throws IOException
+	{
+		final FutureCallback callback = new FutureCallback();
+		if( !contentProvider.offer( byteBuffer, callback ) )
+			throw new ClosedChannelException();
+		try
+		{
+			if( timeout > 0 )
+				callback.get( timeout, TimeUnit.MILLISECONDS );
+			else
+				callback.get();
+		}
+		catch( ExecutionException e )
+		{
+			FutureCallback.rethrow( e );
+		}
+		catch( TimeoutException e )
+		{
+			throw new InterruptedIOException( "Timed out sending the request entity" );
+		}
+		catch( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException( "Interrupted while sending the request entity" );
+		}
+	}
+
+	/**
+	 * Throws an exception if closed.
+	 * 
+	 * @throws ClosedChannelException
+	 *         If closed
+	 */
+	private void ensureOpen() throws ClosedChannelException
+	{
+		if( closed )
+			throw new ClosedChannelException();
+	}
+
+	/** The deferred content provider. */
+	private final DeferredContentProvider contentProvider;
+
+	/** The aggregation buffer. */
+	private final ByteBuffer buffer;
+
+	/** The max time in milliseconds to wait for each buffer to be sent. */
+	private final long timeout;
+
+	/** Whether the entity is closed. */
+	private volatile boolean closed;
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import org.eclipse.jetty.client.HttpClientTransport;
+import org.eclipse.jetty.client.MultiplexConnectionPool;
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
+import org.eclipse.jetty.http2.client.http.HttpConnectionOverHTTP2;
+import org.eclipse.jetty.http2.frames.PingFrame;
+import org.eclipse.jetty.util.Callback;
+import org.restlet.ext.jetty9.JettyHttpClientHelper;
+
+/**
+ * Creates Jetty HTTP/2 client transports from the parameters of a Jetty client
+ * helper.
+ * <p>
+ * This class is only loaded if an HTTP/2 transport is configured, so that the
+ * Jetty HTTP/2 libraries remain an optional dependency.
+ * 
+ * @author Tal Liron
+ */
+public class Http2ClientSupport
+{
+	/**
+	 * Creates an HTTP/2 client transport. Requests are multiplexed over a small
+	 * number of connections per destination.
+	 * 
+	 * @param helper
+	 *        The client helper
+	 * @param priorKnowledge
+	 *        If true, HTTP/2 is used without negotiation (h2c for cleartext);
+	 *        otherwise it is negotiated via ALPN for TLS connections
+	 * @return An HTTP/2 client transport
+	 */
+	public static HttpClientTransport createTransport( JettyHttpClientHelper helper, boolean priorKnowledge )
+	{
+		final HTTP2Client http2Client = new HTTP2Client();
+		final HttpClientTransportOverHTTP2 transport = new HttpClientTransportOverHTTP2( http2Client );
+		transport.setUseALPN( !priorKnowledge );
+
+		final int maxConnections = helper.getHttp2MaxConnectionsPerDestination();
+		final int maxConcurrentStreams = helper.getHttp2MaxConcurrentStreams();
+		transport.setConnectionPoolFactory( destination -> new MultiplexConnectionPool( destination, maxConnections, destination, maxConcurrentStreams ) );
+
+		return transport;
+	}
+
+	/**
+	 * Sends a PING frame over an HTTP/2 connection, to keep it alive through
+	 * intermediaries that drop idle connections, and to detect broken
+	 * connections before a request is sent over them.
+	 * 
+	 * @param connection
+	 *        The connection
+	 * @return True if the connection is an HTTP/2 connection
+	 */
+	public static boolean ping( Connection connection )
+	{
+		if( !( connection instanceof HttpConnectionOverHTTP2 ) )
+			return false;
+		( (HttpConnectionOverHTTP2) connection ).getSession().ping( new PingFrame( System.nanoTime(), false ), Callback.NOOP );
+		return true;
+	}
+}
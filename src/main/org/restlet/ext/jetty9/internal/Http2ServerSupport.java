@@ -0,0 +1,75 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import org.eclipse.jetty.http2.BufferingFlowControlStrategy;
+import org.eclipse.jetty.http2.FlowControlStrategy;
+import org.eclipse.jetty.http2.SimpleFlowControlStrategy;
+import org.eclipse.jetty.http2.server.AbstractHTTP2ServerConnectionFactory;
+import org.eclipse.jetty.server.ConnectionFactory;
+import org.restlet.ext.jetty9.JettyServerHelper;
+
+/**
+ * Applies the HTTP/2 parameters of a Jetty server helper to Jetty's HTTP/2
+ * connection factories.
+ * <p>
+ * This class is only loaded if HTTP/2 is enabled, so that the Jetty HTTP/2
+ * libraries remain an optional dependency.
+ * 
+ * @author Tal Liron
+ */
+public class Http2ServerSupport
+{
+	/**
+	 * Configures an HTTP/2 or HTTP/2 cleartext connection factory.
+	 * 
+	 * @param connectionFactory
+	 *        The connection factory (must be an
+	 *        {@link AbstractHTTP2ServerConnectionFactory})
+	 * @param helper
+	 *        The server helper
+	 */
+	@SuppressWarnings("deprecation")
+	public static void configure( ConnectionFactory connectionFactory, JettyServerHelper helper )
+	{
+		final AbstractHTTP2ServerConnectionFactory http2ConnectionFactory = (AbstractHTTP2ServerConnectionFactory) connectionFactory;
+		http2ConnectionFactory.setMaxConcurrentStreams( helper.getHttp2MaxConcurrentStreams() );
+		http2ConnectionFactory.setInitialSessionRecvWindow( helper.getHttp2InitialSessionRecvWindow() );
+		http2ConnectionFactory.setInitialStreamRecvWindow( helper.getHttp2InitialStreamRecvWindow() );
+		// The replacement table capacity setters only exist in late Jetty 9.4
+		http2ConnectionFactory.setMaxDynamicTableSize( helper.getHttp2MaxDynamicTableSize() );
+		http2ConnectionFactory.setMaxHeaderBlockFragment( helper.getHttp2MaxHeaderBlockFragment() );
+		http2ConnectionFactory.setFlowControlStrategyFactory( createFlowControlStrategyFactory( helper ) );
+	}
+
+	/**
+	 * Creates a flow control strategy factory.
+	 * 
+	 * @param helper
+	 *        The server helper
+	 * @return A flow control strategy factory
+	 */
+	private static FlowControlStrategy.Factory createFlowControlStrategyFactory( JettyServerHelper helper )
+	{
+		final String flowControlStrategy = helper.getHttp2FlowControlStrategy();
+		if( "simple".equalsIgnoreCase( flowControlStrategy ) )
+			return () -> new SimpleFlowControlStrategy();
+		else if( "buffering".equalsIgnoreCase( flowControlStrategy ) )
+		{
+			final float bufferRatio = helper.getHttp2FlowControlBufferRatio();
+			return () -> new BufferingFlowControlStrategy( bufferRatio );
+		}
+		else
+			throw new IllegalArgumentException( "Unsupported http2.flowControlStrategy: " + flowControlStrategy );
+	}
+}
@@ -0,0 +1,804 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.restlet.data.Header;
+import org.restlet.util.Series;
+
+/**
+ * Private HTTP cache for client responses, following RFC 7234.
+ * <p>
+ * Entries are kept in a size-bounded, least-recently-used memory tier. If a
+ * disk directory is configured, entries evicted from memory are spilled to a
+ * second, size-bounded tier on disk, from which they are read back for each
+ * hit.
+ * <p>
+ * Freshness is computed from the "max-age" directive, the "Expires" header, or
+ * heuristically from "Last-Modified". Stale entries with validators are
+ * revalidated with conditional requests, and the "stale-while-revalidate"
+ * extension (RFC 5861) is supported.
+ * 
+ * @author Tal Liron
+ */
+public class HttpCache
+{
+	/**
+	 * Constructor.
+	 * 
+	 * @param memorySize
+	 *        The max size in bytes of the memory tier
+	 * @param diskDirectory
+	 *        The parent directory of the disk tier or null to disable it; the
+	 *        tier is kept in a new private subdirectory, so that files of
+	 *        others are never touched
+	 * @param diskSize
+	 *        The max size in bytes of the disk tier
+	 * @param maxEntrySize
+	 *        The max content size in bytes of cached responses
+	 * @param logger
+	 *        The logger
+	 */
+	public HttpCache( long memorySize, File diskDirectory, long diskSize, int maxEntrySize, Logger logger )
+	{
+		this.memorySize = memorySize;
+		this.diskSize = diskSize;
+		this.maxEntrySize = maxEntrySize;
+		this.logger = logger;
+		this.diskDirectory = createDiskDirectory( diskDirectory );
+	}
+
+	/**
+	 * Looks up a response.
+	 * 
+	 * @param key
+	 *        The key (usually the URI)
+	 * @param requestHeaders
+	 *        The request headers, matched against the response's "Vary"
+	 * @return The entry or null if not cached
+	 */
+	public synchronized Entry get( String key, Series<Header> requestHeaders )
+	{
+		final Entry entry = entries.get( key );
+		if( ( entry == null ) || !entry.matches( requestHeaders ) )
+			return null;
+		return entry;
+	}
+
+	/**
+	 * Stores a response, if it is cacheable.
+	 * 
+	 * @param key
+	 *        The key (usually the URI)
+	 * @param requestHeaders
+	 *        The request headers
+	 * @param response
+	 *        The response
+	 * @param requestTime
+	 *        When the request was sent
+	 * @param responseTime
+	 *        When the response was received
+	 * @return The entry or null if the response is not cacheable
+	 */
+	public Entry store( String key, Series<Header> requestHeaders, BufferedResponse response, long requestTime, long responseTime )
+	{
+		if( !isCacheable( response ) )
+		{
+			invalidate( key );
+			return null;
+		}
+
+		final Entry entry = new Entry( response, requestHeaders, requestTime, responseTime );
+		put( key, entry );
+		return entry;
+	}
+
+	/**
+	 * Whether a response may be stored, judging by its status and headers
+	 * only: its content must also fit within the max entry size.
+	 * 
+	 * @param status
+	 *        The status
+	 * @param headers
+	 *        The headers
+	 * @return True if the response may be stored
+	 */
+	public boolean isStorable( int status, HttpFields headers )
+	{
+		if( !CACHEABLE_STATUSES.contains( status ) )
+			return false;
+		if( headers.getLongField( HttpHeader.CONTENT_LENGTH.asString() ) > maxEntrySize )
+			return false;
+
+		final Map<String, String> cacheControl = parseCacheControl( headers );
+		if( cacheControl.containsKey( "no-store" ) )
+			return false;
+		if( headers.getCSV( HttpHeader.VARY, false ).contains( "*" ) )
+			return false;
+
+		// Without explicit freshness or validators, the entry would be useless
+		return cacheControl.containsKey( "max-age" ) || ( headers.get( HttpHeader.EXPIRES ) != null ) || ( headers.get( HttpHeader.ETAG ) != null ) || ( headers.get( HttpHeader.LAST_MODIFIED ) != null );
+	}
+
+	/**
+	 * The max content size in bytes of cached responses.
+	 * 
+	 * @return The max entry size
+	 */
+	public int getMaxEntrySize()
+	{
+		return maxEntrySize;
+	}
+
+	/**
+	 * Updates a stored response with a "304 Not Modified" response.
+	 * 
+	 * @param key
+	 *        The key (usually the URI)
+	 * @param entry
+	 *        The stored entry
+	 * @param notModified
+	 *        The 304 response
+	 * @param requestTime
+	 *        When the request was sent
+	 * @param responseTime
+	 *        When the response was received
+	 * @return The updated entry or null if the stored content is no longer
+	 *         available
+	 */
+	public Entry revalidated( String key, Entry entry, BufferedResponse notModified, long requestTime, long responseTime )
+	{
+		final byte[] content = entry.getContent();
+		if( content == null )
+		{
+			invalidate( key );
+			return null;
+		}
+
+		// The 304's fields replace the stored fields of the same names, keeping
+		// all the values of multi-valued fields
+		final HttpFields headers = new HttpFields( entry.response.getHeaders() );
+		for( HttpField field : notModified.getHeaders() )
+			if( field.getHeader() != HttpHeader.CONTENT_LENGTH )
+				headers.remove( field.getName() );
+		for( HttpField field : notModified.getHeaders() )
+			if( field.getHeader() != HttpHeader.CONTENT_LENGTH )
+				headers.add( field );
+
+		final BufferedResponse response = new BufferedResponse( entry.response.getStatus(), entry.response.getReason(), headers, content );
+		final Entry updated = new Entry( response, entry.vary, requestTime, responseTime );
+		if( isCacheable( response ) )
+			put( key, updated );
+		else
+			invalidate( key );
+		return updated;
+	}
+
+	/**
+	 * Removes a response, for example after an unsafe request to its URI.
+	 * 
+	 * @param key
+	 *        The key (usually the URI)
+	 */
+	public synchronized void invalidate( String key )
+	{
+		final Entry entry = entries.remove( key );
+		if( entry != null )
+			discard( entry );
+	}
+
+	/**
+	 * Marks a background revalidation as started.
+	 * 
+	 * @param key
+	 *        The key (usually the URI)
+	 * @return False if a revalidation is already in progress for the key
+	 */
+	public boolean startRevalidation( String key )
+	{
+		return revalidating.add( key );
+	}
+
+	/**
+	 * Marks a background revalidation as ended.
+	 * 
+	 * @param key
+	 *        The key (usually the URI)
+	 */
+	public void endRevalidation( String key )
+	{
+		revalidating.remove( key );
+	}
+
+	/**
+	 * Removes all responses.
+	 */
+	public synchronized void clear()
+	{
+		for( Entry entry : entries.values() )
+			discard( entry );
+		entries.clear();
+	}
+
+	/**
+	 * Removes all responses and deletes the private disk directory. The cache
+	 * must not be used afterwards.
+	 */
+	public synchronized void close()
+	{
+		clear();
+		if( diskDirectory != null )
+		{
+			// Files that could not be deleted while they were open
+			final File[] files = diskDirectory.listFiles();
+			if( files != null )
+				for( File file : files )
+					file.delete();
+			diskDirectory.delete();
+		}
+	}
+
+	/**
+	 * Parses comma-separated "Cache-Control" (or "Pragma") directives.
+	 * 
+	 * @param value
+	 *        The directives or null
+	 * @return The directives (lowercase) and their values (or null)
+	 */
+	public static Map<String, String> parseDirectives( String value )
+	{
+		final Map<String, String> directives = new HashMap<String, String>();
+		if( value != null )
+			for( String directive : value.split( "," ) )
+				parseDirective( directive, directives );
+		return directives;
+	}
+
+	/**
+	 * Parses the value of a directive as a number of seconds.
+	 * 
+	 * @param value
+	 *        The value or null
+	 * @return The number of seconds or -1 if missing or invalid
+	 */
+	public static long parseSeconds( String value )
+	{
+		return getLong( value, -1 );
+	}
+
+	/**
+	 * A cached response.
+	 */
+	public class Entry
+	{
+		/**
+		 * Whether the response is fresh.
+		 * 
+		 * @param now
+		 *        The current time
+		 * @return True if fresh
+		 */
+		public boolean isFresh( long now )
+		{
+			return now < freshUntil;
+		}
+
+		/**
+		 * Whether the response is stale but may still be served while it is
+		 * revalidated in the background.
+		 * 
+		 * @param now
+		 *        The current time
+		 * @return True if it may be served stale
+		 */
+		public boolean isStaleWhileRevalidate( long now )
+		{
+			return now < staleUntil;
+		}
+
+		/**
+		 * The "ETag" validator.
+		 * 
+		 * @return The entity tag or null.
+		 */
+		public String getETag()
+		{
+			return response.getHeaders().get( HttpHeader.ETAG );
+		}
+
+		/**
+		 * The "Last-Modified" validator.
+		 * 
+		 * @return The last modified date or null.
+		 */
+		public String getLastModified()
+		{
+			return response.getHeaders().get( HttpHeader.LAST_MODIFIED );
+		}
+
+		/**
+		 * Creates a response to serve, with an "Age" header.
+		 * 
+		 * @param now
+		 *        The current time
+		 * @return The response
+		 * @throws IOException
+		 *         If the content could not be read from disk
+		 */
+		public BufferedResponse serve( long now ) throws IOException
+		{
+			final byte[] content = getContent();
+			if( content == null )
+				throw new IOException( "Cached content is no longer available" );
+			final HttpFields headers = new HttpFields( response.getHeaders() );
+			headers.putLongField( HttpHeader.AGE, Math.max( 0, initialAge + ( now - responseTime ) / 1000 ) );
+			return new BufferedResponse( response.getStatus(), response.getReason(), headers, content );
+		}
+
+		//
+		// Private
+		//
+
+		/**
+		 * Constructor.
+		 * 
+		 * @param response
+		 *        The response
+		 * @param requestHeaders
+		 *        The request headers
+		 * @param requestTime
+		 *        When the request was sent
+		 * @param responseTime
+		 *        When the response was received
+		 */
+		private Entry( BufferedResponse response, Series<Header> requestHeaders, long requestTime, long responseTime )
+		{
+			this( response, selectVary( response, requestHeaders ), requestTime, responseTime );
+		}
+
+		/**
+		 * Constructor.
+		 * 
+		 * @param response
+		 *        The response
+		 * @param vary
+		 *        The selecting request header values
+		 * @param requestTime
+		 *        When the request was sent
+		 * @param responseTime
+		 *        When the response was received
+		 */
+		private Entry( BufferedResponse response, Map<String, String> vary, long requestTime, long responseTime )
+		{
+			this.response = response;
+			this.vary = vary;
+			this.responseTime = responseTime;
+			content = response.getContent();
+			size = content.length;
+
+			final HttpFields headers = response.getHeaders();
+			final Map<String, String> cacheControl = parseCacheControl( headers );
+
+			// RFC 7234, section 4.2.3
+			final long date = getDate( headers, HttpHeader.DATE.asString() );
+			final long apparentAge = date > 0 ? Math.max( 0, ( responseTime - date ) / 1000 ) : 0;
+			final long ageValue = Math.max( 0, getLong( headers.get( HttpHeader.AGE ), 0 ) );
+			initialAge = Math.max( apparentAge, ageValue ) + ( responseTime - requestTime ) / 1000;
+
+			// RFC 7234, section 4.2.1
+			long lifetime;
+			if( cacheControl.containsKey( "no-cache" ) )
+				lifetime = 0;
+			else if( cacheControl.containsKey( "max-age" ) )
+				lifetime = getLong( cacheControl.get( "max-age" ), 0 );
+			else
+			{
+				final long expires = getDate( headers, HttpHeader.EXPIRES.asString() );
+				if( expires != -1 )
+					lifetime = Math.max( 0, ( expires - ( date > 0 ? date : responseTime ) ) / 1000 );
+				else
+				{
+					// Heuristic freshness (section 4.2.2)
+					final long lastModified = getDate( headers, HttpHeader.LAST_MODIFIED.asString() );
+					if( lastModified > 0 )
+						lifetime = Math.min( HEURISTIC_MAX_LIFETIME, Math.max( 0, ( ( date > 0 ? date : responseTime ) - lastModified ) / 10000 ) );
+					else
+						lifetime = 0;
+				}
+			}
+
+			freshUntil = responseTime + ( lifetime - initialAge ) * 1000;
+
+			final boolean mustRevalidate = cacheControl.containsKey( "must-revalidate" ) || cacheControl.containsKey( "no-cache" );
+			final long staleWhileRevalidate = mustRevalidate ? 0 : getLong( cacheControl.get( "stale-while-revalidate" ), 0 );
+			staleUntil = freshUntil + staleWhileRevalidate * 1000;
+		}
+
+		/**
+		 * Whether the request headers select this response.
+		 * 
+		 * @param requestHeaders
+		 *        The request headers
+		 * @return True if selected
+		 */
+		private boolean matches( Series<Header> requestHeaders )
+		{
+			for( Map.Entry<String, String> entry : vary.entrySet() )
+			{
+				final String value = requestHeaders.getValues( entry.getKey() );
+				if( !entry.getValue().equals( value == null ? "" : value ) )
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * The content, read from the disk tier if necessary.
+		 * 
+		 * @return The content or null if it could not be read.
+		 */
+		private byte[] getContent()
+		{
+			final byte[] content = this.content;
+			if( content != null )
+				return content;
+
+			final File file = this.file;
+			if( file == null )
+				return null;
+			try
+			{
+				return Files.readAllBytes( file.toPath() );
+			}
+			catch( IOException x )
+			{
+				logger.log( Level.FINE, "Could not read cached content from " + file, x );
+				return null;
+			}
+		}
+
+		/** The response. */
+		private final BufferedResponse response;
+
+		/** The selecting request header values. */
+		private final Map<String, String> vary;
+
+		/** When the response was received. */
+		private final long responseTime;
+
+		/** The age in seconds when the response was received. */
+		private final long initialAge;
+
+		/** Until when the response is fresh. */
+		private final long freshUntil;
+
+		/** Until when the response may be served stale while revalidating. */
+		private final long staleUntil;
+
+		/** The content size. */
+		private final int size;
+
+		/** The content, or null if it is on disk. */
+		private volatile byte[] content;
+
+		/** The content file on disk, or null if it is in memory. */
+		private volatile File file;
+	}
+
+	// //////////////////////////////////////////////////////////////////////////
+	// Private
+
+	/** Statuses that are cacheable by default (RFC 7231, section 6.1). */
+	private static final Set<Integer> CACHEABLE_STATUSES = new HashSet<Integer>( Arrays.asList( 200, 203, 204, 300, 301, 404, 405, 410, 414, 501 ) );
+
+	/** The max heuristic freshness lifetime in seconds. */
+	private static final long HEURISTIC_MAX_LIFETIME = 24 * 60 * 60;
+
+	/**
+	 * Creates the private directory of the disk tier.
+	 * 
+	 * @param parent
+	 *        The parent directory or null
+	 * @return The private directory or null if there is no disk tier
+	 */
+	private File createDiskDirectory( File parent )
+	{
+		if( parent == null )
+			return null;
+		try
+		{
+			parent.mkdirs();
+			return Files.createTempDirectory( parent.toPath(), "restlet-http-cache-" ).toFile();
+		}
+		catch( IOException x )
+		{
+			logger.log( Level.WARNING, "Could not create a cache directory in " + parent + ", so the disk tier is disabled", x );
+			return null;
+		}
+	}
+
+	/**
+	 * Whether a response may be stored.
+	 * 
+	 * @param response
+	 *        The response
+	 * @return True if cacheable
+	 */
+	private boolean isCacheable( BufferedResponse response )
+	{
+		return ( response.getContent().length <= maxEntrySize ) && isStorable( response.getStatus(), response.getHeaders() );
+	}
+
+	/**
+	 * Stores an entry, replacing a previous one and enforcing the tier sizes.
+	 * 
+	 * @param key
+	 *        The key
+	 * @param entry
+	 *        The entry
+	 */
+	private synchronized void put( String key, Entry entry )
+	{
+		final Entry previous = entries.put( key, entry );
+		if( previous != null )
+			discard( previous );
+		memoryUsed += entry.size;
+
+		// Spill or evict the least recently used entries from memory
+		for( Iterator<Map.Entry<String, Entry>> i = entries.entrySet().iterator(); ( memoryUsed > memorySize ) && i.hasNext(); )
+		{
+			final Entry eldest = i.next().getValue();
+			if( eldest.content == null )
+				continue;
+			if( !spill( eldest ) )
+			{
+				i.remove();
+				discard( eldest );
+			}
+		}
+
+		// Evict the least recently used entries from disk
+		for( Iterator<Map.Entry<String, Entry>> i = entries.entrySet().iterator(); ( diskUsed > diskSize ) && i.hasNext(); )
+		{
+			final Entry eldest = i.next().getValue();
+			if( eldest.file != null )
+			{
+				i.remove();
+				discard( eldest );
+			}
+		}
+	}
+
+	/**
+	 * Moves an entry's content from memory to disk.
+	 * 
+	 * @param entry
+	 *        The entry
+	 * @return False if there is no disk tier or the content could not be
+	 *         written
+	 */
+	private boolean spill( Entry entry )
+	{
+		if( ( diskDirectory == null ) || ( entry.size > diskSize ) )
+			return false;
+
+		final File file = new File( diskDirectory, "entry-" + fileCounter.incrementAndGet() + ".cache" );
+		try
+		{
+			final RandomAccessFile randomAccessFile = new RandomAccessFile( file, "rw" );
+			try
+			{
+				final FileChannel channel = randomAccessFile.getChannel();
+				final ByteBuffer buffer = ByteBuffer.wrap( entry.content );
+				while( buffer.hasRemaining() )
+					channel.write( buffer );
+			}
+			finally
+			{
+				randomAccessFile.close();
+			}
+		}
+		catch( IOException x )
+		{
+			logger.log( Level.FINE, "Could not write cached content to " + file, x );
+			file.delete();
+			return false;
+		}
+
+		entry.file = file;
+		entry.content = null;
+		memoryUsed -= entry.size;
+		diskUsed += entry.size;
+		return true;
+	}
+
+	/**
+	 * Releases an entry's storage.
+	 * 
+	 * @param entry
+	 *        The entry
+	 */
+	private void discard( Entry entry )
+	{
+		if( entry.content != null )
+			memoryUsed -= entry.size;
+		final File file = entry.file;
+		if( file != null )
+		{
+			// Readers that already have the file open can still read it
+			diskUsed -= entry.size;
+			file.delete();
+		}
+	}
+
+	/**
+	 * Parses the "Cache-Control" directives.
+	 * 
+	 * @param headers
+	 *        The headers
+	 * @return The directives (lowercase) and their values (or null)
+	 */
+	private static Map<String, String> parseCacheControl( HttpFields headers )
+	{
+		final Map<String, String> directives = new HashMap<String, String>();
+		for( String value : headers.getCSV( HttpHeader.CACHE_CONTROL, false ) )
+			parseDirective( value, directives );
+		return directives;
+	}
+
+	/**
+	 * Parses a directive and adds it to a map, unless it is empty.
+	 * 
+	 * @param directive
+	 *        The directive, in the form "name" or "name=value"
+	 * @param directives
+	 *        The directives (lowercase) and their values (or null)
+	 */
+	private static void parseDirective( String directive, Map<String, String> directives )
+	{
+		final int equals = directive.indexOf( '=' );
+		if( equals == -1 )
+		{
+			final String name = directive.trim().toLowerCase();
+			if( !name.isEmpty() )
+				directives.put( name, null );
+		}
+		else
+		{
+			String argument = directive.substring( equals + 1 ).trim();
+			if( argument.startsWith( "\"" ) && argument.endsWith( "\"" ) && ( argument.length() > 1 ) )
+				argument = argument.substring( 1, argument.length() - 1 );
+			directives.put( directive.substring( 0, equals ).trim().toLowerCase(), argument );
+		}
+	}
+
+	/**
+	 * Records the request header values that select a response ("Vary").
+	 * 
+	 * @param response
+	 *        The response
+	 * @param requestHeaders
+	 *        The request headers
+	 * @return The selecting request header values
+	 */
+	private static Map<String, String> selectVary( BufferedResponse response, Series<Header> requestHeaders )
+	{
+		final List<String> names = response.getHeaders().getCSV( HttpHeader.VARY, false );
+		if( names.isEmpty() )
+			return Collections.emptyMap();
+		final Map<String, String> vary = new HashMap<String, String>();
+		for( String name : names )
+		{
+			final String value = requestHeaders.getValues( name );
+			vary.put( name, value == null ? "" : value );
+		}
+		return vary;
+	}
+
+	/**
+	 * Parses a date header.
+	 * 
+	 * @param headers
+	 *        The headers
+	 * @param name
+	 *        The header name
+	 * @return The date or -1 if missing or invalid
+	 */
+	private static long getDate( HttpFields headers, String name )
+	{
+		try
+		{
+			return headers.getDateField( name );
+		}
+		catch( IllegalArgumentException x )
+		{
+			// An invalid date, such as "Expires: 0", means already expired
+			return HttpHeader.EXPIRES.is( name ) ? 0 : -1;
+		}
+	}
+
+	/**
+	 * Parses a non-negative number.
+	 * 
+	 * @param value
+	 *        The value or null
+	 * @param defaultValue
+	 *        The default value
+	 * @return The number
+	 */
+	private static long getLong( String value, long defaultValue )
+	{
+		if( value == null )
+			return defaultValue;
+		try
+		{
+			return Long.parseLong( value.trim() );
+		}
+		catch( NumberFormatException x )
+		{
+			return defaultValue;
+		}
+	}
+
+	/** The max size in bytes of the memory tier. */
+	private final long memorySize;
+
+	/** The private directory of the disk tier or null. */
+	private final File diskDirectory;
+
+	/** The max size in bytes of the disk tier. */
+	private final long diskSize;
+
+	/** The max content size in bytes of cached responses. */
+	private final int maxEntrySize;
+
+	/** The logger. */
+	private final Logger logger;
+
+	/** The entries, in access order. */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>( 16, 0.75f, true );
+
+	/** The keys being revalidated in the background. */
+	private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+
+	/** The disk file counter. */
+	private final AtomicLong fileCounter = new AtomicLong();
+
+	/** The size in bytes of the content in memory. */
+	private long memoryUsed;
+
+	/** The size in bytes of the content on disk. */
+	private long diskUsed;
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpClientTransport;
+import org.eclipse.jetty.client.HttpDestination;
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.io.ClientConnectionFactory;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.io.ssl.SslConnection;
+import org.eclipse.jetty.io.ssl.SslHandshakeListener;
+import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+
+/**
+ * Jetty HTTP client that records connect and TLS handshake times in
+ * {@link ClientMetrics}.
+ * <p>
+ * Connect times include the resolution of the host address.
+ * 
+ * @author Tal Liron
+ */
+public class InstrumentedHttpClient extends HttpClient
+{
+	/**
+	 * Constructor.
+	 * 
+	 * @param transport
+	 *        The transport
+	 * @param sslContextFactory
+	 *        The SSL context factory or null
+	 * @param metrics
+	 *        The client metrics
+	 */
+	public InstrumentedHttpClient( HttpClientTransport transport, SslContextFactory sslContextFactory, ClientMetrics metrics )
+	{
+		super( transport, sslContextFactory );
+		this.metrics = metrics;
+	}
+
+	// //////////////////////////////////////////////////////////////////////////
+	// Protected
+
+	@Override
+	protected void newConnection( final HttpDestination destination, final Promise<Connection> promise )
+	{
+		final long start = System.nanoTime();
+		super.newConnection( destination, new Promise<Connection>()
+		{
+			public void succeeded( Connection connection )
+			{
+				metrics.connected( destination, System.nanoTime() - start, null );
+				promise.succeeded( connection );
+			}
+
+			public void failed( Throwable x )
+			{
+				metrics.connected( destination, System.nanoTime() - start, x );
+				promise.failed( x );
+			}
+		} );
+	}
+
+	@Override
+	protected ClientConnectionFactory newSslClientConnectionFactory( SslContextFactory sslContextFactory, ClientConnectionFactory connectionFactory )
+	{
+		final ClientConnectionFactory sslClientConnectionFactory = super.newSslClientConnectionFactory( sslContextFactory, connectionFactory );
+		return new ClientConnectionFactory()
+		{
+			public org.eclipse.jetty.io.Connection newConnection( EndPoint endPoint, Map<String, Object> context ) throws IOException
+			{
+				final org.eclipse.jetty.io.Connection connection = sslClientConnectionFactory.newConnection( endPoint, context );
+				final Object destination = context.get( HttpClientTransport.HTTP_DESTINATION_CONTEXT_KEY );
+				if( ( connection instanceof SslConnection ) && ( destination instanceof HttpDestination ) )
+				{
+					final long start = System.nanoTime();
+					( (SslConnection) connection ).addHandshakeListener( new SslHandshakeListener()
+					{
+						@Override
+						public void handshakeSucceeded( Event event )
+						{
+							metrics.handshaken( (HttpDestination) destination, System.nanoTime() - start, null );
+						}
+
+						@Override
+						public void handshakeFailed( Event event, Throwable failure )
+						{
+							metrics.handshaken( (HttpDestination) destination, System.nanoTime() - start, failure );
+						}
+					} );
+				}
+				return connection;
+			}
+		};
+	}
+
+	// //////////////////////////////////////////////////////////////////////////
+	// Private
+
+	/**
+	 * The client metrics.
+	 */
+	private final ClientMetrics metrics;
+}
@@ -12,22 +12,47 @@
 
 package org.restlet.ext.jetty9.internal;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 
+import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.HttpRequest;
 import org.eclipse.jetty.client.HttpResponse;
+import org.eclipse.jetty.client.api.ContentProvider;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.client.util.ByteBufferContentProvider;
+import org.eclipse.jetty.client.util.DeferredContentProvider;
 import org.eclipse.jetty.client.util.InputStreamContentProvider;
 import org.eclipse.jetty.client.util.InputStreamResponseListener;
+import org.eclipse.jetty.client.util.PathContentProvider;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.thread.Scheduler;
 import org.restlet.Request;
 import org.restlet.Response;
 import org.restlet.Uniform;
@@ -37,7 +62,10 @@ import org.restlet.data.Status;
 import org.restlet.engine.adapter.ClientCall;
 import org.restlet.engine.header.HeaderConstants;
 import org.restlet.ext.jetty9.JettyHttpClientHelper;
+import org.restlet.representation.FileRepresentation;
+import org.restlet.representation.OutputRepresentation;
 import org.restlet.representation.Representation;
+import org.restlet.representation.WriterRepresentation;
 import org.restlet.util.Series;
 
 /**
@@ -67,10 +95,12 @@ public class JettyClientCall extends ClientCall
 
 		if( requestUri.startsWith( "http:" ) || requestUri.startsWith( "https:" ) )
 		{
-			httpRequest = (HttpRequest) helper.getHttpClient().newRequest( requestUri );
-			httpRequest.method( method );
+			// The Jetty request is created lazily, so that it is never
+			// created for responses served from the cache
+			final URI uri = URI.create( requestUri );
+			httpClient = helper.getHttpClient( uri.getHost() );
 
-			setConfidential( httpRequest.getURI().getScheme().equalsIgnoreCase( Protocol.HTTPS.getSchemeName() ) );
+			setConfidential( uri.getScheme().equalsIgnoreCase( Protocol.HTTPS.getSchemeName() ) );
 		}
 		else
 		{
@@ -79,15 +109,53 @@ public class JettyClientCall extends ClientCall
 	}
 
 	/**
-	 * Returns the HTTP request.
+	 * Returns the HTTP request, creating it if necessary.
 	 * 
 	 * @return The HTTP request.
 	 */
-	public HttpRequest getHttpRequest()
+	public synchronized HttpRequest getHttpRequest()
 	{
+		if( httpRequest == null )
+		{
+			httpRequest = (HttpRequest) newJettyRequest();
+			httpRequest.method( getMethod() );
+		}
 		return httpRequest;
 	}
 
+	/**
+	 * Aborts the HTTP request, if it was created, cancelling its hedged
+	 * requests and retries.
+	 * 
+	 * @param failure
+	 *        The failure
+	 */
+	public synchronized void abortHttpRequest( Throwable failure )
+	{
+		if( resilientExchange != null )
+			resilientExchange.cancel( failure );
+		else if( httpRequest != null )
+			httpRequest.abort( failure );
+	}
+
+	/**
+	 * Returns the request whose response is being read: the winner of the
+	 * resilient exchange, which may be a hedged request or a retry, or else
+	 * the HTTP request.
+	 * 
+	 * @return The responding request.
+	 */
+	public synchronized org.eclipse.jetty.client.api.Request getRespondingRequest()
+	{
+		if( resilientExchange != null )
+		{
+			final org.eclipse.jetty.client.api.Request winner = resilientExchange.getWinner();
+			if( winner != null )
+				return winner;
+		}
+		return getHttpRequest();
+	}
+
 	/**
 	 * Returns the HTTP response.
 	 * 
@@ -98,6 +166,16 @@ public class JettyClientCall extends ClientCall
 		return httpResponse;
 	}
 
+	/**
+	 * Returns the channel response listener.
+	 * 
+	 * @return The channel response listener.
+	 */
+	public ChannelResponseListener getChannelResponseListener()
+	{
+		return channelResponseListener;
+	}
+
 	/**
 	 * Returns the input stream response listener.
 	 * 
@@ -116,18 +194,75 @@ public class JettyClientCall extends ClientCall
 	@Override
 	public String getReasonPhrase()
 	{
+		final BufferedResponse bufferedResponse = this.bufferedResponse;
+		if( bufferedResponse != null )
+			return bufferedResponse.getReason();
 		final HttpResponse httpResponse = getHttpResponse();
-		return httpResponse == null ? null : httpResponse.getReason();
+		if( httpResponse != null )
+			return httpResponse.getReason();
+		final Status failureStatus = this.failureStatus;
+		return failureStatus == null ? null : failureStatus.getReasonPhrase();
 	}
 
+	/**
+	 * Returns a blocking channel for writing the request entity while it is
+	 * sent. Each write waits until the server has accepted the data, so memory
+	 * is bounded by the request buffer size. The channel must be closed to
+	 * complete the request entity.
+	 * <p>
+	 * The request must be sent from another thread, or asynchronously.
+	 * 
+	 * @return The request entity channel.
+	 * @see #offerRequestEntity(ByteBuffer, Callback)
+	 */
 	public WritableByteChannel getRequestEntityChannel()
 	{
-		return null;
+		return getDeferredRequestEntity();
 	}
 
+	/**
+	 * Returns a blocking stream for writing the request entity while it is
+	 * sent. Each write waits until the server has accepted the data, so memory
+	 * is bounded by the request buffer size. The stream must be closed to
+	 * complete the request entity.
+	 * <p>
+	 * The request must be sent from another thread, or asynchronously.
+	 * 
+	 * @return The request entity stream.
+	 * @see #offerRequestEntity(ByteBuffer, Callback)
+	 */
 	public OutputStream getRequestEntityStream()
 	{
-		return null;
+		return getDeferredRequestEntity();
+	}
+
+	/**
+	 * Offers request entity content without blocking. The callback is
+	 * succeeded when the content has been sent, at which point the buffer may
+	 * be reused and it is safe to offer more. Call
+	 * {@link #closeRequestEntity()} after the last offer.
+	 * <p>
+	 * Must not be mixed with {@link #getRequestEntityStream()} or
+	 * {@link #getRequestEntityChannel()}.
+	 * 
+	 * @param buffer
+	 *        The content
+	 * @param callback
+	 *        The callback
+	 * @return False if the request entity is closed or failed
+	 */
+	public boolean offerRequestEntity( ByteBuffer buffer, Callback callback )
+	{
+		return getDeferredContentProvider().offer( buffer, callback );
+	}
+
+	/**
+	 * Completes a request entity sent via
+	 * {@link #offerRequestEntity(ByteBuffer, Callback)}.
+	 */
+	public void closeRequestEntity()
+	{
+		getDeferredContentProvider().close();
 	}
 
 	public OutputStream getRequestHeadStream()
@@ -135,15 +270,62 @@ public class JettyClientCall extends ClientCall
 		return null;
 	}
 
+	/**
+	 * Returns the response channel. If it is closed before the end of the
+	 * entity, the remainder is drained up to
+	 * {@link JettyHttpClientHelper#getResponseDrainLimit()} and for up to
+	 * {@link JettyHttpClientHelper#getResponseDrainTimeout()}, otherwise the
+	 * response is aborted.
+	 * 
+	 * @param size
+	 *        The expected entity size or -1 if unknown.
+	 * @return The response channel.
+	 */
 	public ReadableByteChannel getResponseEntityChannel( long size )
 	{
-		return null;
+		final ChannelResponseListener channelResponseListener = getChannelResponseListener();
+		if( ( channelResponseListener == null ) || ( bufferedResponse != null ) )
+			return null;
+
+		channelResponseListener.setDrainLimit( clientHelper.getResponseDrainLimit() );
+		channelResponseListener.setDrainTimeout( clientHelper.getResponseDrainTimeout() );
+		final ResponseLeakDetector leakDetector = clientHelper.getResponseLeakDetector();
+		if( leakDetector == null )
+			return channelResponseListener;
+
+		final org.eclipse.jetty.client.api.Request respondingRequest = getRespondingRequest();
+		final ResponseEntityChannel channel = new ResponseEntityChannel( channelResponseListener, leakDetector, leakDetector.describe( respondingRequest ) );
+		leakDetector.track( channel, respondingRequest );
+		return channel;
 	}
 
+	/**
+	 * Returns the response stream. If it is closed before the end of the
+	 * entity, the remainder is drained up to
+	 * {@link JettyHttpClientHelper#getResponseDrainLimit()} and for up to
+	 * {@link JettyHttpClientHelper#getResponseDrainTimeout()}, otherwise the
+	 * response is aborted.
+	 * 
+	 * @param size
+	 *        The expected entity size or -1 if unknown.
+	 * @return The response stream.
+	 */
 	public InputStream getResponseEntityStream( long size )
 	{
+		final BufferedResponse bufferedResponse = this.bufferedResponse;
+		if( bufferedResponse != null )
+			return new ByteArrayInputStream( bufferedResponse.getContent() );
+
 		final InputStreamResponseListener inputStreamResponseListener = getInputStreamResponseListener();
-		return inputStreamResponseListener == null ? null : inputStreamResponseListener.getInputStream();
+		if( inputStreamResponseListener == null )
+			return null;
+
+		final ResponseLeakDetector leakDetector = clientHelper.getResponseLeakDetector();
+		final org.eclipse.jetty.client.api.Request respondingRequest = getRespondingRequest();
+		final ResponseEntityStream stream = new ResponseEntityStream( inputStreamResponseListener.getInputStream(), size, clientHelper.getResponseDrainLimit(), clientHelper.getResponseDrainTimeout(), getHttpResponse(), httpClient.getScheduler(), leakDetector, leakDetector != null ? leakDetector.describe( respondingRequest ) : "response entity" );
+		if( leakDetector != null )
+			leakDetector.track( stream, respondingRequest );
+		return stream;
 	}
 
 	/**
@@ -159,14 +341,12 @@ public class JettyClientCall extends ClientCall
 		if( !responseHeadersAdded )
 		{
 			final HttpResponse httpResponse = getHttpResponse();
-			if( httpResponse != null )
+			final BufferedResponse bufferedResponse = this.bufferedResponse;
+			final HttpFields headers = bufferedResponse != null ? bufferedResponse.getHeaders() : ( httpResponse != null ? httpResponse.getHeaders() : null );
+			if( headers != null )
 			{
-				final HttpFields headers = httpResponse.getHeaders();
-				if( headers != null )
-				{
-					for( HttpField header : headers )
-						result.add( header.getName(), header.getValue() );
-				}
+				for( HttpField header : headers )
+					result.add( header.getName(), header.getValue() );
 			}
 
 			responseHeadersAdded = true;
@@ -184,7 +364,8 @@ public class JettyClientCall extends ClientCall
 	@Override
 	public String getServerAddress()
 	{
-		return getHttpRequest().getURI().getHost();
+		final HttpRequest httpRequest = this.httpRequest;
+		return httpRequest != null ? httpRequest.getHost() : URI.create( getRequestUri() ).getHost();
 	}
 
 	/**
@@ -195,8 +376,14 @@ public class JettyClientCall extends ClientCall
 	@Override
 	public int getStatusCode()
 	{
+		final BufferedResponse bufferedResponse = this.bufferedResponse;
+		if( bufferedResponse != null )
+			return bufferedResponse.getStatus();
 		final HttpResponse httpResponse = getHttpResponse();
-		return httpResponse == null ? null : httpResponse.getStatus();
+		if( httpResponse != null )
+			return httpResponse.getStatus();
+		final Status failureStatus = this.failureStatus;
+		return failureStatus == null ? Status.CONNECTOR_ERROR_INTERNAL.getCode() : failureStatus.getCode();
 	}
 
 	/**
@@ -214,26 +401,56 @@ public class JettyClientCall extends ClientCall
 
 		try
 		{
-			final Representation entity = request.getEntity();
-
-			// Request entity
-			if( entity != null )
-				httpRequest.content( new InputStreamContentProvider( entity.getStream() ) );
+			final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( clientHelper.getTimeout() );
+			final String cacheKey = getCacheKey( request );
+			final String coalescingKey = getCoalescingKey( request );
+			if( cacheKey != null )
+			{
+				// Serve from the cache or fetch into it
+				final HttpCache cache = clientHelper.getHttpCache();
+				final HttpCache.Entry entry = cache.get( cacheKey, getRequestHeaders() );
+				bufferedResponse = serveCached( cacheKey, entry );
+				if( bufferedResponse == null )
+				{
+					if( coalescingKey != null )
+						// Coalesced fetches are buffered
+						bufferedResponse = fetchCached( request, cacheKey, entry ).get( clientHelper.getTimeout(), TimeUnit.MILLISECONDS );
+					else
+					{
+						// Responses that can be stored are buffered for the
+						// cache, others are streamed
+						final Supplier<org.eclipse.jetty.client.api.Response.Listener> listeners = getResponseListeners();
+						prepareRequest( request );
+						if( entry != null )
+							addValidators( getHttpRequest(), entry );
+						final long requestTime = System.currentTimeMillis();
+						final CachingResponseListener listener = (CachingResponseListener) sendStreamed( request, () -> new CachingResponseListener( listeners.get(), cache, cacheKey, getRequestHeaders(), requestTime ), deadline );
+						httpResponse = awaitResponse( listener.getListener(), deadline );
 
-			// Set the request headers
-			for( Header header : getRequestHeaders() )
+						if( ( entry != null ) && ( httpResponse.getStatus() == HttpStatus.NOT_MODIFIED_304 ) )
+						{
+							// Serve the revalidated entry
+							channelResponseListener = null;
+							inputStreamResponseListener = null;
+							bufferedResponse = cache( cacheKey, entry, new BufferedResponse( httpResponse, new byte[0] ), requestTime );
+						}
+					}
+				}
+			}
+			else if( coalescingKey != null )
 			{
-				final String name = header.getName();
-				if( !name.equals( HeaderConstants.HEADER_CONTENT_LENGTH ) )
-					httpRequest.header( name, header.getValue() );
+				// Join or start the identical request in flight
+				bufferedResponse = clientHelper.getRequestCoalescer().join( coalescingKey, future -> prepareAndSendBuffered( request, future ) ).get( clientHelper.getTimeout(), TimeUnit.MILLISECONDS );
+			}
+			else
+			{
+				final Supplier<org.eclipse.jetty.client.api.Response.Listener> listeners = getResponseListeners();
+				prepareRequest( request );
+				httpResponse = awaitResponse( sendStreamed( request, listeners, deadline ), deadline );
 			}
-
-			// Ensure that the connection is active
-			inputStreamResponseListener = new InputStreamResponseListener();
-			httpRequest.send( inputStreamResponseListener );
-			httpResponse = (HttpResponse) inputStreamResponseListener.get( clientHelper.getTimeout(), TimeUnit.MILLISECONDS );
 
 			result = new Status( getStatusCode(), getReasonPhrase() );
+			invalidateCache();
 		}
 		catch( IOException e )
 		{
@@ -241,7 +458,7 @@ public class JettyClientCall extends ClientCall
 			result = new Status( Status.CONNECTOR_ERROR_INTERNAL, e );
 
 			// Release the connection
-			getHttpRequest().abort( e );
+			abortHttpRequest( e );
 		}
 		catch( TimeoutException e )
 		{
@@ -249,7 +466,7 @@ public class JettyClientCall extends ClientCall
 			result = new Status( Status.CONNECTOR_ERROR_COMMUNICATION, e );
 
 			// Release the connection
-			getHttpRequest().abort( e );
+			abortHttpRequest( e );
 		}
 		catch( InterruptedException e )
 		{
@@ -257,25 +474,1040 @@ public class JettyClientCall extends ClientCall
 			result = new Status( Status.CONNECTOR_ERROR_COMMUNICATION, e );
 
 			// Release the connection
-			getHttpRequest().abort( e );
+			abortHttpRequest( e );
 		}
 		catch( ExecutionException e )
 		{
-			clientHelper.getLogger().log( Level.WARNING, "An error occurred while processing the HTTP request.", e );
-			result = new Status( Status.CONNECTOR_ERROR_COMMUNICATION, e );
+			if( e.getCause() instanceof RejectedExecutionException )
+			{
+				// Failed fast by admission control or a full queue
+				clientHelper.getLogger().log( Level.FINE, "The HTTP request was rejected.", e.getCause() );
+				result = new Status( Status.CONNECTOR_ERROR_CONNECTION, e.getCause() );
+			}
+			else
+			{
+				clientHelper.getLogger().log( Level.WARNING, "An error occurred while processing the HTTP request.", e );
+				result = new Status( Status.CONNECTOR_ERROR_COMMUNICATION, e );
+			}
 
 			// Release the connection
-			getHttpRequest().abort( e );
+			abortHttpRequest( e );
 		}
 
 		return result;
 	}
 
+	/**
+	 * Sends the request asynchronously. No thread waits for the response.
+	 * Responses of up to
+	 * {@link JettyHttpClientHelper#getMaxBufferedResponseLength()} bytes are
+	 * buffered, and the request's "onSent" and the callback are called from
+	 * Jetty's completion. Larger responses are streamed: "onSent" and the
+	 * callback are called on the Jetty HTTP client's executor once the
+	 * response headers arrive, and the response entity must be read or
+	 * released. Coalesced responses, which are shared, are always buffered.
+	 * 
+	 * @param request
+	 *        The high-level request.
+	 * @param response
+	 *        The high-level response.
+	 * @param callback
+	 *        The callback invoked upon request completion.
+	 */
 	@Override
-	public void sendRequest( Request request, Response response, Uniform callback ) throws Exception
+	public void sendRequest( final Request request, final Response response, final Uniform callback ) throws Exception
+	{
+		final CompletableFuture<BufferedResponse> future;
+		final String cacheKey = getCacheKey( request );
+		final String coalescingKey = getCoalescingKey( request );
+		final HttpCache.Entry entry = cacheKey != null ? clientHelper.getHttpCache().get( cacheKey, getRequestHeaders() ) : null;
+		final BufferedResponse cached = cacheKey != null ? serveCached( cacheKey, entry ) : null;
+		if( cached != null )
+			future = CompletableFuture.completedFuture( cached );
+		else if( coalescingKey != null )
+		{
+			// Join or start the identical request in flight
+			if( cacheKey != null )
+				future = fetchCached( request, cacheKey, entry );
+			else
+				future = clientHelper.getRequestCoalescer().join( coalescingKey, f -> prepareAndSendBuffered( request, f ) );
+		}
+		else
+		{
+			try
+			{
+				prepareRequest( request );
+			}
+			catch( IOException e )
+			{
+				clientHelper.getLogger().log( Level.WARNING, "An error occurred while reading the request entity.", e );
+				failureStatus = new Status( Status.CONNECTOR_ERROR_INTERNAL, e );
+				abortHttpRequest( e );
+				onSent( request, response, callback );
+				return;
+			}
+
+			future = sendAsync( request, cacheKey, entry );
+		}
+
+		future.whenComplete( ( buffered, failure ) ->
+		{
+			if( failure == null )
+			{
+				if( buffered != null )
+					bufferedResponse = buffered;
+				invalidateCache();
+			}
+			else
+			{
+				if( ( failure instanceof CompletionException ) && ( failure.getCause() != null ) )
+					failure = failure.getCause();
+				if( failure instanceof RejectedExecutionException )
+				{
+					// Failed fast by admission control or a full queue
+					clientHelper.getLogger().log( Level.FINE, "The HTTP request was rejected.", failure );
+					failureStatus = new Status( Status.CONNECTOR_ERROR_CONNECTION, failure );
+				}
+				else
+				{
+					if( failure instanceof TimeoutException )
+						clientHelper.getLogger().log( Level.WARNING, "The HTTP request timed out.", failure );
+					else
+						clientHelper.getLogger().log( Level.WARNING, "An error occurred while processing the HTTP request.", failure );
+					failureStatus = new Status( Status.CONNECTOR_ERROR_COMMUNICATION, failure );
+				}
+			}
+
+			final ChannelResponseListener channelResponseListener = getChannelResponseListener();
+			if( ( channelResponseListener == null ) || channelResponseListener.isCompleted() )
+				onSent( request, response, callback );
+			else
+			{
+				// The response entity is read from Jetty's threads, so the
+				// callback must not block one
+				try
+				{
+					httpClient.getExecutor().execute( () -> onSent( request, response, callback ) );
+				}
+				catch( RejectedExecutionException e )
+				{
+					abortHttpRequest( e );
+					onSent( request, response, callback );
+				}
+			}
+		} );
+	}
+
+	/**
+	 * Sends the prepared request asynchronously, via a
+	 * {@link AdaptiveResponseListener}: responses of up to
+	 * {@link JettyHttpClientHelper#getMaxBufferedResponseLength()} bytes are
+	 * buffered, and larger responses are streamed. Requests that can be
+	 * replayed are hedged and retried if so configured. If the request uses
+	 * the cache, responses that can be stored are stored, and a "304 Not
+	 * Modified" response revalidates the cache entry.
+	 * 
+	 * @param request
+	 *        The high-level request.
+	 * @param cacheKey
+	 *        The cache key or null
+	 * @param entry
+	 *        The stale cache entry to revalidate or null
+	 * @return A future completed once the response is available, with the
+	 *         revalidated cache entry or with null if the response is
+	 *         available from the channel response listener
+	 */
+	private CompletableFuture<BufferedResponse> sendAsync( Request request, final String cacheKey, final HttpCache.Entry entry )
+	{
+		final ByteBufferPool byteBufferPool = httpClient.getByteBufferPool();
+		final int threshold = clientHelper.getMaxBufferedResponseLength();
+		final long requestTime = System.currentTimeMillis();
+		final Supplier<org.eclipse.jetty.client.api.Response.Listener> listeners;
+		if( cacheKey != null )
+		{
+			final HttpCache cache = clientHelper.getHttpCache();
+			if( entry != null )
+				addValidators( getHttpRequest(), entry );
+			listeners = () -> new CachingResponseListener( new AdaptiveResponseListener( byteBufferPool, threshold ), cache, cacheKey, getRequestHeaders(), requestTime );
+		}
+		else
+			listeners = () -> new AdaptiveResponseListener( byteBufferPool, threshold );
+
+		final CompletableFuture<BufferedResponse> future = sendResilient( request, listeners ).thenCompose( listener ->
+		{
+			channelResponseListener = (ChannelResponseListener) ( listener instanceof CachingResponseListener ? ( (CachingResponseListener) listener ).getListener() : listener );
+			return channelResponseListener.whenReady();
+		} ).thenApply( jettyResponse ->
+		{
+			httpResponse = (HttpResponse) jettyResponse;
+			if( ( entry == null ) || ( jettyResponse.getStatus() != HttpStatus.NOT_MODIFIED_304 ) )
+				return null;
+
+			// Serve the revalidated entry
+			channelResponseListener = null;
+			try
+			{
+				return cache( cacheKey, entry, new BufferedResponse( jettyResponse, new byte[0] ), requestTime );
+			}
+			catch( IOException e )
+			{
+				throw new CompletionException( e );
+			}
+		} );
+
+		// The response must be available in time
+		final long timeout = clientHelper.getTimeout();
+		if( timeout > 0 )
+		{
+			final Scheduler.Task task = httpClient.getScheduler().schedule( () -> abortHttpRequest( new TimeoutException( "Total timeout " + timeout + " ms elapsed" ) ), timeout, TimeUnit.MILLISECONDS );
+			future.whenComplete( ( response, failure ) -> task.cancel() );
+		}
+
+		return future;
+	}
+
+	/**
+	 * Serves a cache entry if it is fresh (or within its
+	 * "stale-while-revalidate" period, in which case it is also revalidated in
+	 * the background).
+	 * 
+	 * @param cacheKey
+	 *        The cache key
+	 * @param entry
+	 *        The cache entry or null
+	 * @return The response or null if it must be fetched
+	 */
+	private BufferedResponse serveCached( String cacheKey, HttpCache.Entry entry )
+	{
+		if( ( entry == null ) || isRequestNoCache() )
+			return null;
+
+		final long now = System.currentTimeMillis();
+		try
+		{
+			if( entry.isFresh( now ) )
+				return entry.serve( now );
+			else if( entry.isStaleWhileRevalidate( now ) )
+			{
+				final BufferedResponse stale = entry.serve( now );
+				revalidate( cacheKey, entry );
+				return stale;
+			}
+		}
+		catch( IOException x )
+		{
+			// The cached content is lost, so fetch it
+		}
+		return null;
+	}
+
+	/**
+	 * Fetches a response into the cache, buffered, sharing the flight with
+	 * identical requests if coalescing is enabled.
+	 * 
+	 * @param request
+	 *        The high-level request.
+	 * @param cacheKey
+	 *        The cache key
+	 * @param entry
+	 *        The stale cache entry to revalidate or null
+	 * @return The future response
+	 */
+	private CompletableFuture<BufferedResponse> fetchCached( final Request request, final String cacheKey, final HttpCache.Entry entry )
+	{
+		final String coalescingKey = getCoalescingKey( request );
+		if( coalescingKey != null )
+			return clientHelper.getRequestCoalescer().join( coalescingKey, future -> fetch( request, cacheKey, entry, future ) );
+		final CompletableFuture<BufferedResponse> future = new CompletableFuture<BufferedResponse>();
+		fetch( request, cacheKey, entry, future );
+		return future;
+	}
+
+	/**
+	 * Fetches a response into the cache.
+	 * 
+	 * @param request
+	 *        The high-level request.
+	 * @param cacheKey
+	 *        The cache key
+	 * @param entry
+	 *        The stale cache entry to revalidate or null
+	 * @param future
+	 *        The future to complete with the response
+	 */
+	private void fetch( Request request, final String cacheKey, final HttpCache.Entry entry, final CompletableFuture<BufferedResponse> future )
+	{
+		try
+		{
+			prepareRequest( request );
+		}
+		catch( IOException e )
+		{
+			future.completeExceptionally( e );
+			return;
+		}
+
+		if( entry != null )
+			addValidators( getHttpRequest(), entry );
+
+		final long requestTime = System.currentTimeMillis();
+		final CompletableFuture<BufferedResponse> network = new CompletableFuture<BufferedResponse>();
+		network.whenComplete( ( response, failure ) ->
+		{
+			if( failure != null )
+				future.completeExceptionally( failure );
+			else
+			{
+				try
+				{
+					future.complete( cache( cacheKey, entry, response, requestTime ) );
+				}
+				catch( IOException e )
+				{
+					future.completeExceptionally( e );
+				}
+			}
+		} );
+		sendBuffered( request, network );
+	}
+
+	/**
+	 * Revalidates a stale cache entry in the background, unless it is already
+	 * being revalidated.
+	 * 
+	 * @param cacheKey
+	 *        The cache key
+	 * @param entry
+	 *        The stale cache entry
+	 */
+	private void revalidate( final String cacheKey, final HttpCache.Entry entry )
+	{
+		final HttpCache cache = clientHelper.getHttpCache();
+		if( !cache.startRevalidation( cacheKey ) )
+			return;
+
+		final org.eclipse.jetty.client.api.Request revalidation = newJettyRequest().method( HttpMethod.GET );
+		copyRequestHeaders( revalidation );
+		addValidators( revalidation, entry );
+
+		final long requestTime = System.currentTimeMillis();
+		revalidation.timeout( clientHelper.getTimeout(), TimeUnit.MILLISECONDS );
+		revalidation.send( new BufferingResponseListener( clientHelper.getMaxBufferedResponseLength() )
+		{
+			@Override
+			public void onComplete( Result result )
+			{
+				try
+				{
+					if( result.isSucceeded() )
+						cache( cacheKey, entry, new BufferedResponse( result.getResponse(), getContent() ), requestTime );
+					else
+						clientHelper.getLogger().log( Level.FINE, "Could not revalidate a cached response.", result.getFailure() );
+				}
+				catch( IOException e )
+				{
+					clientHelper.getLogger().log( Level.FINE, "Could not revalidate a cached response.", e );
+				}
+				finally
+				{
+					cache.endRevalidation( cacheKey );
+				}
+			}
+		} );
+	}
+
+	/**
+	 * Caches a fetched response.
+	 * 
+	 * @param cacheKey
+	 *        The cache key
+	 * @param entry
+	 *        The revalidated cache entry or null
+	 * @param response
+	 *        The fetched response
+	 * @param requestTime
+	 *        When the request was sent
+	 * @return The response to serve
+	 * @throws IOException
+	 *         If the response is "304 Not Modified" but the cached content is
+	 *         lost
+	 */
+	private BufferedResponse cache( String cacheKey, HttpCache.Entry entry, BufferedResponse response, long requestTime ) throws IOException
+	{
+		final HttpCache cache = clientHelper.getHttpCache();
+		final long responseTime = System.currentTimeMillis();
+		if( ( entry != null ) && ( response.getStatus() == HttpStatus.NOT_MODIFIED_304 ) )
+		{
+			final HttpCache.Entry revalidated = cache.revalidated( cacheKey, entry, response, requestTime, responseTime );
+			if( revalidated == null )
+				throw new IOException( "Cached content was lost during revalidation" );
+			return revalidated.serve( responseTime );
+		}
+
+		cache.store( cacheKey, getRequestHeaders(), response, requestTime, responseTime );
+		return response;
+	}
+
+	/**
+	 * Adds the validators of a cache entry as conditional request headers.
+	 * 
+	 * @param jettyRequest
+	 *        The Jetty request
+	 * @param entry
+	 *        The cache entry
+	 */
+	private static void addValidators( org.eclipse.jetty.client.api.Request jettyRequest, HttpCache.Entry entry )
+	{
+		final String etag = entry.getETag();
+		if( etag != null )
+			jettyRequest.header( HttpHeader.IF_NONE_MATCH, etag );
+		final String lastModified = entry.getLastModified();
+		if( lastModified != null )
+			jettyRequest.header( HttpHeader.IF_MODIFIED_SINCE, lastModified );
+	}
+
+	/**
+	 * The cache key: the URI. Only GET requests without an entity, without
+	 * "no-store" and without their own conditions or ranges are cached.
+	 * 
+	 * @param request
+	 *        The high-level request.
+	 * @return The key or null if the request does not use the cache.
+	 */
+	private String getCacheKey( Request request )
+	{
+		if( clientHelper.getHttpCache() == null )
+			return null;
+
+		if( !HttpMethod.GET.is( getMethod() ) )
+			return null;
+		final Representation entity = request.getEntity();
+		if( ( entity != null ) && entity.isAvailable() )
+			return null;
+
+		final Series<Header> requestHeaders = getRequestHeaders();
+		if( HttpCache.parseDirectives( requestHeaders.getValues( HttpHeader.CACHE_CONTROL.asString() ) ).containsKey( "no-store" ) )
+			return null;
+		if( ( requestHeaders.getFirst( HttpHeader.IF_NONE_MATCH.asString(), true ) != null ) || ( requestHeaders.getFirst( HttpHeader.IF_MODIFIED_SINCE.asString(), true ) != null ) || ( requestHeaders.getFirst( HttpHeader.RANGE.asString(), true ) != null ) )
+			return null;
+
+		return getRequestUri();
+	}
+
+	/**
+	 * Whether the request forbids serving a cached response without
+	 * revalidation ("no-cache" or "max-age=0").
+	 * 
+	 * @return True if the cached response must be revalidated
+	 */
+	private boolean isRequestNoCache()
 	{
-		sendRequest( request );
+		final Series<Header> requestHeaders = getRequestHeaders();
+		final Map<String, String> cacheControl = HttpCache.parseDirectives( requestHeaders.getValues( HttpHeader.CACHE_CONTROL.asString() ) );
+		if( cacheControl.containsKey( "no-cache" ) || ( cacheControl.containsKey( "max-age" ) && ( HttpCache.parseSeconds( cacheControl.get( "max-age" ) ) == 0 ) ) )
+			return true;
+		return HttpCache.parseDirectives( requestHeaders.getValues( HttpHeader.PRAGMA.asString() ) ).containsKey( "no-cache" );
+	}
 
+	/**
+	 * Invalidates the cached response for the URI after a successful unsafe
+	 * request (RFC 7234, section 4.4).
+	 */
+	private void invalidateCache()
+	{
+		final HttpCache cache = clientHelper.getHttpCache();
+		if( cache == null )
+			return;
+		final String method = getMethod();
+		if( HttpMethod.GET.is( method ) || HttpMethod.HEAD.is( method ) || HttpMethod.OPTIONS.is( method ) || HttpMethod.TRACE.is( method ) )
+			return;
+		final int status = getStatusCode();
+		if( ( status >= 200 ) && ( status < 400 ) )
+			cache.invalidate( getRequestUri() );
+	}
+
+	/**
+	 * Creates a Jetty request for the request URI. If its host is a logical
+	 * service, an endpoint is selected by the service's load balancer; it is
+	 * acquired when the request is queued and released when it completes, so
+	 * that requests that are never sent do not count as outstanding. If
+	 * adaptive concurrency or circuit breaking is enabled, the request is
+	 * admitted to its destination when it is queued. If metrics are enabled,
+	 * the request is tracked.
+	 * 
+	 * @return The Jetty request
+	 */
+	private org.eclipse.jetty.client.api.Request newJettyRequest()
+	{
+		final URI uri = URI.create( getRequestUri() );
+		final LoadBalancer loadBalancer = clientHelper.getLoadBalancer( uri.getHost() );
+		final org.eclipse.jetty.client.api.Request jettyRequest;
+		if( loadBalancer == null )
+			jettyRequest = httpClient.newRequest( getRequestUri() );
+		else
+		{
+			final LoadBalancer.Endpoint endpoint = loadBalancer.select();
+			jettyRequest = clientHelper.getHttpClient( endpoint.getHost() ).newRequest( endpoint.resolve( uri ) );
+
+			// The endpoint is only acquired once the request is sent, so that
+			// requests that are never sent are not counted
+			final AtomicBoolean acquired = new AtomicBoolean();
+			final AtomicLong start = new AtomicLong();
+			jettyRequest.onRequestQueued( request ->
+			{
+				start.set( System.nanoTime() );
+				acquired.set( true );
+				endpoint.acquire();
+			} );
+			jettyRequest.onComplete( result ->
+			{
+				if( !acquired.get() )
+					return;
+
+				// Rejections and cancellations are not failures of the
+				// endpoint
+				final Throwable failure = result.getFailure();
+				if( ( failure instanceof RejectedExecutionException ) || ( failure instanceof CancellationException ) )
+					endpoint.release( false, 0 );
+				else
+					endpoint.release( ( failure != null ) || ( result.getResponse().getStatus() >= 500 ), TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start.get() ) );
+			} );
+		}
+
+		// Admission control for the destination
+		final String destination = jettyRequest.getScheme() + "://" + jettyRequest.getHost() + ":" + HttpClient.normalizePort( jettyRequest.getScheme(), jettyRequest.getPort() );
+		final ConcurrencyLimiter limiter = clientHelper.getConcurrencyLimiter( destination );
+		final CircuitBreaker breaker = clientHelper.getCircuitBreaker( destination );
+		if( ( limiter != null ) || ( breaker != null ) )
+		{
+			final AdmissionControl admissionControl = new AdmissionControl( destination, limiter, breaker );
+			jettyRequest.onRequestQueued( admissionControl );
+			jettyRequest.onComplete( admissionControl );
+		}
+
+		final ClientMetrics clientMetrics = clientHelper.getClientMetrics();
+		if( clientMetrics != null )
+			clientMetrics.track( jettyRequest );
+
+		return jettyRequest;
+	}
+
+	/**
+	 * Creates response listeners for the configured response mode.
+	 * 
+	 * @return The response listener factory
+	 * @see JettyHttpClientHelper#getResponseMode()
+	 */
+	private Supplier<org.eclipse.jetty.client.api.Response.Listener> getResponseListeners()
+	{
+		final String responseMode = clientHelper.getResponseMode();
+		if( "channel".equalsIgnoreCase( responseMode ) )
+			return ChannelResponseListener::new;
+		else if( "adaptive".equalsIgnoreCase( responseMode ) )
+		{
+			final ByteBufferPool byteBufferPool = httpClient.getByteBufferPool();
+			final int threshold = clientHelper.getAdaptiveResponseThreshold();
+			return () -> new AdaptiveResponseListener( byteBufferPool, threshold );
+		}
+		else if( "stream".equalsIgnoreCase( responseMode ) )
+			return InputStreamResponseListener::new;
+		else
+			throw new IllegalArgumentException( "Unsupported responseMode: " + responseMode );
+	}
+
+	/**
+	 * Sends the prepared request, streaming the response. Requests that can be
+	 * replayed are hedged and retried if so configured, until the response
+	 * headers arrive.
+	 * 
+	 * @param request
+	 *        The high-level request.
+	 * @param listeners
+	 *        Creates the listener for the response
+	 * @param deadline
+	 *        When the timeout elapses, in nanoseconds
+	 * @return The listener the response is passed on to
+	 * @throws IOException
+	 *         In case of an I/O error
+	 * @throws InterruptedException
+	 *         If interrupted while waiting
+	 * @throws TimeoutException
+	 *         If no response arrived in time
+	 * @throws ExecutionException
+	 *         If the request failed
+	 */
+	private org.eclipse.jetty.client.api.Response.Listener sendStreamed( Request request, Supplier<org.eclipse.jetty.client.api.Response.Listener> listeners, long deadline ) throws IOException, InterruptedException, TimeoutException, ExecutionException
+	{
+		if( isResilient( request ) )
+			return sendResilient( request, listeners ).get( deadline - System.nanoTime(), TimeUnit.NANOSECONDS );
+
+		final org.eclipse.jetty.client.api.Response.Listener listener = listeners.get();
+		getHttpRequest().send( listener );
+		writeRequestEntity( request );
+		return listener;
+	}
+
+	/**
+	 * Waits for the response headers to arrive at a listener created by
+	 * {@link #getResponseListeners()}, which then provides the response entity.
+	 * 
+	 * @param listener
+	 *        The response listener
+	 * @param deadline
+	 *        When the timeout elapses, in nanoseconds
+	 * @return The HTTP response
+	 * @throws InterruptedException
+	 *         If interrupted while waiting
+	 * @throws TimeoutException
+	 *         If the headers did not arrive in time
+	 * @throws ExecutionException
+	 *         If the request failed
+	 */
+	private HttpResponse awaitResponse( org.eclipse.jetty.client.api.Response.Listener listener, long deadline ) throws InterruptedException, TimeoutException, ExecutionException
+	{
+		if( listener instanceof ChannelResponseListener )
+		{
+			channelResponseListener = (ChannelResponseListener) listener;
+			return (HttpResponse) channelResponseListener.get( deadline - System.nanoTime(), TimeUnit.NANOSECONDS );
+		}
+		else
+		{
+			inputStreamResponseListener = (InputStreamResponseListener) listener;
+			return (HttpResponse) inputStreamResponseListener.get( deadline - System.nanoTime(), TimeUnit.NANOSECONDS );
+		}
+	}
+
+	/**
+	 * Prepares and sends a request, buffering the response. Used for coalesced
+	 * requests.
+	 * 
+	 * @param request
+	 *        The high-level request.
+	 * @param future
+	 *        The future to complete with the buffered response
+	 */
+	private void prepareAndSendBuffered( Request request, CompletableFuture<BufferedResponse> future )
+	{
+		try
+		{
+			prepareRequest( request );
+		}
+		catch( IOException e )
+		{
+			future.completeExceptionally( e );
+			return;
+		}
+
+		sendBuffered( request, future );
+	}
+
+	/**
+	 * Sends the prepared request, buffering the response (up to
+	 * {@link JettyHttpClientHelper#getMaxBufferedResponseLength()} bytes).
+	 * Requests that can be replayed are hedged and retried if so configured.
+	 * The request entity is written without blocking the calling thread, and
+	 * the whole response must arrive within the timeout.
+	 * 
+	 * @param request
+	 *        The high-level request.
+	 * @param future
+	 *        The future to complete with the buffered response
+	 */
+	private void sendBuffered( Request request, final CompletableFuture<BufferedResponse> future )
+	{
+		final int maxBufferedLength = clientHelper.getMaxBufferedResponseLength();
+		sendResilient( request, () -> new BufferingResponseListener( maxBufferedLength )
+		{
+			@Override
+			public void onComplete( Result result )
+			{
+				if( result.isSucceeded() )
+					future.complete( new BufferedResponse( result.getResponse(), getContent() ) );
+				else
+					future.completeExceptionally( result.getFailure() );
+			}
+		} ).whenComplete( ( listener, failure ) ->
+		{
+			if( failure != null )
+				future.completeExceptionally( failure );
+		} );
+
+		final long timeout = clientHelper.getTimeout();
+		if( timeout > 0 )
+		{
+			final Scheduler.Task task = httpClient.getScheduler().schedule( () -> abortHttpRequest( new TimeoutException( "Total timeout " + timeout + " ms elapsed" ) ), timeout, TimeUnit.MILLISECONDS );
+			future.whenComplete( ( response, failure ) -> task.cancel() );
+		}
+	}
+
+	/**
+	 * Sends the prepared request via a {@link ResilientExchange}, which hedges
+	 * and retries requests that can be replayed, if so configured. The request
+	 * entity is written without blocking the calling thread.
+	 * 
+	 * @param request
+	 *        The high-level request.
+	 * @param listeners
+	 *        Creates the listener for the response
+	 * @return The future listener the response is passed on to, completed once
+	 *         it has received the response headers
+	 */
+	private CompletableFuture<org.eclipse.jetty.client.api.Response.Listener> sendResilient( Request request, Supplier<org.eclipse.jetty.client.api.Response.Listener> listeners )
+	{
+		final boolean replayable = isReplayable( request );
+		final CompletableFuture<org.eclipse.jetty.client.api.Response.Listener> future = new CompletableFuture<org.eclipse.jetty.client.api.Response.Listener>();
+		final ResilientExchange exchange = new ResilientExchange( replayable ? this::copyHttpRequest : null, replayable ? getHedgingDelay() : -1, clientHelper.getRetryMaxRetries(), clientHelper.getRetryBackoff(), clientHelper.getRetryBudget(), getLatencyHistogram(), httpClient.getScheduler(), clientHelper.getTimeout(), clientHelper.getMaxBufferedResponseLength(), listeners, future );
+		synchronized( this )
+		{
+			resilientExchange = exchange;
+		}
+		exchange.send( getHttpRequest() );
+		writeRequestEntityAsync( request );
+		return future;
+	}
+
+	/**
+	 * Whether the request can be replayed for hedging and retries: its method
+	 * is idempotent and it has no entity.
+	 * 
+	 * @param request
+	 *        The high-level request.
+	 * @return True if replayable
+	 */
+	private boolean isReplayable( Request request )
+	{
+		final String method = getMethod();
+		if( !HttpMethod.GET.is( method ) && !HttpMethod.HEAD.is( method ) && !HttpMethod.OPTIONS.is( method ) && !HttpMethod.TRACE.is( method ) && !HttpMethod.PUT.is( method ) && !HttpMethod.DELETE.is( method ) )
+			return false;
+		final Representation entity = request.getEntity();
+		return ( ( entity == null ) || !entity.isAvailable() ) && ( deferredContentProvider == null );
+	}
+
+	/**
+	 * Whether the request is hedged or retried.
+	 * 
+	 * @param request
+	 *        The high-level request.
+	 * @return True if hedged or retried
+	 */
+	private boolean isResilient( Request request )
+	{
+		return ( clientHelper.isHedging() || ( clientHelper.getRetryMaxRetries() > 0 ) ) && isReplayable( request );
+	}
+
+	/**
+	 * The hedging delay: fixed, or a percentile of the observed latency of the
+	 * destination.
+	 * 
+	 * @return The hedging delay in milliseconds or -1 to not hedge
+	 * @see JettyHttpClientHelper#getHedgingDelay()
+	 */
+	private long getHedgingDelay()
+	{
+		if( !clientHelper.isHedging() )
+			return -1;
+
+		final String delay = clientHelper.getHedgingDelay();
+		if( delay.startsWith( "p" ) || delay.startsWith( "P" ) )
+		{
+			// Until there are enough samples we do not know what is slow
+			final LatencyHistogram histogram = getLatencyHistogram();
+			if( ( histogram == null ) || ( histogram.getCount() < MIN_HEDGING_SAMPLES ) )
+				return -1;
+			return Math.max( clientHelper.getHedgingMinDelay(), histogram.getPercentile( Double.parseDouble( delay.substring( 1 ) ) ) / 1000 );
+		}
+		return Long.parseLong( delay );
+	}
+
+	/**
+	 * The latency histogram of the destination of the request URI (for
+	 * services, the service).
+	 * 
+	 * @return The latency histogram or null
+	 */
+	private LatencyHistogram getLatencyHistogram()
+	{
+		final URI uri = URI.create( getRequestUri() );
+		return clientHelper.getLatencyHistogram( uri.getScheme() + "://" + uri.getHost() + ":" + HttpClient.normalizePort( uri.getScheme(), uri.getPort() ) );
+	}
+
+	/**
+	 * Creates a copy of the HTTP request (without an entity) for hedging and
+	 * retries. For services, the copy may go to another endpoint.
+	 * 
+	 * @return The copy
+	 */
+	private org.eclipse.jetty.client.api.Request copyHttpRequest()
+	{
+		final org.eclipse.jetty.client.api.Request copy = newJettyRequest().method( getMethod() );
+		copyRequestHeaders( copy );
+
+		// Conditions added by the cache
+		final HttpFields headers = getHttpRequest().getHeaders();
+		for( HttpHeader header : new HttpHeader[]
+		{
+			HttpHeader.IF_NONE_MATCH, HttpHeader.IF_MODIFIED_SINCE
+		} )
+		{
+			final String value = headers.get( header );
+			if( ( value != null ) && ( copy.getHeaders().get( header ) == null ) )
+				copy.header( header, value );
+		}
+
+		return copy;
+	}
+
+	/**
+	 * The key for coalescing identical requests: the method, the URI and the
+	 * configured headers. Only safe requests without an entity are coalesced.
+	 * 
+	 * @param request
+	 *        The high-level request.
+	 * @return The key or null if the request is not to be coalesced.
+	 * @see JettyHttpClientHelper#getCoalesceHeaders()
+	 */
+	private String getCoalescingKey( Request request )
+	{
+		if( clientHelper.getRequestCoalescer() == null )
+			return null;
+
+		final String method = getMethod();
+		if( !HttpMethod.GET.is( method ) && !HttpMethod.HEAD.is( method ) )
+			return null;
+		final Representation entity = request.getEntity();
+		if( ( entity != null ) && entity.isAvailable() )
+			return null;
+
+		final StringBuilder key = new StringBuilder( method ).append( ' ' ).append( getRequestUri() );
+		for( String name : clientHelper.getCoalesceHeaders() )
+		{
+			final String value = getRequestHeaders().getValues( name );
+			if( value != null )
+				key.append( '\n' ).append( name ).append( ": " ).append( value );
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Sets the request entity and headers.
+	 * 
+	 * @param request
+	 *        The high-level request.
+	 * @throws IOException
+	 *         In case of an I/O error
+	 */
+	private void prepareRequest( Request request ) throws IOException
+	{
+		final Representation entity = request.getEntity();
+
+		// Request entity (unless it is already deferred)
+		if( ( entity != null ) && ( deferredContentProvider == null ) )
+		{
+			if( ( entity instanceof OutputRepresentation ) || ( entity instanceof WriterRepresentation ) )
+			{
+				// Entities that are produced by writing are written into
+				// the request while it is sent
+				createDeferredContentProvider( entity.getAvailableSize() );
+				writeRequestEntity = true;
+			}
+			else
+				getHttpRequest().content( createContentProvider( entity ) );
+		}
+
+		// Set the request headers (Jetty sets Content-Length from the content
+		// provider)
+		copyRequestHeaders( getHttpRequest() );
+	}
+
+	/**
+	 * Copies the request headers to a Jetty request, except for
+	 * "Content-Length".
+	 * 
+	 * @param jettyRequest
+	 *        The Jetty request
+	 */
+	private void copyRequestHeaders( org.eclipse.jetty.client.api.Request jettyRequest )
+	{
+		for( Header header : getRequestHeaders() )
+		{
+			final String name = header.getName();
+			if( !name.equals( HeaderConstants.HEADER_CONTENT_LENGTH ) )
+				jettyRequest.header( name, header.getValue() );
+		}
+	}
+
+	/**
+	 * Creates a content provider for a request entity. Files are sent from
+	 * their channel, small entities of known size from a single buffer, and
+	 * other entities are streamed. The content length is provided whenever the
+	 * size is known, so that the request is not chunked.
+	 * 
+	 * @param entity
+	 *        The request entity
+	 * @return A content provider
+	 * @throws IOException
+	 *         In case of an I/O error
+	 */
+	private ContentProvider createContentProvider( Representation entity ) throws IOException
+	{
+		final long size = entity.getAvailableSize();
+
+		if( ( entity instanceof FileRepresentation ) && ( entity.getRange() == null ) && ( size == ( (FileRepresentation) entity ).getFile().length() ) )
+			return new PathContentProvider( ( (FileRepresentation) entity ).getFile().toPath(), clientHelper.getRequestBufferSize() );
+
+		final InputStream stream = entity.getStream();
+		if( stream == null )
+			// Empty entities may have no stream
+			return new ByteBufferContentProvider( ByteBuffer.allocate( 0 ) );
+
+		if( ( size >= 0 ) && ( size <= clientHelper.getMaxBufferedRequestLength() ) )
+		{
+			final byte[] content = new byte[(int) size];
+			try
+			{
+				int offset = 0;
+				while( offset < content.length )
+				{
+					final int read = stream.read( content, offset, content.length - offset );
+					if( read == -1 )
+						throw new EOFException( "Request entity is shorter than its size" );
+					offset += read;
+				}
+			}
+			finally
+			{
+				stream.close();
+			}
+			return new ByteBufferContentProvider( ByteBuffer.wrap( content ) );
+		}
+
+		return new InputStreamContentProvider( stream, clientHelper.getRequestBufferSize() )
+		{
+			@Override
+			public long getLength()
+			{
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * Writes the request entity into the deferred request entity, if the
+	 * entity is produced by writing. Must be called after the request is sent.
+	 * 
+	 * @param request
+	 *        The high-level request.
+	 * @throws IOException
+	 *         In case of an I/O error
+	 */
+	private void writeRequestEntity( Request request ) throws IOException
+	{
+		if( writeRequestEntity )
+		{
+			final DeferredRequestEntity deferredRequestEntity = getDeferredRequestEntity();
+			try
+			{
+				request.getEntity().write( deferredRequestEntity );
+			}
+			finally
+			{
+				deferredRequestEntity.close();
+			}
+		}
+	}
+
+	/**
+	 * Writes the request entity into the deferred request entity on the Jetty
+	 * HTTP client's executor, if the entity is produced by writing, so that the
+	 * calling thread does not block while Jetty consumes it. Must be called
+	 * after the request is sent.
+	 * 
+	 * @param request
+	 *        The high-level request.
+	 */
+	private void writeRequestEntityAsync( final Request request )
+	{
+		if( !writeRequestEntity )
+			return;
+
+		try
+		{
+			httpClient.getExecutor().execute( () ->
+			{
+				try
+				{
+					writeRequestEntity( request );
+				}
+				catch( IOException e )
+				{
+					clientHelper.getLogger().log( Level.WARNING, "An error occurred while writing the request entity.", e );
+					abortHttpRequest( e );
+				}
+			} );
+		}
+		catch( RejectedExecutionException e )
+		{
+			abortHttpRequest( e );
+		}
+	}
+
+	/**
+	 * Returns the deferred content provider, creating it and setting it as the
+	 * request content if necessary.
+	 * 
+	 * @return The deferred content provider.
+	 */
+	private synchronized DeferredContentProvider getDeferredContentProvider()
+	{
+		if( deferredContentProvider == null )
+			createDeferredContentProvider( -1 );
+		return deferredContentProvider;
+	}
+
+	/**
+	 * Returns the deferred request entity, creating it if necessary.
+	 * 
+	 * @return The deferred request entity.
+	 */
+	private synchronized DeferredRequestEntity getDeferredRequestEntity()
+	{
+		if( deferredRequestEntity == null )
+			deferredRequestEntity = new DeferredRequestEntity( getDeferredContentProvider(), clientHelper.getRequestBufferSize(), clientHelper.getTimeout() );
+		return deferredRequestEntity;
+	}
+
+	/**
+	 * Creates the deferred content provider and sets it as the request
+	 * content.
+	 * 
+	 * @param length
+	 *        The content length or -1 if unknown
+	 */
+	private synchronized void createDeferredContentProvider( final long length )
+	{
+		deferredContentProvider = new DeferredContentProvider()
+		{
+			@Override
+			public long getLength()
+			{
+				return length;
+			}
+		};
+		getHttpRequest().content( deferredContentProvider );
+	}
+
+	/**
+	 * Calls the request's "onSent" and then the callback.
+	 * 
+	 * @param request
+	 *        The high-level request.
+	 * @param response
+	 *        The high-level response.
+	 * @param callback
+	 *        The callback or null.
+	 */
+	private static void onSent( Request request, Response response, Uniform callback )
+	{
 		final Uniform getOnSent = request.getOnSent();
 		if( getOnSent != null )
 			getOnSent.handle( request, response );
@@ -285,26 +1517,72 @@ public class JettyClientCall extends ClientCall
 			callback.handle( request, response );
 	}
 
+	/**
+	 * The number of latency samples needed before hedging by percentile.
+	 */
+	private static final long MIN_HEDGING_SAMPLES = 100;
+
 	/**
 	 * The associated HTTP client.
 	 */
 	private final JettyHttpClientHelper clientHelper;
 
 	/**
-	 * The wrapped HTTP request.
+	 * The wrapped Jetty HTTP client.
+	 */
+	private final HttpClient httpClient;
+
+	/**
+	 * The wrapped HTTP request, created lazily.
+	 */
+	private HttpRequest httpRequest;
+
+	/**
+	 * The exchange that hedges and retries the HTTP request, if any.
 	 */
-	private final HttpRequest httpRequest;
+	private ResilientExchange resilientExchange;
 
 	/**
 	 * The wrapped input stream response listener.
 	 */
 	private volatile InputStreamResponseListener inputStreamResponseListener;
 
+	/**
+	 * The wrapped channel response listener.
+	 */
+	private volatile ChannelResponseListener channelResponseListener;
+
 	/**
 	 * The wrapped HTTP response.
 	 */
 	private volatile HttpResponse httpResponse;
 
+	/**
+	 * The deferred content provider for request entities sent while they are
+	 * written.
+	 */
+	private volatile DeferredContentProvider deferredContentProvider;
+
+	/**
+	 * The blocking writer for the deferred content provider.
+	 */
+	private volatile DeferredRequestEntity deferredRequestEntity;
+
+	/**
+	 * Whether the request entity is written into the deferred request entity.
+	 */
+	private volatile boolean writeRequestEntity;
+
+	/**
+	 * The response buffered by a coalesced or cached request.
+	 */
+	private volatile BufferedResponse bufferedResponse;
+
+	/**
+	 * The failure status of an asynchronous request.
+	 */
+	private volatile Status failureStatus;
+
 	/**
 	 * Indicates if the response headers were added.
 	 */
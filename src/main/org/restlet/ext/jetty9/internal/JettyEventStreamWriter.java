@@ -0,0 +1,243 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+import org.restlet.ext.jetty9.EventStreamRepresentation;
+
+/**
+ * Writes a Server-Sent Events stream asynchronously, without holding a thread
+ * while the stream is idle.
+ * <p>
+ * Events queued while the output is busy are coalesced into a single write,
+ * and the output is flushed once the queue is drained.
+ * 
+ * @author Tal Liron
+ */
+public class JettyEventStreamWriter implements Runnable, WriteListener, AsyncListener
+{
+	/**
+	 * Constructor.
+	 * 
+	 * @param eventStream
+	 *        The event stream
+	 * @param asyncContext
+	 *        The started async context
+	 * @param outputStream
+	 *        The response output stream
+	 * @param coalesceSize
+	 *        The maximum number of bytes coalesced into a single write
+	 * @param logger
+	 *        The logger
+	 */
+	public JettyEventStreamWriter( EventStreamRepresentation eventStream, AsyncContext asyncContext, ServletOutputStream outputStream, int coalesceSize, Logger logger )
+	{
+		this.eventStream = eventStream;
+		this.asyncContext = asyncContext;
+		this.outputStream = outputStream;
+		this.coalesceSize = coalesceSize;
+		this.logger = logger;
+	}
+
+	/**
+	 * Starts writing. The response head is flushed immediately, so that the
+	 * client knows the stream is open.
+	 */
+	public void start()
+	{
+		asyncContext.addListener( this );
+		outputStream.setWriteListener( this );
+		eventStream.setListener( this );
+	}
+
+	/**
+	 * Called when events are queued or the stream is closed.
+	 */
+	public void run()
+	{
+		write();
+	}
+
+	public void onWritePossible() throws IOException
+	{
+		write();
+	}
+
+	public void onError( Throwable x )
+	{
+		logger.log( Level.FINE, "Event stream failed", x );
+		complete();
+	}
+
+	public void onComplete( AsyncEvent event ) throws IOException
+	{
+		completed = true;
+		eventStream.close();
+	}
+
+	public void onTimeout( AsyncEvent event ) throws IOException
+	{
+		complete();
+	}
+
+	public void onError( AsyncEvent event ) throws IOException
+	{
+		onError( event.getThrowable() );
+	}
+
+	public void onStartAsync( AsyncEvent event ) throws IOException
+	{
+	}
+
+	/**
+	 * Writes queued events while the output is ready. Only one thread writes
+	 * at a time; a thread that finds another one writing leaves the work to
+	 * it.
+	 */
+	private void write()
+	{
+		pending.set( true );
+		while( !completed && pending.get() && writing.compareAndSet( false, true ) )
+		{
+			// If the output is not ready, Jetty will call onWritePossible
+			pending.set( false );
+			try
+			{
+				drain();
+			}
+			catch( Throwable x )
+			{
+				onError( x );
+			}
+			finally
+			{
+				writing.set( false );
+			}
+		}
+	}
+
+	/**
+	 * Writes and flushes queued events, until the queue is drained or the
+	 * output is not ready. Completes the response if the stream is closed and
+	 * drained.
+	 * 
+	 * @throws IOException
+	 *         In case of an I/O error
+	 */
+	private void drain() throws IOException
+	{
+		while( outputStream.isReady() )
+		{
+			final byte[] bytes = coalesce();
+			if( bytes != null )
+			{
+				outputStream.write( bytes );
+				flushPending = true;
+			}
+			else if( flushPending )
+			{
+				flushPending = false;
+				outputStream.flush();
+			}
+			else
+			{
+				if( eventStream.isClosed() )
+					complete();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Removes queued events, coalescing them into a single array.
+	 * 
+	 * @return The events or null if none are queued
+	 */
+	private byte[] coalesce()
+	{
+		final byte[] first = eventStream.poll();
+		if( first == null )
+			return null;
+
+		byte[] next = eventStream.poll();
+		if( next == null )
+			return first;
+
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream( Math.max( coalesceSize, first.length + next.length ) );
+		buffer.write( first, 0, first.length );
+		do
+		{
+			buffer.write( next, 0, next.length );
+		}
+		while( ( buffer.size() < coalesceSize ) && ( ( next = eventStream.poll() ) != null ) );
+
+		return buffer.toByteArray();
+	}
+
+	/**
+	 * Completes the response.
+	 */
+	private void complete()
+	{
+		if( completed )
+			return;
+		completed = true;
+		eventStream.close();
+		try
+		{
+			asyncContext.complete();
+		}
+		catch( IllegalStateException x )
+		{
+			// Already completed
+		}
+	}
+
+	/** The event stream. */
+	private final EventStreamRepresentation eventStream;
+
+	/** The started async context. */
+	private final AsyncContext asyncContext;
+
+	/** The response output stream. */
+	private final ServletOutputStream outputStream;
+
+	/** The maximum number of bytes coalesced into a single write. */
+	private final int coalesceSize;
+
+	/** The logger. */
+	private final Logger logger;
+
+	/** Whether a thread is writing. */
+	private final AtomicBoolean writing = new AtomicBoolean();
+
+	/** Whether there may be work for the writing thread. */
+	private final AtomicBoolean pending = new AtomicBoolean();
+
+	/** Whether written events need to be flushed (initially the head). */
+	private boolean flushPending = true;
+
+	/** Whether the response is completed. */
+	private volatile boolean completed;
+}
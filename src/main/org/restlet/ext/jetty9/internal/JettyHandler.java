@@ -29,6 +29,12 @@ import org.restlet.ext.jetty9.JettyServerHelper;
  * Jetty handler that knows how to convert Jetty calls into Restlet calls. This
  * handler isn't a full server, if you use it you need to manually setup the
  * Jetty server connector and add this handler to a Jetty server.
+ * <p>
+ * Set the Restlet server's "handlerOnly" parameter so that starting the
+ * handler does not also start a Jetty server of its own: calls then run on
+ * the host server's threads and buffers. Responses that are not
+ * auto-committed are supported by suspending the Jetty request until the
+ * Restlet call is completed.
  * 
  * @author Valdis Rigdon
  * @author Jerome Louvel
@@ -62,6 +68,8 @@ public class JettyHandler extends AbstractHandler
 		else
 			helper = new JettyHttpServerHelper( server );
 		ensureHostHeader = helper.getEnsureHostHeader();
+		pushPreloadLinks = helper.getHttp2PushPreloadLinks();
+		asyncTimeout = helper.getAsyncTimeout();
 	}
 
 	/**
@@ -82,7 +90,11 @@ public class JettyHandler extends AbstractHandler
 		if( request.isHandled() )
 			return;
 
-		helper.handle( new JettyServerCall( helper.getHelped(), request.getHttpChannel(), ensureHostHeader ) );
+		final JettyServerCall call = new JettyServerCall( helper.getHelped(), request.getHttpChannel(), ensureHostHeader, pushPreloadLinks );
+		helper.handle( call );
+
+		// Release this thread if the response will be committed later
+		call.suspend( asyncTimeout );
 
 		request.setHandled( true );
 	}
@@ -106,4 +118,10 @@ public class JettyHandler extends AbstractHandler
 
 	/** Whether to generate a Host header if not provided by the request. */
 	private final boolean ensureHostHeader;
+
+	/** Whether to push resources listed in "Link: rel=preload" headers. */
+	private final boolean pushPreloadLinks;
+
+	/** The time in milliseconds to wait for a response committed later. */
+	private final long asyncTimeout;
 }
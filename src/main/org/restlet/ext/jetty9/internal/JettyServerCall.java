@@ -16,13 +16,22 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.cert.Certificate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.io.EofException;
 import org.eclipse.jetty.server.HttpChannel;
+import org.eclipse.jetty.server.PushBuilder;
 import org.eclipse.jetty.server.Request;
 import org.restlet.Response;
 import org.restlet.Server;
@@ -31,6 +40,7 @@ import org.restlet.data.Protocol;
 import org.restlet.data.Status;
 import org.restlet.engine.adapter.ServerCall;
 import org.restlet.engine.header.HeaderConstants;
+import org.restlet.ext.jetty9.EventStreamRepresentation;
 import org.restlet.util.Series;
 
 /**
@@ -50,26 +60,52 @@ public class JettyServerCall extends ServerCall
 	 *        The wrapped Jetty HTTP channel.
 	 * @param ensureHostHeader
 	 *        Whether to generate a Host header if not provided by the request
+	 * @param pushPreloadLinks
+	 *        Whether to push resources listed in "Link: rel=preload" response
+	 *        headers
 	 */
-	public JettyServerCall( Server server, HttpChannel channel, boolean ensureHostHeader )
+	public JettyServerCall( Server server, HttpChannel channel, boolean ensureHostHeader, boolean pushPreloadLinks )
 	{
 		super( server );
 		this.channel = channel;
 		this.ensureHostHeader = ensureHostHeader;
+		this.pushPreloadLinks = pushPreloadLinks;
 	}
 
 	/**
-	 * Closes the end point.
+	 * Aborts the call. For HTTP/2 only this call's stream is reset, for
+	 * HTTP/1.1 the end point is closed.
 	 */
 	public boolean abort()
 	{
-		getChannel().getEndPoint().close();
+		abort( new IOException( "Call aborted" ) );
 		return true;
 	}
 
+	/**
+	 * Aborts the call. For HTTP/2 only this call's stream is reset
+	 * (RST_STREAM), so that the other streams multiplexed on the same
+	 * connection are unaffected. For HTTP/1.1 the end point is closed.
+	 * 
+	 * @param failure
+	 *        The reason for aborting
+	 */
+	public void abort( Throwable failure )
+	{
+		final HttpChannel channel = getChannel();
+		if( channel.getRequest().getHttpVersion() == HttpVersion.HTTP_2 )
+			channel.abort( failure );
+		else
+			channel.getEndPoint().close();
+	}
+
 	@Override
 	public void complete()
 	{
+		// Event streams are completed asynchronously
+		if( eventStreamStarted )
+			return;
+
 		final org.eclipse.jetty.server.Response response = getChannel().getResponse();
 
 		// Flush the response
@@ -91,6 +127,16 @@ public class JettyServerCall extends ServerCall
 		{
 			getLogger().log( Level.FINE, "Unable to complete the response", e );
 		}
+
+		// Resume a suspended request
+		final AsyncContext asyncContext;
+		synchronized( this )
+		{
+			asyncContext = completed ? null : this.asyncContext;
+			completed = true;
+		}
+		if( asyncContext != null )
+			asyncContext.complete();
 	}
 
 	@Override
@@ -285,6 +331,43 @@ public class JettyServerCall extends ServerCall
 		return getChannel().getRequest().isSecure();
 	}
 
+	/**
+	 * Whether server push is supported for this call. Push is only supported
+	 * by HTTP/2, if the client has not disabled it, and never for calls that
+	 * are themselves pushed.
+	 * 
+	 * @return True if server push is supported.
+	 */
+	public boolean isPushSupported()
+	{
+		return getChannel().getRequest().isPushSupported();
+	}
+
+	/**
+	 * Pushes a resource to the client over the same HTTP/2 connection. The
+	 * pushed request copies the headers of this request, and is handled by the
+	 * server like any other request.
+	 * <p>
+	 * Must be called before the response is committed.
+	 * 
+	 * @param path
+	 *        The path of the resource to push, either absolute or relative to
+	 *        the path of this request; may include a query
+	 * @return True if the push was initiated, false if push is not supported
+	 */
+	public boolean push( String path )
+	{
+		if( !isPushSupported() )
+			return false;
+
+		final PushBuilder pushBuilder = getChannel().getRequest().getPushBuilder();
+		if( pushBuilder == null )
+			return false;
+
+		pushBuilder.path( path ).push();
+		return true;
+	}
+
 	@Override
 	public boolean isConnectionBroken( Throwable exception )
 	{
@@ -296,6 +379,10 @@ public class JettyServerCall extends ServerCall
 	{
 		final org.eclipse.jetty.server.Response jettyResponse = getChannel().getResponse();
 
+		// Push promises must precede the response
+		if( pushPreloadLinks && isPushSupported() )
+			pushPreloadLinks();
+
 		// Add call headers
 		for( Header header : getResponseHeaders() )
 			jettyResponse.addHeader( header.getName(), header.getValue() );
@@ -314,6 +401,12 @@ public class JettyServerCall extends ServerCall
 				getLogger().log( Level.WARNING, "Unable to set the response error status", e );
 			}
 		}
+		else if( response.getEntity() instanceof EventStreamRepresentation )
+		{
+			// Write the event stream asynchronously, releasing this thread
+			jettyResponse.setStatus( getStatusCode() );
+			startEventStream( (EventStreamRepresentation) response.getEntity() );
+		}
 		else
 		{
 			// Send the response entity
@@ -322,12 +415,228 @@ public class JettyServerCall extends ServerCall
 		}
 	}
 
+	/**
+	 * Suspends the Jetty request if the response has not been completed yet,
+	 * which is the case when the application has disabled auto-committing in
+	 * order to commit the response later from another thread. The Jetty
+	 * handler can then return, releasing its thread, without the Jetty channel
+	 * completing the response. The request is resumed when the call is
+	 * completed, or when the timeout passes: a "500 Internal Server Error" is
+	 * then sent, or the call is aborted if the response was already
+	 * committed.
+	 * <p>
+	 * Must be called by the thread that handled the call, after handling it.
+	 * 
+	 * @param timeout
+	 *        The timeout in milliseconds, or 0 to wait forever
+	 * @return True if suspended
+	 */
+	public synchronized boolean suspend( long timeout )
+	{
+		if( completed || eventStreamStarted )
+			return false;
+
+		final AsyncContext asyncContext = getChannel().getRequest().startAsync();
+		asyncContext.setTimeout( timeout );
+		asyncContext.addListener( new AsyncListener()
+		{
+			public void onTimeout( AsyncEvent event ) throws IOException
+			{
+				timedOut();
+			}
+
+			public void onComplete( AsyncEvent event ) throws IOException
+			{
+			}
+
+			public void onError( AsyncEvent event ) throws IOException
+			{
+			}
+
+			public void onStartAsync( AsyncEvent event ) throws IOException
+			{
+			}
+		} );
+		this.asyncContext = asyncContext;
+		return true;
+	}
+
+	/**
+	 * Completes a suspended request whose response was not completed in time.
+	 */
+	private void timedOut()
+	{
+		final AsyncContext asyncContext;
+		synchronized( this )
+		{
+			if( completed )
+				return;
+			completed = true;
+			asyncContext = this.asyncContext;
+		}
+
+		final org.eclipse.jetty.server.Response response = getChannel().getResponse();
+		if( response.isCommitted() )
+		{
+			getLogger().warning( "The response was not completed in time, aborting the call" );
+			abort( new TimeoutException( "Response not completed in time" ) );
+		}
+		else
+		{
+			getLogger().warning( "The response was not committed in time, sending an internal server error" );
+			response.setStatus( HttpStatus.INTERNAL_SERVER_ERROR_500 );
+			response.setContentLength( 0 );
+		}
+		asyncContext.complete();
+	}
+
+	/**
+	 * Starts writing an event stream asynchronously. From this point on, the
+	 * call holds no thread while the stream is idle.
+	 * 
+	 * @param eventStream
+	 *        The event stream
+	 * @throws IOException
+	 *         In case of an I/O error
+	 */
+	private void startEventStream( EventStreamRepresentation eventStream ) throws IOException
+	{
+		final Request request = getChannel().getRequest();
+		final org.eclipse.jetty.server.Response jettyResponse = getChannel().getResponse();
+
+		final AsyncContext asyncContext = request.startAsync();
+		asyncContext.setTimeout( 0 );
+		request.setHandled( true );
+		eventStreamStarted = true;
+
+		new JettyEventStreamWriter( eventStream, asyncContext, jettyResponse.getOutputStream(), jettyResponse.getBufferSize(), getLogger() ).start();
+	}
+
+	/**
+	 * Pushes all same-origin resources listed in "Link: rel=preload" response
+	 * headers, unless they have the "nopush" attribute.
+	 */
+	private void pushPreloadLinks()
+	{
+		for( Header header : getResponseHeaders() )
+		{
+			if( !header.getName().equalsIgnoreCase( HeaderConstants.HEADER_LINK ) )
+				continue;
+
+			for( String link : splitLinks( header.getValue() ) )
+			{
+				final String path = getPreloadPath( link );
+				if( path != null )
+				{
+					try
+					{
+						push( path );
+					}
+					catch( RuntimeException e )
+					{
+						getLogger().log( Level.FINE, "Unable to push " + path, e );
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Splits a Link header value into link values, ignoring commas within the
+	 * URI reference or within quoted strings.
+	 * 
+	 * @param value
+	 *        The Link header value
+	 * @return The link values
+	 */
+	private static List<String> splitLinks( String value )
+	{
+		final List<String> links = new ArrayList<String>();
+		boolean inUri = false;
+		boolean inQuotes = false;
+		int start = 0;
+		for( int i = 0, length = value.length(); i < length; i++ )
+		{
+			final char c = value.charAt( i );
+			if( inQuotes )
+			{
+				if( c == '"' )
+					inQuotes = false;
+			}
+			else if( c == '"' )
+				inQuotes = true;
+			else if( c == '<' )
+				inUri = true;
+			else if( c == '>' )
+				inUri = false;
+			else if( ( c == ',' ) && !inUri )
+			{
+				links.add( value.substring( start, i ) );
+				start = i + 1;
+			}
+		}
+		links.add( value.substring( start ) );
+		return links;
+	}
+
+	/**
+	 * Parses a link value, returning its path if it is a same-origin preload
+	 * link that should be pushed.
+	 * 
+	 * @param link
+	 *        The link value, e.g. "&lt;/app.css&gt;; rel=preload; as=style"
+	 * @return The path or null
+	 */
+	private static String getPreloadPath( String link )
+	{
+		final String[] parts = link.split( ";" );
+		final String uri = parts[0].trim();
+		if( !uri.startsWith( "<" ) || !uri.endsWith( ">" ) )
+			return null;
+		final String path = uri.substring( 1, uri.length() - 1 ).trim();
+
+		// Only same-origin resources can be pushed
+		if( path.isEmpty() || path.startsWith( "//" ) || ( path.indexOf( "://" ) != -1 ) )
+			return null;
+
+		boolean preload = false;
+		for( int i = 1; i < parts.length; i++ )
+		{
+			final String parameter = parts[i].trim();
+			final int equals = parameter.indexOf( '=' );
+			final String name = ( equals == -1 ? parameter : parameter.substring( 0, equals ) ).trim();
+			if( name.equalsIgnoreCase( "nopush" ) )
+				return null;
+			if( name.equalsIgnoreCase( "rel" ) && ( equals != -1 ) )
+			{
+				final String rel = parameter.substring( equals + 1 ).trim().replace( "\"", "" );
+				for( String relation : rel.split( "\\s+" ) )
+					if( relation.equalsIgnoreCase( "preload" ) )
+						preload = true;
+			}
+		}
+
+		return preload ? path : null;
+	}
+
 	/** The wrapped Jetty HTTP channel. */
 	private final HttpChannel channel;
 
 	/** Whether to generate a Host header if not provided by the request. */
 	private final boolean ensureHostHeader;
 
+	/** Whether to push resources listed in "Link: rel=preload" headers. */
+	private final boolean pushPreloadLinks;
+
+	/** Indicates if an event stream was started. */
+	private volatile boolean eventStreamStarted;
+
+	/** Indicates if the call was completed. */
+	private boolean completed;
+
+	/** The async context of a suspended request. */
+	private AsyncContext asyncContext;
+
 	/** Indicates if the request headers were parsed and added. */
 	private volatile boolean requestHeadersAdded;
 }
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram with log-linear buckets (8 per power of two, so
+ * values are accurate to within 12.5%), in microseconds.
+ * <p>
+ * Once the window is full all counts are halved, so that percentiles follow
+ * recent latencies.
+ * 
+ * @author Tal Liron
+ */
+public class LatencyHistogram
+{
+	/**
+	 * Constructor.
+	 * 
+	 * @param window
+	 *        The number of samples after which counts are halved
+	 */
+	public LatencyHistogram( long window )
+	{
+		this.window = window;
+	}
+
+	/**
+	 * Records a latency.
+	 * 
+	 * @param nanos
+	 *        The latency in nanoseconds
+	 */
+	public void record( long nanos )
+	{
+		buckets.incrementAndGet( index( Math.max( 0, TimeUnit.NANOSECONDS.toMicros( nanos ) ) ) );
+		if( count.incrementAndGet() >= window )
+			decay();
+	}
+
+	/**
+	 * The number of samples in the window.
+	 * 
+	 * @return The number of samples.
+	 */
+	public long getCount()
+	{
+		return count.get();
+	}
+
+	/**
+	 * The latency at a percentile.
+	 * 
+	 * @param percentile
+	 *        The percentile (0 to 100)
+	 * @return The latency in microseconds or -1 if there are no samples
+	 */
+	public long getPercentile( double percentile )
+	{
+		long total = 0;
+		final long[] counts = new long[BUCKETS];
+		for( int i = 0; i < BUCKETS; i++ )
+			total += counts[i] = buckets.get( i );
+		if( total == 0 )
+			return -1;
+
+		final long rank = (long) Math.ceil( total * percentile / 100.0 );
+		long cumulative = 0;
+		for( int i = 0; i < BUCKETS; i++ )
+		{
+			cumulative += counts[i];
+			if( ( cumulative >= rank ) && ( counts[i] > 0 ) )
+				return upper( i );
+		}
+		return upper( BUCKETS - 1 );
+	}
+
+	// //////////////////////////////////////////////////////////////////////////
+	// Private
+
+	/** The number of buckets. */
+	private static final int BUCKETS = 512;
+
+	/**
+	 * The bucket index of a value.
+	 * 
+	 * @param value
+	 *        The value
+	 * @return The bucket index
+	 */
+	private static int index( long value )
+	{
+		if( value < 16 )
+			return (int) value;
+		final int shift = 60 - Long.numberOfLeadingZeros( value );
+		return Math.min( BUCKETS - 1, ( shift + 1 ) * 8 + (int) ( ( value >> shift ) & 7 ) );
+	}
+
+	/**
+	 * The highest value of a bucket.
+	 * 
+	 * @param index
+	 *        The bucket index
+	 * @return The highest value
+	 */
+	private static long upper( int index )
+	{
+		if( index < 16 )
+			return index;
+		final int shift = index / 8 - 1;
+		return ( ( 8L + ( index % 8 ) ) << shift ) + ( 1L << shift ) - 1;
+	}
+
+	/**
+	 * Halves all counts.
+	 */
+	private void decay()
+	{
+		synchronized( this )
+		{
+			if( count.get() < window )
+				return;
+			long total = 0;
+			for( int i = 0; i < BUCKETS; i++ )
+			{
+				final long halved = buckets.get( i ) / 2;
+				buckets.set( i, halved );
+				total += halved;
+			}
+			count.set( total );
+		}
+	}
+
+	/** The number of samples after which counts are halved. */
+	private final long window;
+
+	/** The counts by bucket. */
+	private final AtomicLongArray buckets = new AtomicLongArray( BUCKETS );
+
+	/** The number of samples. */
+	private final AtomicLong count = new AtomicLong();
+}
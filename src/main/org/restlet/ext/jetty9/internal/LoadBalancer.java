@@ -0,0 +1,354 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Balances requests to a logical service among its endpoints.
+ * <p>
+ * Endpoints are selected by round-robin, by least outstanding requests, or by
+ * the better of two random choices ("power of two choices"). Endpoints that
+ * fail too many consecutive requests (with a connection failure, a 5xx status
+ * or, optionally, a response that is too slow) are passively ejected for a
+ * while, but never more than a maximum percentage of them.
+ * 
+ * @author Tal Liron
+ */
+public class LoadBalancer
+{
+	/**
+	 * Constructor.
+	 * 
+	 * @param service
+	 *        The service name
+	 * @param endpoints
+	 *        The endpoints, each in the form "host:port" or "host"
+	 * @param strategy
+	 *        "roundRobin", "leastOutstanding" or "powerOfTwoChoices"
+	 * @param consecutiveFailures
+	 *        The number of consecutive failures after which an endpoint is
+	 *        ejected
+	 * @param ejectionTime
+	 *        How long in milliseconds an endpoint is ejected
+	 * @param maxLatency
+	 *        The latency in milliseconds above which a response counts as a
+	 *        failure, or 0 to ignore latency
+	 * @param maxEjectionPercent
+	 *        The max percentage of endpoints that can be ejected at once
+	 * @param logger
+	 *        The logger
+	 */
+	public LoadBalancer( String service, String[] endpoints, String strategy, int consecutiveFailures, long ejectionTime, long maxLatency, int maxEjectionPercent, Logger logger )
+	{
+		if( !"roundRobin".equalsIgnoreCase( strategy ) && !"leastOutstanding".equalsIgnoreCase( strategy ) && !"powerOfTwoChoices".equalsIgnoreCase( strategy ) )
+			throw new IllegalArgumentException( "Unsupported loadBalancing: " + strategy );
+		if( endpoints.length == 0 )
+			throw new IllegalArgumentException( "Service has no endpoints: " + service );
+
+		this.service = service;
+		this.strategy = strategy;
+		this.consecutiveFailures = consecutiveFailures;
+		this.ejectionTime = ejectionTime;
+		this.maxLatency = maxLatency;
+		this.maxEjected = endpoints.length * maxEjectionPercent / 100;
+		this.logger = logger;
+		this.endpoints = new Endpoint[endpoints.length];
+		for( int i = 0; i < endpoints.length; i++ )
+			this.endpoints[i] = new Endpoint( endpoints[i].trim() );
+	}
+
+	/**
+	 * The service name.
+	 * 
+	 * @return The service name.
+	 */
+	public String getService()
+	{
+		return service;
+	}
+
+	/**
+	 * Selects an endpoint for a request. The caller must call
+	 * {@link Endpoint#acquire()} when the request is sent, and then
+	 * {@link Endpoint#release(boolean, long)} when it completes.
+	 * 
+	 * @return The endpoint
+	 */
+	public Endpoint select()
+	{
+		final long now = System.currentTimeMillis();
+		final List<Endpoint> available = new ArrayList<Endpoint>( endpoints.length );
+		for( Endpoint endpoint : endpoints )
+			if( !endpoint.isEjected( now ) )
+				available.add( endpoint );
+
+		// If all endpoints are ejected, ejection is ignored
+		final List<Endpoint> candidates;
+		if( available.isEmpty() )
+		{
+			candidates = new ArrayList<Endpoint>( endpoints.length );
+			for( Endpoint endpoint : endpoints )
+				candidates.add( endpoint );
+		}
+		else
+			candidates = available;
+
+		final int size = candidates.size();
+		final Endpoint selected;
+		if( size == 1 )
+			selected = candidates.get( 0 );
+		else if( "roundRobin".equalsIgnoreCase( strategy ) )
+			selected = candidates.get( Math.floorMod( next.getAndIncrement(), size ) );
+		else if( "leastOutstanding".equalsIgnoreCase( strategy ) )
+		{
+			// Ties are broken by rotating the starting point
+			final int start = Math.floorMod( next.getAndIncrement(), size );
+			Endpoint least = null;
+			for( int i = 0; i < size; i++ )
+			{
+				final Endpoint endpoint = candidates.get( ( start + i ) % size );
+				if( ( least == null ) || ( endpoint.getOutstanding() < least.getOutstanding() ) )
+					least = endpoint;
+			}
+			selected = least;
+		}
+		else
+		{
+			final ThreadLocalRandom random = ThreadLocalRandom.current();
+			final int first = random.nextInt( size );
+			final int second = ( first + 1 + random.nextInt( size - 1 ) ) % size;
+			final Endpoint a = candidates.get( first ), b = candidates.get( second );
+			selected = b.getOutstanding() < a.getOutstanding() ? b : a;
+		}
+
+		return selected;
+	}
+
+	/**
+	 * The endpoints.
+	 * 
+	 * @return The endpoints.
+	 */
+	public Endpoint[] getEndpoints()
+	{
+		return endpoints.clone();
+	}
+
+	/**
+	 * An endpoint of the service.
+	 */
+	public class Endpoint
+	{
+		/**
+		 * The host.
+		 * 
+		 * @return The host.
+		 */
+		public String getHost()
+		{
+			return host;
+		}
+
+		/**
+		 * The port.
+		 * 
+		 * @return The port or -1 to use the port of the request URI.
+		 */
+		public int getPort()
+		{
+			return port;
+		}
+
+		/**
+		 * The number of outstanding requests.
+		 * 
+		 * @return The number of outstanding requests.
+		 */
+		public int getOutstanding()
+		{
+			return outstanding.get();
+		}
+
+		/**
+		 * Whether the endpoint is ejected.
+		 * 
+		 * @param now
+		 *        The current time
+		 * @return True if ejected
+		 */
+		public boolean isEjected( long now )
+		{
+			return now < ejectedUntil;
+		}
+
+		/**
+		 * Resolves a request URI for the endpoint, replacing its host and
+		 * (unless the endpoint has none) its port.
+		 * 
+		 * @param uri
+		 *        The request URI
+		 * @return The endpoint's request URI
+		 */
+		public String resolve( URI uri )
+		{
+			try
+			{
+				return new URI( uri.getScheme(), uri.getRawUserInfo(), host, port != -1 ? port : uri.getPort(), null, null, null ).toString() + uri.getRawPath() + ( uri.getRawQuery() != null ? "?" + uri.getRawQuery() : "" );
+			}
+			catch( URISyntaxException x )
+			{
+				throw new IllegalArgumentException( "Invalid endpoint for service " + service + ": " + host, x );
+			}
+		}
+
+		/**
+		 * Counts a request that is sent to the endpoint as outstanding.
+		 */
+		public void acquire()
+		{
+			outstanding.incrementAndGet();
+		}
+
+		/**
+		 * Releases the endpoint after a request that was acquired completes,
+		 * updating its outlier status.
+		 * 
+		 * @param failed
+		 *        Whether the request failed (connection failure or 5xx status)
+		 * @param latency
+		 *        The latency of the request in milliseconds
+		 */
+		public void release( boolean failed, long latency )
+		{
+			outstanding.decrementAndGet();
+
+			if( failed || ( ( maxLatency > 0 ) && ( latency > maxLatency ) ) )
+			{
+				if( failures.incrementAndGet() >= consecutiveFailures )
+					eject();
+			}
+			else
+				failures.set( 0 );
+		}
+
+		@Override
+		public String toString()
+		{
+			return port != -1 ? host + ":" + port : host;
+		}
+
+		// //////////////////////////////////////////////////////////////////////////
+		// Private
+
+		/**
+		 * Constructor.
+		 * 
+		 * @param endpoint
+		 *        The endpoint in the form "host:port" or "host"
+		 */
+		private Endpoint( String endpoint )
+		{
+			// IPv6 literals are in brackets
+			final int colon = endpoint.lastIndexOf( ':' );
+			if( ( colon != -1 ) && ( colon > endpoint.lastIndexOf( ']' ) ) )
+			{
+				host = endpoint.substring( 0, colon );
+				port = Integer.parseInt( endpoint.substring( colon + 1 ) );
+			}
+			else
+			{
+				host = endpoint;
+				port = -1;
+			}
+		}
+
+		/**
+		 * Ejects the endpoint, unless too many endpoints are already ejected.
+		 */
+		private void eject()
+		{
+			synchronized( LoadBalancer.this )
+			{
+				final long now = System.currentTimeMillis();
+				if( isEjected( now ) )
+					return;
+
+				int ejected = 0;
+				for( Endpoint endpoint : endpoints )
+					if( endpoint.isEjected( now ) )
+						ejected++;
+				if( ejected >= maxEjected )
+					return;
+
+				ejectedUntil = now + ejectionTime;
+				failures.set( 0 );
+			}
+
+			if( logger.isLoggable( Level.INFO ) )
+				logger.info( "Ejected endpoint " + this + " of service " + service + " for " + ejectionTime + " ms" );
+		}
+
+		/** The host. */
+		private final String host;
+
+		/** The port or -1. */
+		private final int port;
+
+		/** The number of outstanding requests. */
+		private final AtomicInteger outstanding = new AtomicInteger();
+
+		/** The number of consecutive failures. */
+		private final AtomicInteger failures = new AtomicInteger();
+
+		/** The time until which the endpoint is ejected. */
+		private volatile long ejectedUntil;
+	}
+
+	// //////////////////////////////////////////////////////////////////////////
+	// Private
+
+	/** The service name. */
+	private final String service;
+
+	/** The selection strategy. */
+	private final String strategy;
+
+	/** The number of consecutive failures after which an endpoint is ejected. */
+	private final int consecutiveFailures;
+
+	/** How long in milliseconds an endpoint is ejected. */
+	private final long ejectionTime;
+
+	/** The latency in milliseconds above which a response is a failure. */
+	private final long maxLatency;
+
+	/** The max number of endpoints that can be ejected at once. */
+	private final int maxEjected;
+
+	/** The logger. */
+	private final Logger logger;
+
+	/** The endpoints. */
+	private final Endpoint[] endpoints;
+
+	/** The next index for round-robin. */
+	private final AtomicInteger next = new AtomicInteger();
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces identical concurrent requests ("singleflight"): while a request is
+ * in flight, identical requests wait for its buffered response instead of
+ * being sent upstream.
+ * 
+ * @author Tal Liron
+ */
+public class RequestCoalescer
+{
+	/**
+	 * Joins the in-flight request for a key, or starts one if there is none.
+	 * 
+	 * @param key
+	 *        The request key
+	 * @param sender
+	 *        Sends the request and completes the future it is given; only
+	 *        called if there is no request in flight for the key
+	 * @return The future response, shared by all identical requests
+	 */
+	public CompletableFuture<BufferedResponse> join( final String key, Consumer<CompletableFuture<BufferedResponse>> sender )
+	{
+		final CompletableFuture<BufferedResponse> future = new CompletableFuture<BufferedResponse>();
+		final CompletableFuture<BufferedResponse> existing = inFlight.putIfAbsent( key, future );
+		if( existing != null )
+			return existing;
+
+		// Later requests will start a new flight
+		final CompletableFuture<BufferedResponse> result = future.whenComplete( ( response, failure ) -> inFlight.remove( key, future ) );
+		try
+		{
+			sender.accept( future );
+		}
+		catch( Throwable x )
+		{
+			future.completeExceptionally( x );
+		}
+		return result;
+	}
+
+	/**
+	 * The number of requests in flight.
+	 * 
+	 * @return The number of requests in flight.
+	 */
+	public int getInFlight()
+	{
+		return inFlight.size();
+	}
+
+	/** The in-flight requests by key. */
+	private final Map<String, CompletableFuture<BufferedResponse>> inFlight = new ConcurrentHashMap<String, CompletableFuture<BufferedResponse>>();
+}
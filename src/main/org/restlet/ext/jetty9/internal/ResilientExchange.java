@@ -0,0 +1,482 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * Sends a request, hedging and retrying it until response headers arrive.
+ * <p>
+ * If no response has arrived after the hedging delay, a duplicate request is
+ * sent (to a new connection or, for services, to another endpoint); the first
+ * response wins and the other request is aborted. Failed requests and "502",
+ * "503" and "504" responses are retried with exponential backoff. Hedged
+ * requests and retries are withdrawn from a shared {@link RetryBudget}, and
+ * only requests that can be replayed (idempotent and without an entity)
+ * should be given a copier.
+ * <p>
+ * The winning response is passed on to a new listener as it arrives, so that
+ * its entity is streamed. Only responses with a retryable status are
+ * buffered, in case they are the last answer. The timeout is shared by the
+ * attempts: each attempt gets an equal share of the time left, until its
+ * response headers arrive.
+ * 
+ * @author Tal Liron
+ */
+public class ResilientExchange
+{
+	/**
+	 * Constructor.
+	 * 
+	 * @param copier
+	 *        Creates copies of the request for hedging and retries, or null
+	 *        to do neither
+	 * @param hedgingDelay
+	 *        The hedging delay in milliseconds, or -1 to not hedge
+	 * @param maxRetries
+	 *        The max number of retries
+	 * @param backoff
+	 *        The initial retry backoff in milliseconds
+	 * @param budget
+	 *        The retry budget or null
+	 * @param histogram
+	 *        Records the latency of winning response headers, or null
+	 * @param scheduler
+	 *        The scheduler
+	 * @param timeout
+	 *        The timeout in milliseconds until response headers arrive, shared
+	 *        by the attempts, or 0 for none
+	 * @param maxBufferedLength
+	 *        The max size in bytes of buffered responses with a retryable
+	 *        status
+	 * @param listeners
+	 *        Creates the listener to pass the winning response on to
+	 * @param future
+	 *        The future to complete with the winning listener, once it has
+	 *        received the response headers
+	 */
+	public ResilientExchange( Supplier<Request> copier, long hedgingDelay, int maxRetries, long backoff, RetryBudget budget, LatencyHistogram histogram, Scheduler scheduler, long timeout, int maxBufferedLength, Supplier<Response.Listener> listeners, CompletableFuture<Response.Listener> future )
+	{
+		this.copier = copier;
+		this.hedgingDelay = hedgingDelay;
+		this.maxRetries = maxRetries;
+		this.backoff = backoff;
+		this.budget = budget;
+		this.histogram = histogram;
+		this.scheduler = scheduler;
+		this.timeout = timeout;
+		this.maxBufferedLength = maxBufferedLength;
+		this.listeners = listeners;
+		this.future = future;
+	}
+
+	/**
+	 * Sends the request, and schedules the hedged request if hedging.
+	 * 
+	 * @param request
+	 *        The prepared request
+	 */
+	public void send( Request request )
+	{
+		deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( timeout );
+
+		if( budget != null )
+			budget.recordRequest();
+
+		attempt( request );
+
+		if( ( copier != null ) && ( hedgingDelay >= 0 ) )
+		{
+			schedule( () ->
+			{
+				if( !isDone() && ( ( budget == null ) || budget.tryWithdraw() ) )
+					attempt( copier.get() );
+			}, TimeUnit.MILLISECONDS.toNanos( hedgingDelay ) );
+		}
+	}
+
+	/**
+	 * Cancels the exchange: aborts all requests, including the winning one,
+	 * and stops pending hedging and retries. Failures caused by the
+	 * cancellation are not retried.
+	 * 
+	 * @param failure
+	 *        The failure
+	 */
+	public void cancel( Throwable failure )
+	{
+		final List<Request> requests;
+		final List<Scheduler.Task> tasks;
+		synchronized( this )
+		{
+			done = true;
+			requests = new ArrayList<Request>( inFlight );
+			inFlight.clear();
+			if( winner != null )
+				requests.add( winner );
+			tasks = new ArrayList<Scheduler.Task>( this.tasks );
+			this.tasks.clear();
+		}
+
+		for( Scheduler.Task task : tasks )
+			task.cancel();
+		for( Request request : requests )
+			request.abort( failure );
+		future.completeExceptionally( failure );
+	}
+
+	/**
+	 * The request whose response was passed on: the original request, a
+	 * hedged request or a retry.
+	 * 
+	 * @return The winning request, or null if there is none yet
+	 */
+	public synchronized Request getWinner()
+	{
+		return winner;
+	}
+
+	// //////////////////////////////////////////////////////////////////////////
+	// Private
+
+	/**
+	 * Whether the exchange is done.
+	 * 
+	 * @return True if done
+	 */
+	private synchronized boolean isDone()
+	{
+		return done;
+	}
+
+	/**
+	 * Schedules a hedged request or a retry, unless the exchange is done.
+	 * 
+	 * @param task
+	 *        The task
+	 * @param delay
+	 *        The delay in nanoseconds
+	 */
+	private synchronized void schedule( Runnable task, long delay )
+	{
+		if( !done )
+			tasks.add( scheduler.schedule( task, delay, TimeUnit.NANOSECONDS ) );
+	}
+
+	/**
+	 * Sends a request, aborting it if its response headers do not arrive
+	 * within its share of the time left.
+	 * 
+	 * @param request
+	 *        The request
+	 */
+	private void attempt( final Request request )
+	{
+		final long attemptTimeout;
+		synchronized( this )
+		{
+			if( done )
+				return;
+			inFlight.add( request );
+			attemptTimeout = timeout > 0 ? Math.max( 1, ( deadline - System.nanoTime() ) / ( copier != null ? maxRetries - retries + 1 : 1 ) ) : -1;
+		}
+
+		final long start = System.nanoTime();
+		final Scheduler.Task timer = attemptTimeout > 0 ? scheduler.schedule( () -> request.abort( new TimeoutException( "No response headers within " + TimeUnit.NANOSECONDS.toMillis( attemptTimeout ) + " ms" ) ), attemptTimeout, TimeUnit.NANOSECONDS ) : null;
+		request.send( new Response.Listener.Adapter()
+		{
+			@Override
+			public void onHeaders( Response response )
+			{
+				if( timer != null )
+					timer.cancel();
+
+				if( ( copier != null ) && isRetryableStatus( response.getStatus() ) )
+				{
+					// Buffer, in case it is the last answer
+					buffering = new BufferingResponseListener( maxBufferedLength )
+					{
+						@Override
+						public void onComplete( Result result )
+						{
+							completed( request, result, getContent() );
+						}
+					};
+					buffering.onHeaders( response );
+					return;
+				}
+
+				listener = win( request, System.nanoTime() - start );
+				if( listener == null )
+				{
+					response.abort( new CancellationException( "Another request won" ) );
+					return;
+				}
+				listener.onHeaders( response );
+				future.complete( listener );
+			}
+
+			@Override
+			public void onContent( Response response, ByteBuffer content, Callback callback )
+			{
+				if( listener != null )
+					listener.onContent( response, content, callback );
+				else if( buffering != null )
+					buffering.onContent( response, content, callback );
+				else
+					callback.succeeded();
+			}
+
+			@Override
+			public void onSuccess( Response response )
+			{
+				if( listener != null )
+					listener.onSuccess( response );
+			}
+
+			@Override
+			public void onFailure( Response response, Throwable failure )
+			{
+				if( listener != null )
+					listener.onFailure( response, failure );
+			}
+
+			@Override
+			public void onComplete( Result result )
+			{
+				if( timer != null )
+					timer.cancel();
+
+				if( listener != null )
+					listener.onComplete( result );
+				else if( buffering != null )
+					buffering.onComplete( result );
+				else
+					completed( request, result, null );
+			}
+
+			/** The listener the response is passed on to, if it won. */
+			private Response.Listener listener;
+
+			/** Buffers the response, if its status is retryable. */
+			private BufferingResponseListener buffering;
+		} );
+	}
+
+	/**
+	 * Makes a request the winner, aborting the others.
+	 * 
+	 * @param request
+	 *        The request
+	 * @param latency
+	 *        The latency of its response headers in nanoseconds
+	 * @return The listener to pass the response on to, or null if the
+	 *         exchange is already done
+	 */
+	private Response.Listener win( Request request, long latency )
+	{
+		final List<Request> losers;
+		final List<Scheduler.Task> tasks;
+		synchronized( this )
+		{
+			inFlight.remove( request );
+			if( done )
+				return null;
+			done = true;
+			winner = request;
+			losers = new ArrayList<Request>( inFlight );
+			inFlight.clear();
+			tasks = new ArrayList<Scheduler.Task>( this.tasks );
+			this.tasks.clear();
+		}
+
+		for( Scheduler.Task task : tasks )
+			task.cancel();
+		for( Request loser : losers )
+			loser.abort( new CancellationException( "Another request won" ) );
+
+		if( histogram != null )
+			histogram.record( latency );
+		return listeners.get();
+	}
+
+	/**
+	 * Handles the completion of a request that failed or whose response has a
+	 * retryable status.
+	 * 
+	 * @param request
+	 *        The request
+	 * @param result
+	 *        The result
+	 * @param content
+	 *        The buffered content or null
+	 */
+	private void completed( Request request, Result result, byte[] content )
+	{
+		final Throwable failure = result.getFailure();
+		final boolean retryable = ( failure == null ) || ( !( failure instanceof RejectedExecutionException ) && !( failure instanceof CancellationException ) );
+
+		final Request answer;
+		final Response response;
+		synchronized( this )
+		{
+			inFlight.remove( request );
+			if( done )
+				return;
+
+			// Retry
+			if( retryable && ( copier != null ) && ( retries < maxRetries ) )
+			{
+				final long delay = TimeUnit.MILLISECONDS.toNanos( (long) ( ( backoff << Math.min( retries, 20 ) ) * ( 0.5 + ThreadLocalRandom.current().nextDouble() / 2 ) ) );
+				if( ( ( timeout <= 0 ) || ( deadline - System.nanoTime() > delay ) ) && ( ( budget == null ) || budget.tryWithdraw() ) )
+				{
+					retries++;
+					pendingRetries++;
+					schedule( () ->
+					{
+						synchronized( ResilientExchange.this )
+						{
+							pendingRetries--;
+						}
+						attempt( copier.get() );
+					}, delay );
+					return;
+				}
+			}
+
+			if( failure == null )
+			{
+				fallbackRequest = request;
+				fallbackResponse = result.getResponse();
+				fallbackContent = content;
+			}
+
+			// Wait for the other requests
+			if( !inFlight.isEmpty() || ( pendingRetries > 0 ) )
+				return;
+
+			done = true;
+			answer = fallbackRequest;
+			response = fallbackResponse;
+			content = fallbackContent;
+			winner = answer;
+		}
+
+		if( response == null )
+		{
+			future.completeExceptionally( failure );
+			return;
+		}
+
+		// The last retryable response is the answer
+		final Response.Listener listener = listeners.get();
+		listener.onHeaders( response );
+		future.complete( listener );
+		if( content.length > 0 )
+			listener.onContent( response, ByteBuffer.wrap( content ), Callback.NOOP );
+		listener.onSuccess( response );
+		listener.onComplete( new Result( answer, response ) );
+	}
+
+	/**
+	 * Whether a response status is worth retrying.
+	 * 
+	 * @param status
+	 *        The status
+	 * @return True if retryable
+	 */
+	private static boolean isRetryableStatus( int status )
+	{
+		return ( status == HttpStatus.BAD_GATEWAY_502 ) || ( status == HttpStatus.SERVICE_UNAVAILABLE_503 ) || ( status == HttpStatus.GATEWAY_TIMEOUT_504 );
+	}
+
+	/** Creates copies of the request, or null. */
+	private final Supplier<Request> copier;
+
+	/** The hedging delay in milliseconds, or -1. */
+	private final long hedgingDelay;
+
+	/** The max number of retries. */
+	private final int maxRetries;
+
+	/** The initial retry backoff in milliseconds. */
+	private final long backoff;
+
+	/** The retry budget or null. */
+	private final RetryBudget budget;
+
+	/** The latency histogram or null. */
+	private final LatencyHistogram histogram;
+
+	/** The scheduler. */
+	private final Scheduler scheduler;
+
+	/** The timeout in milliseconds, or 0. */
+	private final long timeout;
+
+	/** The max size in bytes of buffered responses. */
+	private final int maxBufferedLength;
+
+	/** Creates the listener for the winning response. */
+	private final Supplier<Response.Listener> listeners;
+
+	/** The future. */
+	private final CompletableFuture<Response.Listener> future;
+
+	/** The requests in flight. */
+	private final List<Request> inFlight = new ArrayList<Request>();
+
+	/** The scheduled hedged request and retries. */
+	private final List<Scheduler.Task> tasks = new ArrayList<Scheduler.Task>();
+
+	/** When the timeout elapses, in nanoseconds. */
+	private volatile long deadline;
+
+	/** Whether the exchange is done. */
+	private boolean done;
+
+	/** The winning request. */
+	private Request winner;
+
+	/** The number of scheduled retries. */
+	private int pendingRetries;
+
+	/** The last request with a retryable response that was not retried. */
+	private Request fallbackRequest;
+
+	/** The last response with a retryable status that was not retried. */
+	private Response fallbackResponse;
+
+	/** The content of the fallback response. */
+	private byte[] fallbackContent;
+
+	/** The number of retries. */
+	private int retries;
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Client response entity channel tracked by a {@link ResponseLeakDetector}.
+ * <p>
+ * Jetty references the wrapped listener while the response is in progress, so
+ * it is this wrapper that is tracked: it can be collected if the caller drops
+ * it without consuming or closing it.
+ * 
+ * @author Tal Liron
+ */
+public class ResponseEntityChannel implements ReadableByteChannel
+{
+	/**
+	 * Constructor.
+	 * 
+	 * @param channel
+	 *        The wrapped channel
+	 * @param leakDetector
+	 *        The leak detector
+	 * @param description
+	 *        The unique description
+	 */
+	public ResponseEntityChannel( ReadableByteChannel channel, ResponseLeakDetector leakDetector, String description )
+	{
+		this.channel = channel;
+		this.leakDetector = leakDetector;
+		this.description = description;
+	}
+
+	public int read( ByteBuffer dst ) throws IOException
+	{
+		final int read = channel.read( dst );
+		if( read == -1 )
+			leakDetector.untrack( this );
+		return read;
+	}
+
+	public boolean isOpen()
+	{
+		return channel.isOpen();
+	}
+
+	public void close() throws IOException
+	{
+		leakDetector.untrack( this );
+		channel.close();
+	}
+
+	@Override
+	public String toString()
+	{
+		return description;
+	}
+
+	/** The wrapped channel. */
+	private final ReadableByteChannel channel;
+
+	/** The leak detector. */
+	private final ResponseLeakDetector leakDetector;
+
+	/** The unique description. */
+	private final String description;
+}
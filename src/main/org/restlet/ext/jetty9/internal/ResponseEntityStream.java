@@ -0,0 +1,210 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * Client response entity stream that releases its connection when closed
+ * early.
+ * <p>
+ * If the stream is closed before the end of the entity, up to a limit of
+ * remaining bytes is drained, so that the connection can be reused. Larger
+ * remainders (when the size is known, without reading them) abort the
+ * response, closing the connection, as does a drain that takes longer than
+ * its timeout.
+ * 
+ * @author Tal Liron
+ */
+public class ResponseEntityStream extends FilterInputStream
+{
+	/**
+	 * Constructor.
+	 * 
+	 * @param in
+	 *        The wrapped stream
+	 * @param size
+	 *        The expected entity size or -1 if unknown
+	 * @param drainLimit
+	 *        The max number of remaining bytes to drain on close
+	 * @param drainTimeout
+	 *        The max time in milliseconds to drain on close
+	 * @param response
+	 *        The Jetty response, aborted if the drain times out
+	 * @param scheduler
+	 *        The scheduler
+	 * @param leakDetector
+	 *        The leak detector or null
+	 * @param description
+	 *        The unique description
+	 */
+	public ResponseEntityStream( InputStream in, long size, long drainLimit, long drainTimeout, Response response, Scheduler scheduler, ResponseLeakDetector leakDetector, String description )
+	{
+		super( in );
+		this.size = size;
+		this.drainLimit = drainLimit;
+		this.drainTimeout = drainTimeout;
+		this.response = response;
+		this.scheduler = scheduler;
+		this.leakDetector = leakDetector;
+		this.description = description;
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		final int b = super.read();
+		if( b == -1 )
+			ended();
+		else
+			position++;
+		return b;
+	}
+
+	@Override
+	public int read( byte[] b, int off, int len ) throws IOException
+	{
+		final int read = super.read( b, off, len );
+		if( read == -1 )
+			ended();
+		else
+			position += read;
+		return read;
+	}
+
+	@Override
+	public long skip( long n ) throws IOException
+	{
+		final long skipped = super.skip( n );
+		position += skipped;
+		return skipped;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if( closed )
+			return;
+		closed = true;
+
+		try
+		{
+			if( !ended && ( ( size < 0 ) || ( size - position <= drainLimit ) ) )
+				drain();
+		}
+		catch( IOException x )
+		{
+			// The connection will not be reused
+		}
+		finally
+		{
+			released();
+			super.close();
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return description;
+	}
+
+	// //////////////////////////////////////////////////////////////////////////
+	// Private
+
+	/**
+	 * Reads and discards up to the drain limit. If the drain timeout passes
+	 * first, the response is aborted, which fails the pending read.
+	 * 
+	 * @throws IOException
+	 *         In case of an I/O error
+	 */
+	private void drain() throws IOException
+	{
+		final Scheduler.Task timeout = scheduler.schedule( () -> response.abort( new TimeoutException( "Timed out draining the response entity" ) ), drainTimeout, TimeUnit.MILLISECONDS );
+		try
+		{
+			final byte[] buffer = new byte[(int) Math.min( 4096, Math.max( 1, drainLimit ) )];
+			long remaining = drainLimit;
+			while( remaining >= 0 )
+			{
+				final int read = super.read( buffer, 0, (int) Math.min( buffer.length, remaining + 1 ) );
+				if( read == -1 )
+				{
+					ended = true;
+					return;
+				}
+				remaining -= read;
+			}
+		}
+		finally
+		{
+			timeout.cancel();
+		}
+	}
+
+	/**
+	 * Called at the end of the entity.
+	 */
+	private void ended()
+	{
+		ended = true;
+		released();
+	}
+
+	/**
+	 * Stops leak tracking.
+	 */
+	private void released()
+	{
+		if( leakDetector != null )
+			leakDetector.untrack( this );
+	}
+
+	/** The expected entity size or -1 if unknown. */
+	private final long size;
+
+	/** The max number of remaining bytes to drain on close. */
+	private final long drainLimit;
+
+	/** The max time in milliseconds to drain on close. */
+	private final long drainTimeout;
+
+	/** The Jetty response. */
+	private final Response response;
+
+	/** The scheduler. */
+	private final Scheduler scheduler;
+
+	/** The leak detector or null. */
+	private final ResponseLeakDetector leakDetector;
+
+	/** The unique description. */
+	private final String description;
+
+	/** The number of bytes read. */
+	private long position;
+
+	/** Whether the end of the entity was reached. */
+	private boolean ended;
+
+	/** Whether the stream is closed. */
+	private boolean closed;
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.util.LeakDetector;
+
+/**
+ * Detects client response entities that are garbage collected without having
+ * been consumed or closed.
+ * <p>
+ * Leaks are logged with the stack trace of the site where the entity was
+ * obtained, and the request is aborted so that its connection is released.
+ * 
+ * @author Tal Liron
+ */
+public class ResponseLeakDetector extends LeakDetector<Object>
+{
+	/**
+	 * Constructor.
+	 * 
+	 * @param logger
+	 *        The logger
+	 */
+	public ResponseLeakDetector( Logger logger )
+	{
+		this.logger = logger;
+	}
+
+	/**
+	 * Creates a unique description for a response entity.
+	 * 
+	 * @param request
+	 *        The request
+	 * @return The description
+	 */
+	public String describe( Request request )
+	{
+		return "response entity #" + counter.incrementAndGet() + " of " + request.getMethod() + " " + request.getURI();
+	}
+
+	/**
+	 * Starts tracking a response entity.
+	 * <p>
+	 * The entity's string representation must be unique, and the request must
+	 * not reference the entity, or else it will never be collected.
+	 * 
+	 * @param entity
+	 *        The response entity
+	 * @param request
+	 *        The request to abort if the entity leaks
+	 */
+	public void track( Object entity, Request request )
+	{
+		if( acquired( entity ) )
+			requests.put( entity.toString(), request );
+	}
+
+	/**
+	 * Stops tracking a response entity that was consumed or closed.
+	 * 
+	 * @param entity
+	 *        The response entity
+	 */
+	public void untrack( Object entity )
+	{
+		if( released( entity ) )
+			requests.remove( entity.toString() );
+	}
+
+	// //////////////////////////////////////////////////////////////////////////
+	// Protected
+
+	@Override
+	protected void leaked( LeakInfo leakInfo )
+	{
+		logger.log( Level.WARNING, "Response entity was never consumed or closed: " + leakInfo.getResourceDescription(), leakInfo.getStackFrames() );
+		final Request request = requests.remove( leakInfo.getResourceDescription() );
+		if( request != null )
+			request.abort( new IOException( "Response entity leaked" ) );
+	}
+
+	// //////////////////////////////////////////////////////////////////////////
+	// Private
+
+	/** The logger. */
+	private final Logger logger;
+
+	/** The entity counter. */
+	private final AtomicLong counter = new AtomicLong();
+
+	/** The requests of the tracked entities, by entity description. */
+	private final Map<String, Request> requests = new ConcurrentHashMap<String, Request>();
+}
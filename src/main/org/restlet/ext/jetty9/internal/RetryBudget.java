@@ -0,0 +1,115 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+/**
+ * Limits retries and hedged requests to a ratio of the requests in a sliding
+ * ten-second window, plus a minimum rate, so that they cannot multiply the
+ * load on a struggling backend.
+ * 
+ * @author Tal Liron
+ */
+public class RetryBudget
+{
+	/**
+	 * Constructor.
+	 * 
+	 * @param ratio
+	 *        The ratio of retries to requests
+	 * @param minPerSecond
+	 *        The number of retries per second that are always allowed
+	 */
+	public RetryBudget( double ratio, int minPerSecond )
+	{
+		this.ratio = ratio;
+		this.minPerSecond = minPerSecond;
+	}
+
+	/**
+	 * Records a request.
+	 */
+	public synchronized void recordRequest()
+	{
+		requests[slot()]++;
+	}
+
+	/**
+	 * Withdraws a retry from the budget.
+	 * 
+	 * @return True if the retry is allowed
+	 */
+	public synchronized boolean tryWithdraw()
+	{
+		final int slot = slot();
+		long totalRequests = 0, totalRetries = 0;
+		for( int i = 0; i < WINDOW; i++ )
+		{
+			totalRequests += requests[i];
+			totalRetries += retries[i];
+		}
+
+		if( totalRetries >= minPerSecond * WINDOW + ratio * totalRequests )
+			return false;
+
+		retries[slot]++;
+		return true;
+	}
+
+	// //////////////////////////////////////////////////////////////////////////
+	// Private
+
+	/** The window in seconds. */
+	private static final int WINDOW = 10;
+
+	/**
+	 * The slot of the current second, clearing it if it is stale.
+	 * 
+	 * @return The slot
+	 */
+	private int slot()
+	{
+		final long second = System.currentTimeMillis() / 1000;
+		final int slot = (int) ( second % WINDOW );
+		if( seconds[slot] != second )
+		{
+			// Clear all slots that have left the window
+			for( int i = 0; i < WINDOW; i++ )
+			{
+				if( seconds[i] <= second - WINDOW )
+				{
+					requests[i] = 0;
+					retries[i] = 0;
+				}
+			}
+			seconds[slot] = second;
+			requests[slot] = 0;
+			retries[slot] = 0;
+		}
+		return slot;
+	}
+
+	/** The ratio of retries to requests. */
+	private final double ratio;
+
+	/** The number of retries per second that are always allowed. */
+	private final int minPerSecond;
+
+	/** The seconds of the slots. */
+	private final long[] seconds = new long[WINDOW];
+
+	/** The number of requests by slot. */
+	private final long[] requests = new long[WINDOW];
+
+	/** The number of retries by slot. */
+	private final long[] retries = new long[WINDOW];
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.eclipse.jetty.client.HttpClient;
+
+/**
+ * Process-wide registry of Jetty HTTP clients shared by client helpers with
+ * the same configuration. Clients are reference counted: a client is created
+ * by the first helper to acquire its key, and should be stopped by the last
+ * helper to release it.
+ * 
+ * @author Tal Liron
+ */
+public class SharedHttpClients
+{
+	/**
+	 * Acquires the client for a configuration key, creating it if necessary.
+	 * 
+	 * @param key
+	 *        The configuration key
+	 * @param factory
+	 *        Creates the client (not started)
+	 * @return The client
+	 */
+	public static synchronized HttpClient acquire( Key key, Supplier<HttpClient> factory )
+	{
+		Shared shared = clients.get( key );
+		if( shared == null )
+		{
+			shared = new Shared( factory.get() );
+			clients.put( key, shared );
+		}
+		shared.references++;
+		return shared.httpClient;
+	}
+
+	/**
+	 * Releases a client.
+	 * 
+	 * @param httpClient
+	 *        The client
+	 * @return True if this was the last reference, in which case the caller
+	 *         should stop the client
+	 */
+	public static synchronized boolean release( HttpClient httpClient )
+	{
+		for( Iterator<Shared> i = clients.values().iterator(); i.hasNext(); )
+		{
+			final Shared shared = i.next();
+			if( shared.httpClient == httpClient )
+			{
+				if( --shared.references > 0 )
+					return false;
+				i.remove();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * A configuration key: the configuration parameters and the objects the
+	 * client uses. Objects are compared by identity, so that clients are only
+	 * shared by helpers that use the very same objects.
+	 */
+	public static class Key
+	{
+		/**
+		 * Constructor.
+		 * 
+		 * @param configuration
+		 *        The configuration parameters
+		 * @param objects
+		 *        The objects the client uses (may contain nulls)
+		 */
+		public Key( String configuration, Object... objects )
+		{
+			this.configuration = configuration;
+			this.objects = objects;
+		}
+
+		@Override
+		public boolean equals( Object o )
+		{
+			if( this == o )
+				return true;
+			if( !( o instanceof Key ) )
+				return false;
+
+			final Key key = (Key) o;
+			if( !configuration.equals( key.configuration ) || ( objects.length != key.objects.length ) )
+				return false;
+			for( int i = 0; i < objects.length; i++ )
+				if( objects[i] != key.objects[i] )
+					return false;
+			return true;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int hashCode = configuration.hashCode();
+			for( Object object : objects )
+				hashCode = 31 * hashCode + System.identityHashCode( object );
+			return hashCode;
+		}
+
+		/** The configuration parameters. */
+		private final String configuration;
+
+		/** The objects the client uses. */
+		private final Object[] objects;
+	}
+
+	// //////////////////////////////////////////////////////////////////////////
+	// Private
+
+	/**
+	 * A shared client.
+	 */
+	private static class Shared
+	{
+		/**
+		 * Constructor.
+		 * 
+		 * @param httpClient
+		 *        The client
+		 */
+		private Shared( HttpClient httpClient )
+		{
+			this.httpClient = httpClient;
+		}
+
+		/** The client. */
+		private final HttpClient httpClient;
+
+		/** The number of references. */
+		private int references;
+	}
+
+	/**
+	 * The shared clients by configuration key.
+	 */
+	private static final Map<Key, Shared> clients = new HashMap<Key, Shared>();
+}
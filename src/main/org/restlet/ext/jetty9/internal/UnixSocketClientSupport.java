@@ -0,0 +1,40 @@
+/**
+ * Copyright 2014-2016 Three Crickets LLC and Restlet S.A.S.
+ * <p>
+ * The contents of this file are subject to the terms of the Apache 2.0 license:
+ * http://www.opensource.org/licenses/apache-2.0
+ * <p>
+ * This code is a derivative of code that is copyright 2005-2014 Restlet S.A.S.,
+ * available at: https://github.com/restlet/restlet-framework-java
+ * <p>
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty9.internal;
+
+import org.eclipse.jetty.client.HttpClientTransport;
+import org.eclipse.jetty.unixsocket.client.HttpClientTransportOverUnixSockets;
+
+/**
+ * Creates Jetty Unix domain socket client transports.
+ * <p>
+ * This class is only loaded if a Unix domain socket is configured, so that the
+ * Jetty Unix socket library remains an optional dependency.
+ * 
+ * @author Tal Liron
+ */
+public class UnixSocketClientSupport
+{
+	/**
+	 * Creates an HTTP/1.1 client transport over a Unix domain socket. All
+	 * requests are sent to the socket, whatever their host.
+	 * 
+	 * @param path
+	 *        The Unix domain socket path
+	 * @return A Unix domain socket client transport
+	 */
+	public static HttpClientTransport createTransport( String path )
+	{
+		return new HttpClientTransportOverUnixSockets( path );
+	}
+}